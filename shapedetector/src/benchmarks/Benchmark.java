@@ -0,0 +1,52 @@
+package benchmarks;
+
+import exceptions.CAException;
+
+/**
+ * A piece of work to be timed by the BenchmarkRunner.
+ * 
+ * @author Sean
+ */
+public abstract class Benchmark {
+	/** Name of the pipeline stage being measured. */
+	protected final String stage;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param stage
+	 *            Name of the pipeline stage being measured.
+	 */
+	public Benchmark(final String stage) {
+		this.stage = stage;
+	}
+
+	/**
+	 * Prepares the input for one timed run. Runs before every iteration and is
+	 * not timed.
+	 * 
+	 * @param image
+	 * @throws CAException
+	 */
+	public void setUp(final BenchmarkImage image) throws CAException {
+		/* Method stub. */
+	}
+
+	/**
+	 * Does the work that is timed.
+	 * 
+	 * @return Number of operations (cells, blobs, ...) processed, for working
+	 *         out the time per operation.
+	 * @throws CAException
+	 */
+	public abstract long run() throws CAException;
+
+	/**
+	 * Gets the name of the pipeline stage being measured.
+	 * 
+	 * @return
+	 */
+	public String getStage() {
+		return stage;
+	}
+}
@@ -0,0 +1,104 @@
+package benchmarks;
+
+import std.Picture;
+
+/**
+ * A named input image, together with the intermediate images that the CA
+ * produces from it. The intermediate images let a stage start from the output
+ * of the stages before it without running them again.
+ * 
+ * @author Sean
+ */
+public class BenchmarkImage {
+	/** Name to report results under. */
+	protected final String name;
+	/** The input image. */
+	protected final Picture picture;
+	/** The input image after noise removal. */
+	protected Picture denoised;
+	/** The denoised image after edge finding. */
+	protected Picture edges;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param name
+	 * @param picture
+	 */
+	public BenchmarkImage(final String name, final Picture picture) {
+		this.name = name;
+		this.picture = picture;
+	}
+
+	/**
+	 * Gets the name to report results under.
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the input image.
+	 * 
+	 * @return
+	 */
+	public Picture getPicture() {
+		return picture;
+	}
+
+	/**
+	 * Gets the input image after noise removal, or null if not yet known.
+	 * 
+	 * @return
+	 */
+	public Picture getDenoised() {
+		return denoised;
+	}
+
+	/**
+	 * Sets the input image after noise removal.
+	 * 
+	 * @param denoised
+	 */
+	public void setDenoised(final Picture denoised) {
+		this.denoised = denoised;
+	}
+
+	/**
+	 * Gets the denoised image after edge finding, or null if not yet known.
+	 * 
+	 * @return
+	 */
+	public Picture getEdges() {
+		return edges;
+	}
+
+	/**
+	 * Sets the denoised image after edge finding.
+	 * 
+	 * @param edges
+	 */
+	public void setEdges(final Picture edges) {
+		this.edges = edges;
+	}
+
+	/**
+	 * Gets the image width.
+	 * 
+	 * @return
+	 */
+	public int width() {
+		return picture.width();
+	}
+
+	/**
+	 * Gets the image height.
+	 * 
+	 * @return
+	 */
+	public int height() {
+		return picture.height();
+	}
+}
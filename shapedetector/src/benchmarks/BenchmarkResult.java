@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timings of one stage on one image, summarised for a CSV report.
+ * 
+ * @author Sean
+ */
+public class BenchmarkResult {
+	/** Columns of the CSV report. */
+	public final static String CSV_HEADER = "stage,image,width,height,threads,"
+			+ "warmup,iterations,ops,mean_ms,median_ms,min_ms,max_ms,"
+			+ "stddev_ms,ns_per_op";
+
+	protected final String stage;
+	protected final BenchmarkImage image;
+	protected final int threads;
+	protected final int warmup;
+	/** Time taken by each measured iteration, in nanoseconds. */
+	protected final long[] samples;
+	/** Number of operations processed per iteration. */
+	protected final long ops;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param stage
+	 * @param image
+	 * @param threads
+	 * @param warmup
+	 *            Number of iterations run before measuring.
+	 * @param samples
+	 *            Time taken by each measured iteration, in nanoseconds.
+	 * @param ops
+	 *            Number of operations processed per iteration.
+	 */
+	public BenchmarkResult(final String stage, final BenchmarkImage image,
+			final int threads, final int warmup, final long[] samples,
+			final long ops) {
+		this.stage = stage;
+		this.image = image;
+		this.threads = threads;
+		this.warmup = warmup;
+		this.samples = samples.clone();
+		this.ops = ops;
+		Arrays.sort(this.samples);
+	}
+
+	/**
+	 * Gets the mean time per iteration, in nanoseconds.
+	 * 
+	 * @return
+	 */
+	public double getMean() {
+		double sum = 0d;
+		for (long sample : samples) {
+			sum += sample;
+		}
+		return sum / samples.length;
+	}
+
+	/**
+	 * Gets the median time per iteration, in nanoseconds.
+	 * 
+	 * @return
+	 */
+	public double getMedian() {
+		int n = samples.length;
+		if (n % 2 == 1) {
+			return samples[n / 2];
+		} else {
+			return (samples[n / 2 - 1] + samples[n / 2]) / 2d;
+		}
+	}
+
+	/**
+	 * Gets the standard deviation of the time per iteration, in nanoseconds.
+	 * 
+	 * @return
+	 */
+	public double getStandardDeviation() {
+		double mean = getMean();
+		double sum = 0d;
+		for (long sample : samples) {
+			sum += (sample - mean) * (sample - mean);
+		}
+		return Math.sqrt(sum / samples.length);
+	}
+
+	/**
+	 * Formats the result as a line of the CSV report.
+	 * 
+	 * @return
+	 */
+	public String toCSV() {
+		double ms = 1e6;
+		return String.format(Locale.US,
+				"%s,%s,%d,%d,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.1f",
+				stage, image.getName(), image.width(), image.height(),
+				threads, warmup, samples.length, ops, getMean() / ms,
+				getMedian() / ms, samples[0] / ms,
+				samples[samples.length - 1] / ms, getStandardDeviation() / ms,
+				ops > 0 ? getMedian() / ops : 0d);
+	}
+
+	public String toString() {
+		return String.format(Locale.US, "%s on %s: median %.3f ms (%d runs)",
+				stage, image.getName(), getMedian() / 1e6, samples.length);
+	}
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import exceptions.CAException;
+
+/**
+ * Times benchmarks. Each benchmark first runs a number of warm-up iterations,
+ * so that the JIT compiler has compiled the code being measured, and is then
+ * timed over a number of measured iterations. Garbage is collected before
+ * every iteration, outside the timed section.
+ * 
+ * @author Sean
+ */
+public class BenchmarkRunner {
+	public final static int DEFAULT_WARMUP = 3;
+	public final static int DEFAULT_ITERATIONS = 10;
+
+	protected final int warmup;
+	protected final int iterations;
+	protected final int threads;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param warmup
+	 *            Number of iterations to run before measuring.
+	 * @param iterations
+	 *            Number of iterations to measure.
+	 * @param threads
+	 *            Number of threads the benchmarks run on, for the report.
+	 */
+	public BenchmarkRunner(final int warmup, final int iterations,
+			final int threads) {
+		this.warmup = warmup;
+		this.iterations = iterations;
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs the benchmark on the image.
+	 * 
+	 * @param benchmark
+	 * @param image
+	 * @return
+	 * @throws CAException
+	 */
+	public BenchmarkResult run(final Benchmark benchmark,
+			final BenchmarkImage image) throws CAException {
+		for (int i = 0; i < warmup; i++) {
+			benchmark.setUp(image);
+			benchmark.run();
+		}
+
+		long[] samples = new long[iterations];
+		long ops = 0;
+		for (int i = 0; i < iterations; i++) {
+			benchmark.setUp(image);
+			System.gc();
+			long start = System.nanoTime();
+			ops = benchmark.run();
+			samples[i] = System.nanoTime() - start;
+		}
+		return new BenchmarkResult(benchmark.getStage(), image, threads,
+				warmup, samples, ops);
+	}
+}
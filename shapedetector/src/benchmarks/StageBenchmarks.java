@@ -0,0 +1,812 @@
+package benchmarks;
+
+import exceptions.CAException;
+import graphics.ColourCompare;
+import graphics.ColourKernels;
+import graphics.YCbCrPlanes;
+
+import java.awt.Color;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import std.Picture;
+import ca.CA;
+import ca.Cell;
+import ca.concurrency.ThreadServer;
+import ca.concurrency.WorkerPool;
+import ca.lattice.ARGBLattice;
+import ca.lattice.ColumnMajorLayout;
+import ca.lattice.Layout;
+import ca.lattice.RowMajorLayout;
+import ca.lattice.ZOrderLayout;
+import ca.neighbourhood.Moore;
+import ca.neighbourhood.Stencil;
+import ca.neighbourhood.StencilCursor;
+import ca.neighbourhood.VanNeumannCardinal;
+import ca.rules.Rule;
+import ca.rules.blob.ArrangeOutlineRule;
+import ca.rules.cell.BlobAssociationRule;
+import ca.rules.cell.BlobLabelRule;
+import ca.rules.cell.BlobMergeRule;
+import ca.rules.cell.BoxMeanRule;
+import ca.rules.cell.DifferenceRule;
+import ca.rules.cell.EdgeFinderRule;
+import ca.rules.cell.FusedStencilRule;
+import ca.rules.cell.MedianFilterRule;
+import ca.rules.cell.NoiseRemoverRule;
+import ca.rules.cell.OutlineFinderRule;
+import ca.rules.cell.RangeEdgeFinderRule;
+import ca.rules.cell.StencilRule;
+import ca.shapedetector.BlobMap;
+import ca.shapedetector.ShapeDetector;
+import ca.shapedetector.blob.Blob;
+import ca.shapedetector.shapes.RootShape;
+
+/**
+ * Times each stage of the shape detector separately, on the bundled images
+ * and on synthetic images of any size, and writes the results to a CSV file.
+ * <p>
+ * Each stage starts from the output of the stages before it, which is
+ * prepared outside the timed section.
+ * <p>
+ * The stencil stages are also timed on each layout that a lattice can store
+ * its cells in, as "stage/layout". Java cannot read the hardware cache
+ * counters, so the cost of cache misses shows up as time per cell: the
+ * layouts run exactly the same work in the same order, and differ only in
+ * which cells share a cache line.
+ * <p>
+ * Usage: StageBenchmarks [options] [image ...]
+ * <ul>
+ * <li>-warmup n: iterations to run before measuring (default 3)</li>
+ * <li>-iterations n: iterations to measure (default 10)</li>
+ * <li>-threads n: number of threads (default CA.DEFAULT_NUMTHREADS)</li>
+ * <li>-r n: neighbourhood radius (default ShapeDetector.DEFAULT_R)</li>
+ * <li>-synthetic WxH: adds a synthetic image, may be repeated</li>
+ * <li>-stage name: only runs the named stage, may be repeated</li>
+ * <li>-out file: the CSV file to write (default benchmarks.csv)</li>
+ * </ul>
+ * Without any images, runs on the bundled images and on synthetic images of
+ * 512x512 and 1024x1024 pixels. Run from the directory holding the images.
+ *
+ * @author Sean
+ */
+public class StageBenchmarks {
+	public final static String[] DEFAULT_IMAGES = { "shapes.png",
+			"pipe.png", "batman.JPG", "shape_gallery.jpg" };
+	public final static int[] DEFAULT_SYNTHETIC_SIZES = { 512, 1024 };
+	public final static String DEFAULT_OUTPUT = "benchmarks.csv";
+	/** Seed for the synthetic images, so that runs are comparable. */
+	public final static long SYNTHETIC_SEED = 42L;
+	/** Layouts that the stencil stages are compared on. */
+	public final static String[] LAYOUTS = { "RowMajorLayout",
+			"ColumnMajorLayout", "ZOrderLayout" };
+
+	protected final double epsilon;
+	protected final int r;
+	protected final int numThreads;
+	protected final WorkerPool pool;
+	/**
+	 * Results are written here, so that the work being timed cannot be
+	 * optimised away.
+	 */
+	protected volatile double sink;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param epsilon
+	 * @param r
+	 * @param numThreads
+	 * @param pool
+	 */
+	public StageBenchmarks(final double epsilon, final int r,
+			final int numThreads, final WorkerPool pool) {
+		this.epsilon = epsilon;
+		this.r = r;
+		this.numThreads = numThreads;
+		this.pool = pool;
+	}
+
+	public static void main(final String[] args) {
+		int warmup = BenchmarkRunner.DEFAULT_WARMUP;
+		int iterations = BenchmarkRunner.DEFAULT_ITERATIONS;
+		int numThreads = CA.DEFAULT_NUMTHREADS;
+		int r = ShapeDetector.DEFAULT_R;
+		String output = DEFAULT_OUTPUT;
+		List<String> paths = new ArrayList<String>();
+		List<int[]> sizes = new ArrayList<int[]>();
+		List<String> stages = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-warmup")) {
+				warmup = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-iterations")) {
+				iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads")) {
+				numThreads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-r")) {
+				r = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-out")) {
+				output = args[++i];
+			} else if (args[i].equals("-stage")) {
+				stages.add(args[++i]);
+			} else if (args[i].equals("-synthetic")) {
+				String[] size = args[++i].split("x");
+				sizes.add(new int[] { Integer.parseInt(size[0]),
+						Integer.parseInt(size[1]) });
+			} else {
+				paths.add(args[i]);
+			}
+		}
+		if (paths.isEmpty() && sizes.isEmpty()) {
+			for (String path : DEFAULT_IMAGES) {
+				paths.add(path);
+			}
+			for (int size : DEFAULT_SYNTHETIC_SIZES) {
+				sizes.add(new int[] { size, size });
+			}
+		}
+
+		List<BenchmarkImage> images = new ArrayList<BenchmarkImage>();
+		for (String path : paths) {
+			images.add(new BenchmarkImage(path, new Picture(path)));
+		}
+		for (int[] size : sizes) {
+			images.add(new BenchmarkImage("synthetic-" + size[0] + "x"
+					+ size[1], SyntheticImage.create(size[0], size[1],
+					SYNTHETIC_SEED)));
+		}
+
+		WorkerPool pool = new WorkerPool(numThreads, false);
+		StageBenchmarks benchmarks = new StageBenchmarks(
+				ShapeDetector.DEFAULT_EPSILON, r, numThreads, pool);
+		BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations,
+				numThreads);
+		try {
+			benchmarks.run(runner, images, stages, new PrintStream(output));
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Runs every benchmark on every image, writing a line of CSV for each.
+	 *
+	 * @param runner
+	 * @param images
+	 * @param stages
+	 *            Names of the stages to run, or an empty list to run all.
+	 * @param csv
+	 */
+	public void run(final BenchmarkRunner runner,
+			final List<BenchmarkImage> images, final List<String> stages,
+			final PrintStream csv) {
+		csv.println(BenchmarkResult.CSV_HEADER);
+		for (BenchmarkImage image : images) {
+			try {
+				prepare(image);
+			} catch (CAException e) {
+				e.printStackTrace();
+				continue;
+			}
+			for (Benchmark benchmark : createBenchmarks()) {
+				if (!stages.isEmpty()
+						&& !stages.contains(benchmark.getStage())) {
+					continue;
+				}
+				try {
+					BenchmarkResult result = runner.run(benchmark, image);
+					csv.println(result.toCSV());
+					csv.flush();
+					System.out.println(result);
+				} catch (Throwable e) {
+					/* Reports the stage as failed and moves on to the next. */
+					System.out.println(benchmark.getStage() + " on "
+							+ image.getName() + " failed: " + e);
+				}
+			}
+		}
+		csv.close();
+	}
+
+	/**
+	 * Works out the intermediate images that the stages start from.
+	 *
+	 * @param image
+	 * @throws CAException
+	 */
+	protected void prepare(final BenchmarkImage image) throws CAException {
+		ARGBLattice lattice = new ARGBLattice(image.getPicture(), r);
+		apply(lattice, new NoiseRemoverRule(lattice, new Moore<Color>(lattice,
+				r), epsilon));
+		image.setDenoised(copy(lattice.getResult()));
+		apply(lattice, new EdgeFinderRule(lattice, new Moore<Color>(lattice,
+				r), epsilon));
+		image.setEdges(copy(lattice.getResult()));
+	}
+
+	/**
+	 * Applies a single rule to the lattice.
+	 *
+	 * @param lattice
+	 * @param rule
+	 * @throws CAException
+	 */
+	protected void apply(final ARGBLattice lattice,
+			final Rule<Cell<Color>> rule) throws CAException {
+		List<Rule<Cell<Color>>> rules = new LinkedList<Rule<Cell<Color>>>();
+		rules.add(rule);
+		apply(lattice, rules);
+	}
+
+	/**
+	 * Applies rules one after the other, without fusing them.
+	 *
+	 * @param lattice
+	 * @param rules
+	 * @throws CAException
+	 */
+	protected void apply(final ARGBLattice lattice,
+			final List<Rule<Cell<Color>>> rules) throws CAException {
+		new CA<Color>(lattice, rules, numThreads, pool).apply();
+	}
+
+	/**
+	 * Creates a NoiseRemoverRule of three passes followed by an
+	 * EdgeFinderRule.
+	 *
+	 * @param lattice
+	 * @param differences
+	 *            Whether to compute the differences between neighbours first,
+	 *            for the rules to read.
+	 * @return
+	 * @throws CAException
+	 */
+	protected List<Rule<Cell<Color>>> createNoiseEdgeRules(
+			final ARGBLattice lattice, final boolean differences)
+			throws CAException {
+		List<Rule<Cell<Color>>> rules = new LinkedList<Rule<Cell<Color>>>();
+		if (differences) {
+			rules.add(new DifferenceRule(lattice));
+		}
+		NoiseRemoverRule noiseRemoverRule = new NoiseRemoverRule(lattice,
+				new Moore<Color>(lattice, r), epsilon);
+		noiseRemoverRule.setMaxPasses(3);
+		rules.add(noiseRemoverRule);
+		rules.add(new EdgeFinderRule(lattice, new Moore<Color>(lattice, r),
+				epsilon));
+		return rules;
+	}
+
+	/**
+	 * Copies the picture, since a lattice keeps writing to its result.
+	 *
+	 * @param picture
+	 * @return
+	 */
+	protected static Picture copy(final Picture picture) {
+		return new Picture(picture);
+	}
+
+	/**
+	 * Creates the benchmarks for each stage, in pipeline order.
+	 *
+	 * @return
+	 */
+	protected List<Benchmark> createBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		benchmarks.add(new Benchmark("ColourCompare.getDifference") {
+			protected int[] pixels;
+
+			@Override
+			public void setUp(final BenchmarkImage image) {
+				pixels = image.getPicture().getPixels().clone();
+			}
+
+			@Override
+			public long run() {
+				double sum = 0d;
+				for (int i = 1; i < pixels.length; i++) {
+					sum += ColourCompare.getDifference(pixels[i - 1],
+							pixels[i]);
+				}
+				sink = sum;
+				return pixels.length - 1;
+			}
+		});
+
+		benchmarks.add(new Benchmark("YCbCr/pixel") {
+			protected int[] pixels;
+			protected YCbCrPlanes planes;
+
+			@Override
+			public void setUp(final BenchmarkImage image) {
+				pixels = image.getPicture().getPixels().clone();
+				planes = new YCbCrPlanes(pixels.length);
+			}
+
+			@Override
+			public long run() {
+				for (int i = 0; i < pixels.length; i++) {
+					planes.set(i, pixels[i]);
+				}
+				return pixels.length;
+			}
+		});
+
+		benchmarks.add(new Benchmark("YCbCr/kernel") {
+			protected int[] pixels;
+			protected YCbCrPlanes planes;
+
+			@Override
+			public void setUp(final BenchmarkImage image) {
+				pixels = image.getPicture().getPixels().clone();
+				planes = new YCbCrPlanes(pixels.length);
+			}
+
+			@Override
+			public long run() {
+				ColourKernels.toYCbCr(pixels, 0, planes.getLuma(),
+						planes.getBlueChroma(), planes.getRedChroma(), 0,
+						pixels.length);
+				return pixels.length;
+			}
+		});
+
+		benchmarks.add(new Benchmark("SquaredDistance/pixel") {
+			protected YCbCrPlanes planes;
+			protected float[] distances;
+
+			@Override
+			public void setUp(final BenchmarkImage image) {
+				planes = new YCbCrPlanes(image.getPicture().getPixels());
+				distances = new float[planes.getLuma().length - 1];
+			}
+
+			@Override
+			public long run() {
+				for (int i = 0; i < distances.length; i++) {
+					distances[i] = planes.getSquaredDistance(i, i + 1);
+				}
+				return distances.length;
+			}
+		});
+
+		benchmarks.add(new Benchmark("SquaredDistance/kernel") {
+			protected YCbCrPlanes planes;
+			protected float[] distances;
+
+			@Override
+			public void setUp(final BenchmarkImage image) {
+				planes = new YCbCrPlanes(image.getPicture().getPixels());
+				distances = new float[planes.getLuma().length - 1];
+			}
+
+			@Override
+			public long run() {
+				ColourKernels.squaredDistances(planes.getLuma(),
+						planes.getBlueChroma(), planes.getRedChroma(), 0, 1,
+						distances, 0, distances.length);
+				return distances.length;
+			}
+		});
+
+		benchmarks.add(new Benchmark("NoiseRemoverRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getPicture(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new NoiseRemoverRule(lattice,
+						new Moore<Color>(lattice, r), epsilon));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("BoxMeanRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getPicture(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				BoxMeanRule rule = new BoxMeanRule(lattice, new Moore<Color>(
+						lattice, r), epsilon);
+				rule.setPool(pool, numThreads);
+				apply(lattice, rule);
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("MedianFilterRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getPicture(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new MedianFilterRule(lattice, new Moore<Color>(
+						lattice, r)));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("EdgeFinderRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getDenoised(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new EdgeFinderRule(lattice, new Moore<Color>(
+						lattice, r), epsilon));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("RangeEdgeFinderRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getDenoised(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new RangeEdgeFinderRule(lattice,
+						new Moore<Color>(lattice, r), epsilon));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("NoiseRemoverRule+EdgeFinderRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getPicture(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, createNoiseEdgeRules(lattice, false));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("DifferenceRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getPicture(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, createNoiseEdgeRules(lattice, true));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("FusedStencilRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getPicture(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				List<StencilRule> stages = new ArrayList<StencilRule>();
+				stages.add(new NoiseRemoverRule(lattice, new Moore<Color>(
+						lattice, r), epsilon));
+				stages.add(new EdgeFinderRule(lattice, new Moore<Color>(
+						lattice, r), epsilon));
+				apply(lattice, new FusedStencilRule(stages));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("FusedStencilRule+DifferenceRule") {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getPicture(), r);
+			}
+
+			@Override
+			public long run() throws CAException {
+				List<StencilRule> stages = new ArrayList<StencilRule>();
+				stages.add(new NoiseRemoverRule(lattice, new Moore<Color>(
+						lattice, r), epsilon));
+				stages.add(new EdgeFinderRule(lattice, new Moore<Color>(
+						lattice, r), epsilon));
+				/* As ShapeDetector runs them, the first reading the planes. */
+				List<Rule<Cell<Color>>> rules =
+						new LinkedList<Rule<Cell<Color>>>();
+				rules.add(new DifferenceRule(lattice));
+				rules.add(new FusedStencilRule(stages));
+				apply(lattice, rules);
+				return lattice.size();
+			}
+		});
+
+		for (String layout : LAYOUTS) {
+			addLayoutBenchmarks(benchmarks, layout);
+		}
+
+		benchmarks.add(new Benchmark("BlobMergeRule") {
+			protected ARGBLattice lattice;
+			protected BlobMap<Color> blobMap;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getEdges(), r);
+				blobMap = newBlobMap(lattice);
+				apply(lattice, new BlobAssociationRule<Color>(lattice,
+						new VanNeumannCardinal<Color>(lattice), blobMap));
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new BlobMergeRule(lattice, blobMap, epsilon));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("BlobLabelRule") {
+			protected ARGBLattice lattice;
+			protected BlobMap<Color> blobMap;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getEdges(), r);
+				blobMap = newBlobMap(lattice);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new BlobLabelRule(lattice, blobMap));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("OutlineFinderRule") {
+			protected ARGBLattice lattice;
+			protected BlobMap<Color> blobMap;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getEdges(), r);
+				blobMap = label(lattice);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new OutlineFinderRule<Color>(lattice,
+						new VanNeumannCardinal<Color>(lattice), blobMap));
+				return lattice.size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("ArrangeOutlineRule") {
+			protected ARGBLattice lattice;
+			protected BlobMap<Color> blobMap;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = new ARGBLattice(image.getEdges(), r);
+				blobMap = findOutlines(lattice);
+			}
+
+			@Override
+			public long run() throws CAException {
+				ArrangeOutlineRule<Color> rule = new ArrangeOutlineRule<Color>(
+						blobMap, null, lattice);
+				new ThreadServer<Blob<Color>>(rule, blobMap.getBlobs(),
+						numThreads, pool).run();
+				return blobMap.getBlobs().size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("RootShape.identify") {
+			protected List<Blob<Color>> blobs;
+			protected RootShape<Color> rootShape;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				ARGBLattice lattice = new ARGBLattice(image.getEdges(), r);
+				BlobMap<Color> blobMap = findOutlines(lattice);
+				ArrangeOutlineRule<Color> rule = new ArrangeOutlineRule<Color>(
+						blobMap, null, lattice);
+				/* Skips the background, as BlobMap does. */
+				Blob<Color> background = blobMap.getBlob(lattice.getIndex(0, 0));
+				blobs = new ArrayList<Blob<Color>>();
+				for (Blob<Color> blob : blobMap.getBlobs()) {
+					if (blob != background
+							&& blob.getOutlineCells().size() > 16) {
+						rule.update(blob);
+						blobs.add(blob);
+					}
+				}
+				rootShape = new RootShape<Color>();
+			}
+
+			@Override
+			public long run() throws CAException {
+				int found = 0;
+				for (Blob<Color> blob : blobs) {
+					if (rootShape.identify(blob) != null) {
+						found++;
+					}
+				}
+				sink = found;
+				return blobs.size();
+			}
+		});
+
+		return benchmarks;
+	}
+
+	/**
+	 * Adds the benchmarks comparing the stencil stages on a layout.
+	 * <p>
+	 * The "Stencil" benchmark visits the Moore neighbourhood of every cell,
+	 * row by row, and only reads the colours, so it measures memory access
+	 * alone. The rules run as they do in the shape detector.
+	 *
+	 * @param benchmarks
+	 * @param layout
+	 *            One of LAYOUTS.
+	 */
+	protected void addLayoutBenchmarks(final List<Benchmark> benchmarks,
+			final String layout) {
+		benchmarks.add(new Benchmark("Stencil/" + layout) {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = createLattice(image.getPicture(), layout);
+			}
+
+			@Override
+			public long run() {
+				StencilCursor cursor = Stencil.square(lattice, r).cursor();
+				int w = lattice.getWidth();
+				int h = lattice.getHeight();
+				long sum = 0;
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						cursor.moveTo(lattice.getIndex(x, y));
+						while (cursor.next()) {
+							sum += lattice.getRGB(cursor.getIndex()) & 0xff;
+						}
+					}
+				}
+				sink = sum;
+				return (long) w * h;
+			}
+		});
+
+		benchmarks.add(new Benchmark("NoiseRemoverRule/" + layout) {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = createLattice(image.getPicture(), layout);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new NoiseRemoverRule(lattice,
+						new Moore<Color>(lattice, r), epsilon));
+				return (long) lattice.getWidth() * lattice.getHeight();
+			}
+		});
+
+		benchmarks.add(new Benchmark("EdgeFinderRule/" + layout) {
+			protected ARGBLattice lattice;
+
+			@Override
+			public void setUp(final BenchmarkImage image) throws CAException {
+				lattice = createLattice(image.getDenoised(), layout);
+			}
+
+			@Override
+			public long run() throws CAException {
+				apply(lattice, new EdgeFinderRule(lattice, new Moore<Color>(
+						lattice, r), epsilon));
+				return (long) lattice.getWidth() * lattice.getHeight();
+			}
+		});
+	}
+
+	/**
+	 * Creates a lattice storing the picture in the named layout. The
+	 * row-major layout is padded, as in the shape detector.
+	 *
+	 * @param picture
+	 * @param layout
+	 *            One of LAYOUTS.
+	 * @return
+	 * @throws CAException
+	 */
+	protected ARGBLattice createLattice(final Picture picture,
+			final String layout) throws CAException {
+		int w = picture.width();
+		int h = picture.height();
+		Layout cellLayout;
+		if (layout.equals("ColumnMajorLayout")) {
+			cellLayout = new ColumnMajorLayout(w, h);
+		} else if (layout.equals("ZOrderLayout")) {
+			cellLayout = new ZOrderLayout(w, h);
+		} else {
+			cellLayout = new RowMajorLayout(w, h, r);
+		}
+		return new ARGBLattice(picture, cellLayout);
+	}
+
+	/**
+	 * Creates an empty BlobMap for the lattice.
+	 *
+	 * @param lattice
+	 * @return
+	 */
+	protected BlobMap<Color> newBlobMap(final ARGBLattice lattice) {
+		BlobMap<Color> blobMap = new BlobMap<Color>(lattice);
+		blobMap.clear(lattice.getWidth(), lattice.getHeight());
+		return blobMap;
+	}
+
+	/**
+	 * Groups the cells of an edge image into blobs.
+	 *
+	 * @param lattice
+	 * @return
+	 * @throws CAException
+	 */
+	protected BlobMap<Color> label(final ARGBLattice lattice)
+			throws CAException {
+		BlobMap<Color> blobMap = newBlobMap(lattice);
+		apply(lattice, new BlobLabelRule(lattice, blobMap));
+		return blobMap;
+	}
+
+	/**
+	 * Groups the cells of an edge image into blobs and finds their outlines.
+	 *
+	 * @param lattice
+	 * @return
+	 * @throws CAException
+	 */
+	protected BlobMap<Color> findOutlines(final ARGBLattice lattice)
+			throws CAException {
+		BlobMap<Color> blobMap = label(lattice);
+		apply(lattice, new OutlineFinderRule<Color>(lattice,
+				new VanNeumannCardinal<Color>(lattice), blobMap));
+		return blobMap;
+	}
+}
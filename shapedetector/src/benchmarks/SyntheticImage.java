@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import std.Picture;
+
+/**
+ * Generates test images of any size: filled rectangles, ellipses and
+ * triangles in random colours on a plain background, with added noise. The
+ * same seed always gives the same image.
+ * 
+ * @author Sean
+ */
+public class SyntheticImage {
+	/** Default number of shapes per million pixels. */
+	public final static int DEFAULT_SHAPE_DENSITY = 100;
+	/** Default maximum noise added to each colour component. */
+	public final static int DEFAULT_NOISE = 8;
+
+	/**
+	 * Creates an image with the default shape density and noise.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param seed
+	 * @return
+	 */
+	public static Picture create(final int width, final int height,
+			final long seed) {
+		int shapes = (int) Math.max(1L, (long) width * height
+				* DEFAULT_SHAPE_DENSITY / 1000000L);
+		return create(width, height, shapes, DEFAULT_NOISE, seed);
+	}
+
+	/**
+	 * Creates an image.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param shapes
+	 *            Number of shapes to draw.
+	 * @param noise
+	 *            Maximum noise added to each colour component.
+	 * @param seed
+	 * @return
+	 */
+	public static Picture create(final int width, final int height,
+			final int shapes, final int noise, final long seed) {
+		Random random = new Random(seed);
+		Picture picture = new Picture(width, height);
+		BufferedImage image = picture.getImage();
+		Graphics2D graphics = image.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_OFF);
+
+		graphics.setColor(Color.WHITE);
+		graphics.fillRect(0, 0, width, height);
+
+		int maxSize = Math.max(8, Math.min(width, height) / 4);
+		for (int i = 0; i < shapes; i++) {
+			graphics.setColor(new Color(random.nextInt(0x1000000)));
+			int w = 8 + random.nextInt(maxSize);
+			int h = 8 + random.nextInt(maxSize);
+			int x = random.nextInt(Math.max(1, width - w));
+			int y = random.nextInt(Math.max(1, height - h));
+			switch (random.nextInt(3)) {
+			case 0:
+				graphics.fillRect(x, y, w, h);
+				break;
+			case 1:
+				graphics.fillOval(x, y, w, h);
+				break;
+			default:
+				graphics.fillPolygon(new int[] { x, x + w, x + w / 2 },
+						new int[] { y + h, y + h, y }, 3);
+			}
+		}
+		graphics.dispose();
+
+		if (noise > 0) {
+			int[] pixels = picture.getPixels();
+			for (int i = 0; i < pixels.length; i++) {
+				int rgb = pixels[i];
+				int r = addNoise((rgb >> 16) & 0xff, noise, random);
+				int g = addNoise((rgb >> 8) & 0xff, noise, random);
+				int b = addNoise(rgb & 0xff, noise, random);
+				pixels[i] = 0xff000000 | (r << 16) | (g << 8) | b;
+			}
+		}
+		return picture;
+	}
+
+	protected static int addNoise(final int component, final int noise,
+			final Random random) {
+		int value = component + random.nextInt(2 * noise + 1) - noise;
+		return Math.max(0, Math.min(255, value));
+	}
+}
@@ -2,11 +2,21 @@ package ca;
 
 import helpers.Stopwatch;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import ca.concurrency.FrontierThreadServer;
+import ca.concurrency.Granularity;
+import ca.concurrency.IndexThreadServer;
 import ca.concurrency.ThreadServer;
+import ca.concurrency.TileThreadServer;
+import ca.concurrency.WorkerPool;
 import ca.lattice.Lattice;
+import ca.lattice.Lattice2D;
 import ca.rules.Rule;
+import ca.rules.cell.CellRule;
+import ca.rules.cell.FusedStencilRule;
+import ca.rules.cell.StencilRule;
 import exceptions.CAException;
 
 /**
@@ -24,6 +34,14 @@ public class CA<V> {
 	 * Number of additional threads to run in parallel.
 	 */
 	protected int numThreads;
+	/** The pool of threads that the rules run on. */
+	protected final WorkerPool pool;
+	/** Decides how many threads each pass is worth splitting between. */
+	protected final Granularity granularity;
+	/**
+	 * States whether consecutive stencil rules are fused into a single pass.
+	 */
+	protected boolean fuseStencils;
 
 	/**
 	 * Constructor.
@@ -36,10 +54,36 @@ public class CA<V> {
 	 *            Search radius. Determines the size of the neighbourhood.
 	 */
 	public CA(final Lattice<V> lattice, final List<Rule<Cell<V>>> rules,
-			final int numThreads) {
+			final int numThreads, final WorkerPool pool) {
+		this(lattice, rules, numThreads, pool, new Granularity());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param lattice
+	 * @param rules
+	 * @param numThreads
+	 *            Most threads to split a pass between.
+	 * @param pool
+	 * @param granularity
+	 *            Decides how many threads each pass is worth splitting
+	 *            between. Can be shared, so that costs measured on one image
+	 *            carry over to the next.
+	 */
+	public CA(final Lattice<V> lattice, final List<Rule<Cell<V>>> rules,
+			final int numThreads, final WorkerPool pool,
+			final Granularity granularity) {
 		this.lattice = lattice;
 		this.rules = rules;
 		this.numThreads = numThreads;
+		this.pool = pool;
+		this.granularity = granularity;
+	}
+
+	public CA(final Lattice<V> lattice, final List<Rule<Cell<V>>> rules,
+			final int numThreads) {
+		this(lattice, rules, numThreads, WorkerPool.getDefault());
 	}
 
 	public CA(final Lattice<V> lattice, final List<Rule<Cell<V>>> rules) {
@@ -60,7 +104,8 @@ public class CA<V> {
 
 		stopwatch.print("Loading complete, elapsed time: ");
 
-		for (Rule<Cell<V>> rule : rules) {
+		List<Rule<Cell<V>>> passes = fuseStencils ? fuse(rules) : rules;
+		for (Rule<Cell<V>> rule : passes) {
 			rule.prepare();
 			boolean active = true;
 			// int passes = 0;
@@ -74,9 +119,42 @@ public class CA<V> {
 				// }
 				// } else {
 				/* Multithreaded method */
-				ThreadServer<Cell<V>> threadServer = new ThreadServer<Cell<V>>(
-						rule, lattice, numThreads);
+				String stage = rule.getClass().getName();
+				int items = lattice.size();
+				if (rule instanceof CellRule
+						&& ((CellRule<V>) rule).getFrontier() != null) {
+					items = ((CellRule<V>) rule).getFrontier().size();
+				}
+				/* Small passes are not worth splitting between many threads. */
+				int threads = granularity.getNumThreads(stage, items,
+						numThreads);
+
+				ThreadServer<Cell<V>> threadServer;
+				if (rule instanceof CellRule
+						&& ((CellRule<V>) rule).getFrontier() != null) {
+					/* Only visits the cells that could still change. */
+					threadServer = new FrontierThreadServer<V>(
+							(CellRule<V>) rule,
+							((CellRule<V>) rule).getFrontier(), threads, pool);
+				} else if (rule instanceof CellRule
+						&& lattice instanceof Lattice2D) {
+					/* Hands out tiles of indices. */
+					threadServer = new TileThreadServer<V>((CellRule<V>) rule,
+							(Lattice2D<V>) lattice, threads, pool);
+				} else if (rule instanceof CellRule) {
+					/* Hands out indices, so no cell objects are needed. */
+					threadServer = new IndexThreadServer<V>((CellRule<V>) rule,
+							lattice.size(), threads, pool);
+				} else {
+					threadServer = new ThreadServer<Cell<V>>(rule, lattice,
+							threads, pool);
+				}
+				lattice.prepare(rule instanceof CellRule
+						&& ((CellRule<V>) rule).writesAllCells());
+				long start = System.nanoTime();
 				active = threadServer.run();
+				granularity.record(stage, items, System.nanoTime() - start,
+						threads);
 				// }
 
 				lattice.complete();
@@ -91,6 +169,71 @@ public class CA<V> {
 		}
 	}
 
+	/**
+	 * Replaces each run of consecutive stencil rules that can be fused with a
+	 * FusedStencilRule, which applies them all in one pass.
+	 * 
+	 * @param rules
+	 * @return The rules to apply.
+	 * @throws CAException
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected List<Rule<Cell<V>>> fuse(final List<Rule<Cell<V>>> rules)
+			throws CAException {
+		List<Rule<Cell<V>>> fused = new ArrayList<Rule<Cell<V>>>(rules.size());
+		List<StencilRule> stencils = new ArrayList<StencilRule>();
+		for (Rule rule : rules) {
+			if (rule instanceof StencilRule
+					&& ((StencilRule) rule).isFusable()) {
+				stencils.add((StencilRule) rule);
+			} else {
+				addStencils(fused, stencils);
+				fused.add(rule);
+			}
+		}
+		addStencils(fused, stencils);
+		return fused;
+	}
+
+	/**
+	 * Adds a run of stencil rules to the rules to apply, fused if there is
+	 * more than one, and clears the run.
+	 * 
+	 * @param fused
+	 * @param stencils
+	 * @throws CAException
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected void addStencils(final List<Rule<Cell<V>>> fused,
+			final List<StencilRule> stencils) throws CAException {
+		if (stencils.size() > 1) {
+			fused.add((Rule) new FusedStencilRule(stencils));
+		} else if (stencils.size() == 1) {
+			fused.add((Rule) stencils.get(0));
+		}
+		stencils.clear();
+	}
+
+	/**
+	 * Sets whether consecutive stencil rules, such as NoiseRemoverRule and
+	 * EdgeFinderRule, are fused into a single pass over the lattice.
+	 * 
+	 * @see FusedStencilRule
+	 * @param fuseStencils
+	 */
+	public void setFuseStencils(final boolean fuseStencils) {
+		this.fuseStencils = fuseStencils;
+	}
+
+	/**
+	 * Checks whether consecutive stencil rules are fused into a single pass.
+	 * 
+	 * @return
+	 */
+	public boolean getFuseStencils() {
+		return fuseStencils;
+	}
+
 	/**
 	 * Gets the cell lattice.
 	 * 
@@ -109,4 +252,23 @@ public class CA<V> {
 		return numThreads;
 	}
 
+	/**
+	 * Gets the pool of threads that the rules run on.
+	 * 
+	 * @return
+	 */
+	public WorkerPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Gets the object that decides how many threads each pass is worth
+	 * splitting between.
+	 * 
+	 * @return
+	 */
+	public Granularity getGranularity() {
+		return granularity;
+	}
+
 }
\ No newline at end of file
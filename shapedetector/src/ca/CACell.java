@@ -21,6 +21,8 @@ public class CACell<V> implements Cell<V> {
 	protected List<Cell<V>> neighbourhood;
 	/** The cell's position coordinates. */
 	protected final int[] coordinates;
+	/** The cell's index in the lattice. */
+	protected final int index;
 
 	/**
 	 * Constructor.
@@ -42,8 +44,10 @@ public class CACell<V> implements Cell<V> {
 	 * Constructor. Cell starts active, with a null state and an empty
 	 * neighbourhood.
 	 */
-	public CACell(final Lattice<V> lattice, final int... coordinates) {
+	public CACell(final Lattice<V> lattice, final int index,
+			final int[] coordinates) {
 		this.lattice = lattice;
+		this.index = index;
 		this.coordinates = coordinates;
 	}
 
@@ -105,6 +109,16 @@ public class CACell<V> implements Cell<V> {
 		return coordinates;
 	}
 
+	/**
+	 * Gets this cell's index in the lattice.
+	 * 
+	 * @return This cell's index.
+	 */
+	@Override
+	public int getIndex() {
+		return index;
+	}
+
 	public String toString() {
 		// return "[x=" + coordinates[0] + ", y=" + coordinates[1] + "]";
 		return "(CACell) [" + Output.toString(coordinates) + ", state="
@@ -15,6 +15,14 @@ public interface Cell<V> {
 	 */
 	public int[] getCoordinates();
 
+	/**
+	 * Gets this cell's index in its lattice. Cells can be looked up again by
+	 * their index, which is cheaper than by their coordinates.
+	 * 
+	 * @return This cell's index.
+	 */
+	public int getIndex();
+
 	/**
 	 * Gets the specified cell's neighbourhood, specifically those cells within
 	 * a certain distance from this cell.
@@ -0,0 +1,99 @@
+package ca;
+
+import java.util.List;
+
+import ca.lattice.Lattice2D;
+
+/**
+ * A cell that is nothing more than an index into its lattice. The lattice
+ * holds the cell's state and its coordinates are derived from the index when
+ * needed, so lattices can create these on demand instead of keeping one cell
+ * object per position.
+ * <p>
+ * Flyweight cells do not store their neighbourhoods. Rules should gather
+ * neighbours from a Neighbourhood model when they need them.
+ * <p>
+ * Two flyweight cells are equal when they refer to the same index in the same
+ * lattice.
+ * 
+ * @author Sean
+ */
+public class FlyweightCell<V> implements Cell<V> {
+	protected final Lattice2D<V> lattice;
+	/** The cell's index in the lattice. */
+	protected final int index;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param lattice
+	 * @param index
+	 */
+	public FlyweightCell(final Lattice2D<V> lattice, final int index) {
+		this.lattice = lattice;
+		this.index = index;
+	}
+
+	@Override
+	public int[] getCoordinates() {
+		int[] coordinates = { lattice.getX(index), lattice.getY(index) };
+		return coordinates;
+	}
+
+	@Override
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Flyweight cells do not store their neighbourhoods.
+	 * 
+	 * @return null
+	 */
+	@Override
+	public List<Cell<V>> getNeighbourhood() {
+		return null;
+	}
+
+	/**
+	 * Flyweight cells do not store their neighbourhoods.
+	 * 
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setNeighbourhood(final List<Cell<V>> neighbourhood) {
+		throw new UnsupportedOperationException(
+				"Flyweight cells do not store neighbourhoods");
+	}
+
+	@Override
+	public V getState() {
+		return lattice.getState(index);
+	}
+
+	@Override
+	public void setState(final V state) {
+		lattice.setState(index, state);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) {
+			return true;
+		} else if (!(obj instanceof FlyweightCell)) {
+			return false;
+		}
+		FlyweightCell<?> that = (FlyweightCell<?>) obj;
+		return index == that.index && lattice == that.lattice;
+	}
+
+	@Override
+	public int hashCode() {
+		return index;
+	}
+
+	public String toString() {
+		return "(FlyweightCell) [" + lattice.getX(index) + ", "
+				+ lattice.getY(index) + ", state=" + getState() + "]";
+	}
+}
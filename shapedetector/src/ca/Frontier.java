@@ -0,0 +1,99 @@
+package ca;
+
+import helpers.ConcurrentBitSet;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The set of cells that a rule has to update during its next pass.
+ * <p>
+ * Cells are kept in a compact queue of indices, so a pass only costs as much
+ * as the number of cells on the frontier, not the size of the lattice. A
+ * bitset makes sure that each cell is queued at most once. Cells can be added
+ * by many threads at once.
+ *
+ * @author Sean
+ */
+public class Frontier {
+	/** Marks the cells that have been queued. */
+	protected final ConcurrentBitSet queued;
+	/** Indices of the queued cells, in the order they were added. */
+	protected final int[] queue;
+	/** Number of cells in the queue. */
+	protected final AtomicInteger size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param latticeSize
+	 *            Number of cells in the lattice.
+	 */
+	public Frontier(final int latticeSize) {
+		queued = new ConcurrentBitSet(latticeSize);
+		queue = new int[latticeSize];
+		size = new AtomicInteger();
+	}
+
+	/**
+	 * Adds the cell with the specified index, unless it is already on the
+	 * frontier.
+	 *
+	 * @param index
+	 */
+	public void add(final int index) {
+		if (queued.set(index)) {
+			queue[size.getAndIncrement()] = index;
+		}
+	}
+
+	/**
+	 * Adds the specified cells.
+	 *
+	 * @param indices
+	 * @param n
+	 *            Number of indices to add from the start of the array.
+	 */
+	public void add(final int[] indices, final int n) {
+		for (int i = 0; i < n; i++) {
+			add(indices[i]);
+		}
+	}
+
+	/**
+	 * Checks whether the cell with the specified index is on the frontier.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public boolean contains(final int index) {
+		return queued.get(index);
+	}
+
+	/**
+	 * Gets the index of the i'th cell in the queue.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public int get(final int i) {
+		return queue[i];
+	}
+
+	/**
+	 * Gets the number of cells on the frontier.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Removes every cell from the frontier. Should not be called while cells
+	 * are being added.
+	 */
+	public void clear() {
+		queued.clear();
+		size.set(0);
+	}
+}
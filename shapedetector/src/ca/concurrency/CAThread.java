@@ -1,11 +1,11 @@
 package ca.concurrency;
 
 /**
- * Updates objects in a separate thread.
+ * Updates objects on one of the threads of a WorkerPool.
  * 
  * @author Sean
  */
-public class CAThread<V> extends Thread {
+public class CAThread<V> implements Runnable {
 	/** The CAThreadServer that coordinates this thread. */
 	protected final ThreadServer<V> server;
 
@@ -21,10 +21,11 @@ public class CAThread<V> extends Thread {
 
 	@Override
 	public void run() {
-		V object;
-		while ((object = server.dequeue()) != null) {
-			server.update(object);
+		try {
+			server.process();
+		} finally {
+			/* Otherwise the server would wait forever. */
+			server.clockOut(this);
 		}
-		server.clockOut(this);
 	}
 }
@@ -0,0 +1,84 @@
+package ca.concurrency;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.Cell;
+import ca.Frontier;
+import ca.rules.cell.CellRule;
+import exceptions.CAException;
+import exceptions.NullParameterException;
+
+/**
+ * Coordinates threads that update the cells on a rule's frontier
+ * concurrently. Only the queued cells are visited, so a pass costs as much as
+ * the frontier is long.
+ * 
+ * @author Sean
+ */
+public class FrontierThreadServer<V> extends ThreadServer<Cell<V>> {
+	/** Number of queued cells handed out at a time. */
+	public final static int CHUNK_SIZE = 256;
+
+	/** The rule to apply to each cell. */
+	protected final CellRule<V> cellRule;
+	/** The cells to update. */
+	protected final Frontier frontier;
+	/** Position in the frontier of the next cell to hand out. */
+	protected final AtomicInteger next;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param rule
+	 * @param frontier
+	 *            The cells to update.
+	 * @param numThreads
+	 *            Number of threads to run in parallel.
+	 * @param pool
+	 *            The pool to run the threads on.
+	 * @throws NullParameterException
+	 */
+	public FrontierThreadServer(final CellRule<V> rule,
+			final Frontier frontier, final int numThreads,
+			final WorkerPool pool) throws NullParameterException {
+		super(rule, (Iterator<Cell<V>>) null, numThreads, pool);
+		if (frontier == null) {
+			throw new NullParameterException("frontier");
+		}
+		this.cellRule = rule;
+		this.frontier = frontier;
+		next = new AtomicInteger();
+	}
+
+	/**
+	 * Updates cells until the whole frontier has been handed out.
+	 */
+	@Override
+	public void process() {
+		int size = frontier.size();
+		int start;
+		while ((start = next.getAndAdd(CHUNK_SIZE)) < size) {
+			int end = Math.min(start + CHUNK_SIZE, size);
+			try {
+				for (int i = start; i < end; i++) {
+					cellRule.update(frontier.get(i));
+				}
+			} catch (CAException e) {
+				handleException(e);
+			}
+		}
+	}
+
+	/**
+	 * Updates the cells, then lets the rule decide whether to make another
+	 * pass.
+	 * 
+	 * @return true when the rule is due to make another pass.
+	 */
+	@Override
+	public boolean run() {
+		super.run();
+		return cellRule.completePass();
+	}
+}
@@ -0,0 +1,146 @@
+package ca.concurrency;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides how finely to split work between threads, from its size and the
+ * measured cost of earlier work of the same kind.
+ * <p>
+ * Handing work to a thread has a fixed cost, so work is only split while each
+ * thread still gets a worthwhile share of it. A stage is given one thread
+ * (which a ThreadServer runs on the calling thread) when it is cheap, and up
+ * to the maximum when it is expensive. In the same way, small images are best
+ * processed whole on one thread each, with many images in flight, while only
+ * large images are worth splitting into tiles over all the threads.
+ * <p>
+ * Costs are kept per stage as a moving average of the time per item, so the
+ * estimates adapt to the images being processed. Safe to share between
+ * threads.
+ *
+ * @author Sean
+ */
+public class Granularity {
+	/** Least amount of work worth handing to a thread, in nanoseconds. */
+	public final static long DEFAULT_MIN_TASK_TIME = 250000L;
+	/** Assumed cost of an item that no cost has been measured for yet. */
+	public final static double DEFAULT_ITEM_TIME = 200d;
+	/** Images with at most this many pixels are always processed whole. */
+	public final static int DEFAULT_SMALL_IMAGE_SIZE = 256 * 256;
+	/** Images expected to take less than this are processed whole. */
+	public final static long DEFAULT_MIN_TILED_TIME = 50000000L;
+	/** Stage name under which the cost of whole images is kept. */
+	public final static String IMAGE_STAGE = "image";
+	/** Weight given to the latest measurement in the moving averages. */
+	protected final static double WEIGHT = 0.25d;
+
+	/** Average cost per item of each stage, in nanoseconds. */
+	protected final ConcurrentHashMap<String, Double> costs;
+	/** Least amount of work worth handing to a thread, in nanoseconds. */
+	protected final long minTaskTime;
+	/** Images with at most this many pixels are always processed whole. */
+	protected final int smallImageSize;
+	/** Images expected to take less than this are processed whole. */
+	protected final long minTiledTime;
+
+	/**
+	 * Constructor with default thresholds.
+	 */
+	public Granularity() {
+		this(DEFAULT_MIN_TASK_TIME, DEFAULT_SMALL_IMAGE_SIZE,
+				DEFAULT_MIN_TILED_TIME);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param minTaskTime
+	 *            Least amount of work worth handing to a thread, in
+	 *            nanoseconds.
+	 * @param smallImageSize
+	 *            Images with at most this many pixels are always processed
+	 *            whole.
+	 * @param minTiledTime
+	 *            Images expected to take less than this many nanoseconds are
+	 *            processed whole.
+	 */
+	public Granularity(final long minTaskTime, final int smallImageSize,
+			final long minTiledTime) {
+		this.minTaskTime = minTaskTime;
+		this.smallImageSize = smallImageSize;
+		this.minTiledTime = minTiledTime;
+		costs = new ConcurrentHashMap<String, Double>();
+	}
+
+	/**
+	 * Gets the number of threads to split a stage's work between.
+	 *
+	 * @param stage
+	 *            Name of the stage.
+	 * @param items
+	 *            Number of items to process.
+	 * @param maxThreads
+	 *            Most threads to use.
+	 * @return Between 1 and maxThreads, and no more than the number of items.
+	 */
+	public int getNumThreads(final String stage, final int items,
+			final int maxThreads) {
+		double time = items * getCost(stage, DEFAULT_ITEM_TIME);
+		long threads = (long) (time / minTaskTime);
+		threads = Math.min(threads, Math.min(items, maxThreads));
+		return (int) Math.max(1L, threads);
+	}
+
+	/**
+	 * Checks whether an image is better processed whole on one thread than
+	 * split into tiles.
+	 *
+	 * @param pixels
+	 *            Number of pixels in the image.
+	 * @return
+	 */
+	public boolean isSmall(final int pixels) {
+		if (pixels <= smallImageSize) {
+			return true;
+		}
+		Double cost = costs.get(IMAGE_STAGE);
+		return cost != null && pixels * cost < minTiledTime;
+	}
+
+	/**
+	 * Records how long a stage took, to improve later estimates.
+	 *
+	 * @param stage
+	 *            Name of the stage.
+	 * @param items
+	 *            Number of items processed.
+	 * @param time
+	 *            Time taken, in nanoseconds.
+	 * @param threads
+	 *            Number of threads the stage ran on.
+	 */
+	public void record(final String stage, final int items, final long time,
+			final int threads) {
+		if (items <= 0) {
+			return;
+		}
+		double cost = (double) time * threads / items;
+		Double old = costs.get(stage);
+		if (old != null) {
+			cost = old + WEIGHT * (cost - old);
+		}
+		costs.put(stage, cost);
+	}
+
+	/**
+	 * Gets the average cost per item of a stage.
+	 *
+	 * @param stage
+	 * @param defaultCost
+	 *            Cost to return if none has been measured.
+	 * @return Cost in nanoseconds.
+	 */
+	public double getCost(final String stage, final double defaultCost) {
+		Double cost = costs.get(stage);
+		return cost == null ? defaultCost : cost;
+	}
+}
@@ -0,0 +1,85 @@
+package ca.concurrency;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.Cell;
+import ca.rules.cell.CellRule;
+import exceptions.CAException;
+import exceptions.NullParameterException;
+
+/**
+ * Coordinates threads that update lattice cells concurrently, handing out
+ * cell indices instead of cell objects.
+ * 
+ * @author Sean
+ */
+public class IndexThreadServer<V> extends ThreadServer<Cell<V>> {
+	/** Number of consecutive indices handed out at a time. */
+	public final static int CHUNK_SIZE = 1024;
+
+	/** The rule to apply to each index. */
+	protected final CellRule<V> cellRule;
+	/** The number of cells in the lattice. */
+	protected final int size;
+	/** The next index to hand out. */
+	protected final AtomicInteger next;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param rule
+	 * @param size
+	 *            Number of cells in the lattice.
+	 * @param numThreads
+	 *            Number of threads to run in parallel.
+	 * @param pool
+	 *            The pool to run the threads on.
+	 * @throws NullParameterException
+	 */
+	public IndexThreadServer(final CellRule<V> rule, final int size,
+			final int numThreads, final WorkerPool pool)
+			throws NullParameterException {
+		super(rule, (Iterator<Cell<V>>) null, numThreads, pool);
+		this.cellRule = rule;
+		this.size = size;
+		next = new AtomicInteger();
+	}
+
+	/**
+	 * Updates cells until every index has been handed out.
+	 */
+	@Override
+	public void process() {
+		int start;
+		while ((start = next.getAndAdd(CHUNK_SIZE)) < size) {
+			update(start, Math.min(start + CHUNK_SIZE, size));
+		}
+	}
+
+	/**
+	 * Updates the cells with indices from start up to, but not including, end.
+	 * 
+	 * @param start
+	 * @param end
+	 */
+	public void update(final int start, final int end) {
+		try {
+			cellRule.update(start, end);
+		} catch (CAException e) {
+			handleException(e);
+		}
+	}
+
+	/**
+	 * Updates the cells, then lets the rule decide whether to make another
+	 * pass.
+	 * 
+	 * @return true when the rule is due to make another pass.
+	 */
+	@Override
+	public boolean run() {
+		super.run();
+		return cellRule.completePass();
+	}
+}
@@ -8,6 +8,10 @@ import exceptions.NullParameterException;
 
 /**
  * Coordinates threads that update cells concurrently.
+ * <p>
+ * The work is run on a WorkerPool, so no threads are created for each run.
+ * With a single thread, the work is done on the calling thread instead, which
+ * saves handing it over to the pool.
  * 
  * @author Sean
  */
@@ -21,8 +25,10 @@ public class ThreadServer<V> {
 	/** The queue iterator. */
 	protected Iterator<V> iterator;
 
-	/** Number of threads to create. */
+	/** Number of tasks to submit to the pool. */
 	protected final int numThreads;
+	/** The pool that runs the tasks. */
+	protected final WorkerPool pool;
 	/** The number of finished threads. */
 	protected int clockedInThreads;
 
@@ -46,24 +52,41 @@ public class ThreadServer<V> {
 		this(rule, source.iterator(), numThreads);
 	}
 
+	public ThreadServer(final Rule<V> rule, final Iterator<V> iterator,
+			final int numThreads) throws NullParameterException {
+		this(rule, iterator, numThreads, WorkerPool.getDefault());
+	}
+
+	public ThreadServer(final Rule<V> rule, final Iterable<V> source,
+			final int numThreads, final WorkerPool pool)
+			throws NullParameterException {
+		this(rule, source.iterator(), numThreads, pool);
+	}
+
 	/**
 	 * Creates server with specified number of threads.
 	 * 
 	 * @param rule
 	 * @param source
 	 * @param numThreads
-	 *            Number of threads to create.
+	 *            Number of threads to run in parallel.
+	 * @param pool
+	 *            The pool to run the threads on.
 	 * @throws NullParameterException
 	 */
 	public ThreadServer(Rule<V> rule, final Iterator<V> iterator,
-			final int numThreads) throws NullParameterException {
+			final int numThreads, final WorkerPool pool)
+			throws NullParameterException {
 		if (rule == null) {
 			throw new NullParameterException("rule");
+		} else if (pool == null) {
+			throw new NullParameterException("pool");
 		}
 		this.rule = rule;
 		// this.source = source;
 		this.iterator = iterator;
 		this.numThreads = numThreads;
+		this.pool = pool;
 	}
 
 	/**
@@ -81,6 +104,16 @@ public class ThreadServer<V> {
 		}
 	}
 
+	/**
+	 * Updates queued objects until the queue is empty. Called by each thread.
+	 */
+	public void process() {
+		V object;
+		while ((object = dequeue()) != null) {
+			update(object);
+		}
+	}
+
 	/**
 	 * Updates specified object.
 	 * 
@@ -96,17 +129,21 @@ public class ThreadServer<V> {
 	}
 
 	/**
-	 * Updates the queued cells. TODO: return a boolean when it is due to
-	 * repeat, and not just false all the time...
+	 * Updates the queued objects. Subclasses that serve cell rules return true
+	 * when the rule is due to make another pass; this returns false, since the
+	 * queue can only be iterated once.
 	 * 
 	 * @return true when there are active cells remaining.
 	 */
 	public boolean run() {
+		if (numThreads <= 1) {
+			process();
+			return false;
+		}
 		clockedInThreads = 0;
 
 		for (int i = 0; i < numThreads; i++) {
-			CAThread<V> thread = new CAThread<V>(this);
-			thread.start();
+			pool.execute(new CAThread<V>(this));
 		}
 
 		synchronized (this) {
@@ -0,0 +1,131 @@
+package ca.concurrency;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ca.Cell;
+import ca.lattice.Lattice2D;
+import ca.rules.cell.CellRule;
+import exceptions.CAException;
+import exceptions.NullParameterException;
+
+/**
+ * Coordinates threads that update a two dimensional lattice concurrently, by
+ * splitting it into tiles.
+ * <p>
+ * Each thread is given a contiguous block of tiles and claims them one at a
+ * time from an atomic counter, so threads never wait on each other. A thread
+ * that finishes its own block steals tiles from the blocks of the others.
+ * Each tile is handed to the rule as a whole.
+ * <p>
+ * The tile size is taken from the rule, and adjusted to suit the lattice's
+ * layout (see Layout.getTileSize()). A tile width of 0 splits the lattice
+ * into bands of whole rows.
+ *
+ * @author Sean
+ */
+public class TileThreadServer<V> extends ThreadServer<Cell<V>> {
+	/** The rule to apply to each tile. */
+	protected final CellRule<V> cellRule;
+	/** The lattice to split into tiles. */
+	protected final Lattice2D<V> lattice;
+	/** Tile width. */
+	protected final int tileWidth;
+	/** Tile height. */
+	protected final int tileHeight;
+	/** Number of tiles across the lattice. */
+	protected final int tilesAcross;
+	/** Number of tiles in the lattice. */
+	protected final int numTiles;
+	/** The next tile in each thread's block. */
+	protected final AtomicIntegerArray nextTile;
+	/** The end of each thread's block. */
+	protected final int[] lastTile;
+	/** Hands out thread numbers as threads start. */
+	protected final AtomicInteger threadCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rule
+	 * @param lattice
+	 * @param numThreads
+	 *            Number of threads to run in parallel.
+	 * @param pool
+	 *            The pool to run the threads on.
+	 * @throws NullParameterException
+	 */
+	public TileThreadServer(final CellRule<V> rule,
+			final Lattice2D<V> lattice, final int numThreads,
+			final WorkerPool pool) throws NullParameterException {
+		super(rule, (Iterator<Cell<V>>) null, numThreads, pool);
+		if (lattice == null) {
+			throw new NullParameterException("lattice");
+		}
+		this.cellRule = rule;
+		this.lattice = lattice;
+
+		int w = lattice.getWidth();
+		int h = lattice.getHeight();
+		int[] tileSize = rule.getTileSize(lattice);
+		tileWidth = tileSize[0];
+		tileHeight = tileSize[1];
+		tilesAcross = Math.max(1, (w + tileWidth - 1) / tileWidth);
+		numTiles = tilesAcross * ((h + tileHeight - 1) / tileHeight);
+
+		nextTile = new AtomicIntegerArray(numThreads);
+		lastTile = new int[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			nextTile.set(i, (int) ((long) numTiles * i / numThreads));
+			lastTile[i] = (int) ((long) numTiles * (i + 1) / numThreads);
+		}
+		threadCount = new AtomicInteger();
+	}
+
+	/**
+	 * Updates the tiles in this thread's block, then steals tiles from the
+	 * other threads until there are none left.
+	 */
+	@Override
+	public void process() {
+		int thread = threadCount.getAndIncrement() % numThreads;
+		for (int i = 0; i < numThreads; i++) {
+			int block = (thread + i) % numThreads;
+			int tile;
+			while ((tile = nextTile.getAndIncrement(block)) < lastTile[block]) {
+				update(tile);
+			}
+		}
+	}
+
+	/**
+	 * Updates the cells in the specified tile.
+	 *
+	 * @param tile
+	 */
+	public void update(final int tile) {
+		int x0 = (tile % tilesAcross) * tileWidth;
+		int y0 = (tile / tilesAcross) * tileHeight;
+		int x1 = Math.min(x0 + tileWidth, lattice.getWidth());
+		int y1 = Math.min(y0 + tileHeight, lattice.getHeight());
+
+		try {
+			cellRule.update(x0, y0, x1, y1);
+		} catch (CAException e) {
+			handleException(e);
+		}
+	}
+
+	/**
+	 * Updates the cells, then lets the rule decide whether to make another
+	 * pass.
+	 * 
+	 * @return true when the rule is due to make another pass.
+	 */
+	@Override
+	public boolean run() {
+		super.run();
+		return cellRule.completePass();
+	}
+}
@@ -0,0 +1,171 @@
+package ca.concurrency;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived pool of worker threads that ThreadServers submit their work to,
+ * so that threads are not created anew for every rule pass.
+ * <p>
+ * Worker threads are daemon threads, so an idle pool does not keep the JVM
+ * running. A shutdown hook stops the pool when the JVM exits, but owners
+ * should call shutdown() when they are done with it.
+ *
+ * @author Sean
+ */
+public class WorkerPool {
+	/** Number of threads to create by default: one for each core. */
+	public final static int DEFAULT_POOL_SIZE = Runtime.getRuntime()
+			.availableProcessors();
+	/** Shared pool, used by ThreadServers that are not given a pool. */
+	protected static WorkerPool defaultPool;
+
+	/** Runs the submitted tasks. */
+	protected final ExecutorService executor;
+	/** Number of threads in the pool. */
+	protected final int size;
+	/** Stops the executor when the JVM exits. */
+	protected final Thread shutdownHook;
+
+	/**
+	 * Creates a pool with one platform thread per core.
+	 */
+	public WorkerPool() {
+		this(DEFAULT_POOL_SIZE, false);
+	}
+
+	/**
+	 * Creates a pool with the specified number of threads.
+	 *
+	 * @param size
+	 *            Number of threads to create.
+	 * @param virtual
+	 *            Use virtual threads instead of platform threads. Falls back
+	 *            to platform threads when the JVM does not support them.
+	 */
+	public WorkerPool(final int size, final boolean virtual) {
+		this.size = size;
+		ThreadFactory threadFactory = null;
+		if (virtual) {
+			threadFactory = virtualThreadFactory();
+		}
+		if (threadFactory == null) {
+			threadFactory = new WorkerThreadFactory();
+		}
+		executor = Executors.newFixedThreadPool(size, threadFactory);
+
+		shutdownHook = new Thread() {
+			@Override
+			public void run() {
+				executor.shutdownNow();
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Gets the shared pool, creating it if necessary.
+	 *
+	 * @return
+	 */
+	public static synchronized WorkerPool getDefault() {
+		if (defaultPool == null || defaultPool.isShutdown()) {
+			defaultPool = new WorkerPool();
+		}
+		return defaultPool;
+	}
+
+	/**
+	 * Runs the task on one of the pool's threads.
+	 *
+	 * @param task
+	 */
+	public void execute(final Runnable task) {
+		executor.execute(task);
+	}
+
+	/**
+	 * Gets the number of threads in the pool.
+	 *
+	 * @return
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Checks whether the pool has been shut down.
+	 *
+	 * @return
+	 */
+	public boolean isShutdown() {
+		return executor.isShutdown();
+	}
+
+	/**
+	 * Lets queued tasks finish, then stops the pool's threads. The pool
+	 * cannot be used after this.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			/* The JVM is already shutting down and the hook will run. */
+		}
+	}
+
+	/**
+	 * Blocks until all tasks have finished after a shutdown.
+	 *
+	 * @param timeout
+	 *            Maximum time to wait, in milliseconds.
+	 * @return true if the pool terminated, false if the timeout elapsed.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(final long timeout)
+			throws InterruptedException {
+		return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets a factory for virtual threads. Virtual threads are only available
+	 * from Java 21, so they are looked up by reflection. The factory method
+	 * is looked up on the public Thread.Builder interface, since the class of
+	 * the builder itself is internal to the JDK and cannot be called through.
+	 *
+	 * @return The factory, or null if virtual threads are not supported.
+	 */
+	protected static ThreadFactory virtualThreadFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder")
+					.getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates named daemon threads.
+	 */
+	protected static class WorkerThreadFactory implements ThreadFactory {
+		protected static final AtomicInteger poolCount = new AtomicInteger();
+		protected final AtomicInteger threadCount = new AtomicInteger();
+		protected final int poolNumber = poolCount.incrementAndGet();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "CA-worker-" + poolNumber
+					+ "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,523 @@
+package ca.lattice;
+
+import graphics.YCbCrPlanes;
+import helpers.ConcurrentBitSet;
+
+import java.awt.Color;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import std.Picture;
+
+import ca.Cell;
+import ca.FlyweightCell;
+import exceptions.CAException;
+import exceptions.NullParameterException;
+
+/**
+ * A lattice of pixels stored as packed ARGB integers instead of
+ * java.awt.Color objects.
+ * <p>
+ * The states are double-buffered: cells read from the before buffer and write
+ * to the after buffer, as with PictureLattice. When a rule writes every cell,
+ * the buffers are swapped after each pass. Otherwise the lattice keeps track
+ * of the cells that were written and copies only those. Nothing is allocated
+ * between passes. Rules that only need the raw
+ * colour values should use getRGB() and setRGB(), which do not allocate
+ * anything. The Lattice<Color> methods still work, but create a new Color on
+ * every call.
+ * <p>
+ * Pixels are stored in the order given by a Layout: by default row-major, the
+ * same as the image raster. Cells are not stored at all: a cell is just an
+ * index into the buffers, and FlyweightCells are only created when a rule
+ * asks for one.
+ * <p>
+ * A RowMajorLayout can have a border of padding around the image, so that
+ * stencil rules whose radius is no greater than the padding can add offsets
+ * to any cell's index without checking bounds (see StencilRule). Padding
+ * pixels are 0, which is fully transparent, while every pixel of the image is
+ * opaque, so rules can tell them apart without branching. In the YCbCr planes
+ * they are undefined, so they compare as neither similar nor different to any
+ * pixel. The same goes for the indices that a ZOrderLayout leaves unused.
+ * These indices do not belong to any cell, so size() can be greater than the
+ * number of cells.
+ * <p>
+ * The lattice can also keep the before buffer converted to YCbCr planes, for
+ * rules that compare colours. Only the pixels that changed are converted
+ * again when a rule completes. Likewise for the differences between adjacent
+ * pixels, once a DifferenceRule has computed them, except that a rule that
+ * writes every pixel discards them.
+ *
+ * @author Sean
+ */
+public class ARGBLattice implements Lattice2D<Color> {
+	/** Lattice width. */
+	protected final int width;
+	/** Lattice height. */
+	protected final int height;
+	/** Maps coordinates to indices in the buffers. */
+	protected final Layout layout;
+	/**
+	 * Pixels given to the CA to process or the output of the previous pass.
+	 * <p>
+	 * No changes are made to these pixels.
+	 */
+	protected int[] before;
+	/**
+	 * The pixels that cells write to during a pass. Only the pixels written
+	 * during the current pass are meaningful.
+	 */
+	protected int[] after;
+	/** Pixels written during the current pass, unless every pixel is. */
+	protected final ConcurrentBitSet written;
+	/** States whether the rule making the current pass writes every pixel. */
+	protected boolean writesAll;
+	/** Picture that the before buffer is written to, see getResult(). */
+	protected final Picture result;
+	/** Whether a pass has completed since the result was last written. */
+	protected boolean resultStale;
+	/** The before buffer in YCbCr format, or null until a rule asks for it. */
+	protected YCbCrPlanes planes;
+	/** Differences between adjacent pixels, or null if not computed. */
+	protected DifferencePlanes differences;
+
+	/**
+	 * Constructor. Creates a lattice without padding.
+	 *
+	 * @param picture
+	 * @throws CAException
+	 */
+	public ARGBLattice(final Picture picture) throws CAException {
+		this(picture, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param picture
+	 * @param padding
+	 *            Width of the border of padding around the image. Should be
+	 *            the radius of the widest neighbourhood that rules use.
+	 * @throws CAException
+	 */
+	public ARGBLattice(final Picture picture, final int padding)
+			throws CAException {
+		this(picture, new RowMajorLayout(picture.width(), picture.height(),
+				checkPadding(padding)));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param picture
+	 * @param layout
+	 *            Order to store the pixels in. Must be the size of the
+	 *            picture.
+	 * @throws CAException
+	 */
+	public ARGBLattice(final Picture picture, final Layout layout)
+			throws CAException {
+		width = picture.width();
+		height = picture.height();
+		if (layout == null) {
+			throw new NullParameterException("layout");
+		} else if (layout.getWidth() != width || layout.getHeight() != height) {
+			throw new CAException("Layout does not match the picture size");
+		}
+		this.layout = layout;
+
+		before = new int[layout.size()];
+		int[] pixels = picture.getPixels();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				/*
+				 * Transparency is not supported (see Picture), so every pixel
+				 * is made opaque, as it would be after the first pass anyway.
+				 */
+				before[layout.getIndex(x, y)] = pixels[y * width + x]
+						| 0xff000000;
+			}
+		}
+		after = new int[before.length];
+		written = new ConcurrentBitSet(before.length);
+
+		result = new Picture(width, height);
+		writeResult();
+	}
+
+	/**
+	 * Checks that the padding is not negative.
+	 *
+	 * @param padding
+	 * @return
+	 * @throws CAException
+	 */
+	protected static int checkPadding(final int padding) throws CAException {
+		if (padding < 0) {
+			throw new CAException("Padding cannot be negative");
+		}
+		return padding;
+	}
+
+	/**
+	 * Gets the cell corresponding to (x,y) in the source image.
+	 * <p>
+	 * Returns null when coordinates are out of bounds.
+	 *
+	 * @param x
+	 *            Cell's x-coordinate.
+	 * @param y
+	 *            Cell's y-coordinate.
+	 * @return Cell at the specified position.
+	 * @throws CAException
+	 */
+	@Override
+	public Cell<Color> get(final int... x) throws CAException {
+		if (x.length != 2) {
+			throw new CAException("Wrong number of dimensions");
+		}
+		int index = getIndex(x[0], x[1]);
+		if (index < 0) {
+			return null;
+		}
+		return new FlyweightCell<Color>(this, index);
+	}
+
+	@Override
+	public Cell<Color> getCell(final int index) {
+		return new FlyweightCell<Color>(this, index);
+	}
+
+	/**
+	 * Gets the number of indices, including those that do not belong to a
+	 * cell.
+	 *
+	 * @return
+	 */
+	@Override
+	public int size() {
+		return before.length;
+	}
+
+	/**
+	 * Gets the index of the pixel at (x,y) in the ARGB buffers.
+	 *
+	 * @param x
+	 * @param y
+	 * @return The index, or -1 when coordinates are out of bounds.
+	 */
+	@Override
+	public int getIndex(final int x, final int y) {
+		return layout.getIndex(x, y);
+	}
+
+	@Override
+	public int getX(final int index) {
+		return layout.getX(index);
+	}
+
+	@Override
+	public int getY(final int index) {
+		return layout.getY(index);
+	}
+
+	@Override
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Gets the width of the border of padding around the image.
+	 *
+	 * @return
+	 */
+	public int getPadding() {
+		return layout.getPadding();
+	}
+
+	/**
+	 * Gets the packed ARGB value of the pixel at the specified index.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getRGB(final int index) {
+		return before[index];
+	}
+
+	/**
+	 * Sets the packed ARGB value of the pixel at the specified index.
+	 *
+	 * @param index
+	 * @param argb
+	 */
+	public void setRGB(final int index, final int argb) {
+		after[index] = argb;
+		if (!writesAll) {
+			written.set(index);
+		}
+	}
+
+	/**
+	 * Copies the packed ARGB values of the w-by-h tile at (x,y) into dst,
+	 * starting at the specified offset with scansize ints from one row to the
+	 * next.
+	 *
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @param dst
+	 * @param offset
+	 * @param scansize
+	 */
+	public void getTile(final int x, final int y, final int w, final int h,
+			final int[] dst, final int offset, final int scansize) {
+		for (int row = 0; row < h; row++) {
+			int start = getIndex(x, y + row);
+			int dstRow = offset + row * scansize;
+			if (getIndex(x + w - 1, y + row) - start == w - 1) {
+				System.arraycopy(before, start, dst, dstRow, w);
+			} else {
+				for (int i = 0; i < w; i++) {
+					dst[dstRow + i] = before[getIndex(x + i, y + row)];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the packed ARGB value of the pixel corresponding to the cell.
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public int getRGB(final Cell<Color> cell) {
+		return before[cell.getIndex()];
+	}
+
+	/**
+	 * Sets the packed ARGB value of the pixel corresponding to the cell.
+	 *
+	 * @param cell
+	 * @param argb
+	 */
+	public void setRGB(final Cell<Color> cell, final int argb) {
+		setRGB(cell.getIndex(), argb);
+	}
+
+	/**
+	 * Sets the colour of the pixel corresponding to the cell.
+	 *
+	 * @param cell
+	 *            The cell to set the colour of.
+	 * @param colour
+	 *            The colour to set the cell to.
+	 */
+	@Override
+	public void setState(final Cell<Color> cell, final Color colour) {
+		setRGB(cell, colour.getRGB());
+	}
+
+	/**
+	 * Gets the colour of the pixel corresponding to the cell.
+	 *
+	 * @param cell
+	 *            The cell to get the colour of.
+	 * @return Colour of the pixel at specified position.
+	 */
+	@Override
+	public Color getState(final Cell<Color> cell) {
+		return new Color(getRGB(cell));
+	}
+
+	@Override
+	public void setState(final int index, final Color colour) {
+		setRGB(index, colour.getRGB());
+	}
+
+	@Override
+	public Color getState(final int index) {
+		return new Color(before[index]);
+	}
+
+	/**
+	 * Gets the lattice width.
+	 *
+	 * @return Lattice width.
+	 */
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the lattice height.
+	 *
+	 * @return Lattice height.
+	 */
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the before buffer converted to YCbCr planes. The planes are created
+	 * the first time this is called and kept up to date after that.
+	 *
+	 * @return
+	 */
+	public synchronized YCbCrPlanes getYCbCrPlanes() {
+		if (planes == null) {
+			planes = new YCbCrPlanes(before);
+			if (before.length > width * height) {
+				for (int i = 0; i < before.length; i++) {
+					if (!layout.isCell(i)) {
+						planes.setUndefined(i);
+					}
+				}
+			}
+		}
+		return planes;
+	}
+
+	/**
+	 * Creates planes for the differences between adjacent pixels of the
+	 * before buffer, replacing any there were. The differences still have to
+	 * be computed, see DifferenceRule. After that they are kept up to date
+	 * until a rule writes every pixel.
+	 *
+	 * @return
+	 */
+	public synchronized DifferencePlanes createDifferencePlanes() {
+		differences = new DifferencePlanes(this);
+		return differences;
+	}
+
+	/**
+	 * Gets the differences between adjacent pixels of the before buffer.
+	 *
+	 * @return The differences, or null if they are not kept.
+	 */
+	public synchronized DifferencePlanes getDifferencePlanes() {
+		return differences;
+	}
+
+	@Override
+	public void prepare(final boolean writesAll) {
+		this.writesAll = writesAll;
+	}
+
+	/**
+	 * Makes the pixels written during the pass the new before buffer. When
+	 * every pixel was written the buffers are swapped, otherwise only the
+	 * written pixels are copied. If there are YCbCr planes, only the pixels
+	 * that changed are converted again, and so are their differences. The
+	 * result picture is only brought up to date when it is asked for, see
+	 * getResult().
+	 */
+	@Override
+	public void complete() {
+		if (writesAll) {
+			/* Most pixels change, so it is cheaper to compute them again. */
+			differences = null;
+			if (planes != null) {
+				for (int i = 0; i < after.length; i++) {
+					if (after[i] != before[i]) {
+						planes.set(i, after[i]);
+					}
+				}
+			}
+			int[] swap = before;
+			before = after;
+			after = swap;
+		} else {
+			for (int i = written.nextSetBit(0); i >= 0; i = written
+					.nextSetBit(i + 1)) {
+				int argb = after[i];
+				if (argb != before[i]) {
+					before[i] = argb;
+					if (planes != null) {
+						planes.set(i, argb);
+					}
+					if (differences != null) {
+						differences.update(i);
+					}
+				}
+			}
+			written.clear();
+		}
+		resultStale = true;
+	}
+
+	/**
+	 * Finds the first index from the specified one that belongs to a cell.
+	 *
+	 * @param index
+	 * @return The index, or size() if there are none.
+	 */
+	protected int nextCell(int index) {
+		while (index < before.length && !layout.isCell(index)) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the before buffer to the result picture.
+	 */
+	protected void writeResult() {
+		if (layout instanceof RowMajorLayout && layout.getPadding() == 0) {
+			System.arraycopy(before, 0, result.getPixels(), 0, before.length);
+		} else {
+			getTile(0, 0, width, height, result.getPixels(), 0, width);
+		}
+	}
+
+	/**
+	 * Gets the picture holding the output of the last completed pass. The
+	 * before buffer is written to it here, once after any number of passes,
+	 * rather than after every pass. The same picture is returned each time,
+	 * so it only shows the output of later passes once this is called again.
+	 *
+	 * @return
+	 */
+	public synchronized Picture getResult() {
+		if (resultStale) {
+			writeResult();
+			resultStale = false;
+		}
+		return result;
+	}
+
+	/**
+	 * Iterates over the lattice in index order, creating a FlyweightCell for
+	 * each position. Skips the indices that do not belong to a cell.
+	 */
+	@Override
+	public Iterator<Cell<Color>> iterator() {
+		return new Iterator<Cell<Color>>() {
+			protected int index = nextCell(0);
+
+			@Override
+			public boolean hasNext() {
+				return index < before.length;
+			}
+
+			@Override
+			public Cell<Color> next() {
+				if (index >= before.length) {
+					throw new NoSuchElementException();
+				}
+				Cell<Color> cell = getCell(index);
+				index = nextCell(index + 1);
+				return cell;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
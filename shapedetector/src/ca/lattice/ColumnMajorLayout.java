@@ -0,0 +1,52 @@
+package ca.lattice;
+
+/**
+ * Stores cells column by column. PictureLattice uses this by default.
+ * <p>
+ * Since images are stored row by row, copying between the two reads across
+ * rows, and rules that visit a row at a time read a new cache line for every
+ * cell. Kept for comparison with the other layouts.
+ *
+ * @author Sean
+ */
+public class ColumnMajorLayout extends Layout {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width
+	 * @param height
+	 */
+	public ColumnMajorLayout(final int width, final int height) {
+		super(width, height);
+	}
+
+	@Override
+	public int size() {
+		return width * height;
+	}
+
+	@Override
+	public int getIndex(final int x, final int y) {
+		if (x >= 0 && y >= 0 && x < width && y < height) {
+			return x * height + y;
+		} else {
+			return -1;
+		}
+	}
+
+	@Override
+	public int getX(final int index) {
+		return index / height;
+	}
+
+	@Override
+	public int getY(final int index) {
+		return index % height;
+	}
+
+	@Override
+	public boolean isLinear() {
+		return true;
+	}
+}
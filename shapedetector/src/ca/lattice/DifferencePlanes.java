@@ -0,0 +1,322 @@
+package ca.lattice;
+
+import graphics.ColourCompare;
+import graphics.ColourKernels;
+import graphics.YCbCrPlanes;
+
+import java.util.Arrays;
+
+/**
+ * Caches the colour difference between each cell of an ARGBLattice and each
+ * of its eight adjacent neighbours, so that rules comparing a cell with its
+ * neighbours read them instead of working them out again.
+ * <p>
+ * The difference between two cells is the same both ways, so only the
+ * differences to the right, down, down-right and down-left neighbours are
+ * stored, each at the index of the cell. The difference to the left, up,
+ * up-left or up-right neighbour is the one stored at that neighbour, see
+ * isStored(). Pairs of cells that do not both belong to the image, such as a
+ * cell and the padding around the image, have a difference of NaN.
+ * <p>
+ * The planes hold squared distances in YCbCr space, exactly as
+ * YCbCrPlanes.getSquaredDistance() gives them, rather than difference
+ * quotients, so that no square roots are taken to compare them. Use
+ * getThreshold() to compare them with epsilon, which gives the same results
+ * as comparing the difference quotients.
+ * <p>
+ * The planes are filled in by compute(), which can be called for different
+ * cells on different threads (see DifferenceRule), and kept up to date with
+ * update() as cells change.
+ *
+ * @author Sean
+ */
+public class DifferencePlanes {
+	/** The lattice that the differences are taken of. */
+	protected final ARGBLattice lattice;
+	/** The lattice's YCbCr planes. */
+	protected final YCbCrPlanes planes;
+	/** Differences to the right neighbours. */
+	protected final float[] right;
+	/** Differences to the neighbours below. */
+	protected final float[] down;
+	/** Differences to the neighbours below and to the right. */
+	protected final float[] downRight;
+	/** Differences to the neighbours below and to the left. */
+	protected final float[] downLeft;
+	/**
+	 * Index offsets of the right and down neighbours, when the layout is
+	 * linear. Otherwise 0.
+	 */
+	protected final int xStride, yStride;
+
+	/**
+	 * Constructor. Every difference is NaN until it is computed.
+	 *
+	 * @param lattice
+	 */
+	public DifferencePlanes(final ARGBLattice lattice) {
+		this.lattice = lattice;
+		planes = lattice.getYCbCrPlanes();
+		int size = lattice.size();
+		right = new float[size];
+		down = new float[size];
+		downRight = new float[size];
+		downLeft = new float[size];
+		Arrays.fill(right, Float.NaN);
+		Arrays.fill(down, Float.NaN);
+		Arrays.fill(downRight, Float.NaN);
+		Arrays.fill(downLeft, Float.NaN);
+		if (lattice.getLayout().isLinear()) {
+			int origin = lattice.getIndex(0, 0);
+			xStride = lattice.getWidth() > 1 ? lattice.getIndex(1, 0) - origin
+					: 0;
+			yStride = lattice.getHeight() > 1 ? lattice.getIndex(0, 1)
+					- origin : 0;
+		} else {
+			xStride = 0;
+			yStride = 0;
+		}
+	}
+
+	/**
+	 * Works out the differences stored at the cells from (x0,y0) up to, but
+	 * not including, (x1,y1).
+	 *
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 */
+	public void compute(final int x0, final int y0, final int x1, final int y1) {
+		int width = lattice.getWidth();
+		int height = lattice.getHeight();
+		for (int y = y0; y < y1; y++) {
+			int x = x0;
+			if (xStride != 0 && y < height - 1) {
+				/* The neighbours of inner cells are at fixed offsets. */
+				if (x == 0) {
+					compute(lattice.getIndex(x, y), x, y);
+					x++;
+				}
+				int end = Math.min(x1, width - 1);
+				int index = lattice.getIndex(x, y);
+				if (xStride == 1 && x < end) {
+					/* The cells are stored next to each other. */
+					computeRun(index, end - x);
+					index += end - x;
+					x = end;
+				}
+				for (; x < end; x++, index += xStride) {
+					right[index] = planes.getSquaredDistance(index, index
+							+ xStride);
+					down[index] = planes.getSquaredDistance(index, index
+							+ yStride);
+					downRight[index] = planes.getSquaredDistance(index, index
+							+ yStride + xStride);
+					downLeft[index] = planes.getSquaredDistance(index, index
+							+ yStride - xStride);
+				}
+			}
+			for (; x < x1; x++) {
+				compute(lattice.getIndex(x, y), x, y);
+			}
+		}
+	}
+
+	/**
+	 * Works out the differences stored at a run of inner cells that are
+	 * stored next to each other.
+	 *
+	 * @param index
+	 *            Index of the first cell.
+	 * @param length
+	 *            Number of cells.
+	 */
+	protected void computeRun(final int index, final int length) {
+		float[] luma = planes.getLuma();
+		float[] blueChroma = planes.getBlueChroma();
+		float[] redChroma = planes.getRedChroma();
+		ColourKernels.squaredDistances(luma, blueChroma, redChroma, index, 1,
+				right, index, length);
+		ColourKernels.squaredDistances(luma, blueChroma, redChroma, index,
+				yStride, down, index, length);
+		ColourKernels.squaredDistances(luma, blueChroma, redChroma, index,
+				yStride + 1, downRight, index, length);
+		ColourKernels.squaredDistances(luma, blueChroma, redChroma, index,
+				yStride - 1, downLeft, index, length);
+	}
+
+	/**
+	 * Works out the differences stored at the cell with the specified index,
+	 * that is to its right, down, down-right and down-left neighbours.
+	 *
+	 * @param index
+	 */
+	public void compute(final int index) {
+		compute(index, lattice.getX(index), lattice.getY(index));
+	}
+
+	/**
+	 * Works out the differences stored at the cell at (x,y).
+	 *
+	 * @param index
+	 *            Index of the cell.
+	 * @param x
+	 * @param y
+	 */
+	protected void compute(final int index, final int x, final int y) {
+		right[index] = getSquaredDistance(index, x + 1, y);
+		down[index] = getSquaredDistance(index, x, y + 1);
+		downRight[index] = getSquaredDistance(index, x + 1, y + 1);
+		downLeft[index] = getSquaredDistance(index, x - 1, y + 1);
+	}
+
+	/**
+	 * Gets the squared distance between a cell and another cell, or NaN if
+	 * the other cell is outside the lattice.
+	 *
+	 * @param index
+	 *            Index of the cell.
+	 * @param x
+	 *            Position of the other cell.
+	 * @param y
+	 * @return
+	 */
+	protected float getSquaredDistance(final int index, final int x,
+			final int y) {
+		if (x < 0 || y < 0 || x >= lattice.getWidth()
+				|| y >= lattice.getHeight()) {
+			return Float.NaN;
+		}
+		return planes.getSquaredDistance(index, lattice.getIndex(x, y));
+	}
+
+	/**
+	 * Works out every difference between the cell with the specified index
+	 * and its neighbours again, after its colour has changed. If neighbouring
+	 * cells change too, each must be updated after all their YCbCr components
+	 * have been, so that the last of them brings their shared difference up
+	 * to date.
+	 *
+	 * @param index
+	 */
+	public void update(final int index) {
+		int x = lattice.getX(index);
+		int y = lattice.getY(index);
+		compute(index, x, y);
+		/* The differences stored at the neighbours to the left and above. */
+		if (x > 0) {
+			right[lattice.getIndex(x - 1, y)] = getSquaredDistance(index,
+					x - 1, y);
+		}
+		if (y > 0) {
+			down[lattice.getIndex(x, y - 1)] = getSquaredDistance(index, x,
+					y - 1);
+			if (x > 0) {
+				downRight[lattice.getIndex(x - 1, y - 1)] = getSquaredDistance(
+						index, x - 1, y - 1);
+			}
+			if (x < lattice.getWidth() - 1) {
+				downLeft[lattice.getIndex(x + 1, y - 1)] = getSquaredDistance(
+						index, x + 1, y - 1);
+			}
+		}
+	}
+
+	/**
+	 * Copies the differences stored at a run of cells, such as a row of the
+	 * image when the layout stores it contiguously.
+	 *
+	 * @param srcPos
+	 *            Index of the first cell to copy.
+	 * @param dest
+	 *            Arrays to copy to, for the differences to the right, down,
+	 *            down-right and down-left neighbours, in that order.
+	 * @param destPos
+	 *            Index of the first cell to copy to.
+	 * @param length
+	 *            Number of cells to copy.
+	 */
+	public void copy(final int srcPos, final float[][] dest,
+			final int destPos, final int length) {
+		System.arraycopy(right, srcPos, dest[0], destPos, length);
+		System.arraycopy(down, srcPos, dest[1], destPos, length);
+		System.arraycopy(downRight, srcPos, dest[2], destPos, length);
+		System.arraycopy(downLeft, srcPos, dest[3], destPos, length);
+	}
+
+	/**
+	 * Checks whether the difference between a cell and its neighbour at
+	 * (dx,dy) is stored at the cell's index. Otherwise it is stored at the
+	 * neighbour's index.
+	 *
+	 * @param dx
+	 * @param dy
+	 * @return
+	 */
+	public static boolean isStored(final int dx, final int dy) {
+		return dy > 0 || (dy == 0 && dx > 0);
+	}
+
+	/**
+	 * Gets the plane holding the differences between cells and their
+	 * neighbours at (dx,dy). See isStored() for whether to look them up at
+	 * the index of the cell or of the neighbour.
+	 *
+	 * @param dx
+	 * @param dy
+	 * @return The plane, or null if the neighbour is not adjacent.
+	 */
+	public float[] getPlane(final int dx, final int dy) {
+		if (dy == 0 && Math.abs(dx) == 1) {
+			return right;
+		} else if (dx == 0 && Math.abs(dy) == 1) {
+			return down;
+		} else if (dx == dy && Math.abs(dx) == 1) {
+			return downRight;
+		} else if (dx == -dy && Math.abs(dx) == 1) {
+			return downLeft;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the smallest squared distance whose difference quotient is greater
+	 * than epsilon, or with inclusive set, at least epsilon. The difference
+	 * quotient only grows with the squared distance, so comparing squared
+	 * distances with the threshold gives the same results as comparing their
+	 * difference quotients with epsilon.
+	 *
+	 * @param epsilon
+	 * @param inclusive
+	 * @return
+	 */
+	public static float getThreshold(final double epsilon,
+			final boolean inclusive) {
+		double distance = epsilon * ColourCompare.MAX_DISTANCE;
+		float threshold = (float) (distance * distance);
+		while (threshold > 0f
+				&& exceeds(Math.nextAfter(threshold, Double.NEGATIVE_INFINITY),
+						epsilon, inclusive)) {
+			threshold = Math.nextAfter(threshold, Double.NEGATIVE_INFINITY);
+		}
+		while (threshold < Float.POSITIVE_INFINITY
+				&& !exceeds(threshold, epsilon, inclusive)) {
+			threshold = Math.nextUp(threshold);
+		}
+		return threshold;
+	}
+
+	/**
+	 * Checks whether the difference quotient of a squared distance is greater
+	 * than epsilon, or with inclusive set, at least epsilon.
+	 *
+	 * @see YCbCrPlanes#getDifference(int, int)
+	 */
+	protected static boolean exceeds(final float squaredDistance,
+			final double epsilon, final boolean inclusive) {
+		double difference = Math.sqrt(squaredDistance)
+				/ ColourCompare.MAX_DISTANCE;
+		return inclusive ? difference >= epsilon : difference > epsilon;
+	}
+}
@@ -22,6 +22,28 @@ public interface Lattice<V> extends Iterable<Cell<V>> {
 	 */
 	public Cell<V> get(final int... x) throws CAException;
 
+	/**
+	 * Gets the cell with the specified index.
+	 * <p>
+	 * Lattices are not required to keep a cell object for each position, so
+	 * the cell returned may be a new object that only refers to the lattice.
+	 * Compare cells with equals() rather than ==.
+	 * 
+	 * @param index
+	 *            The cell's index, from 0 to size()-1.
+	 * @return Cell at the specified index.
+	 */
+	public Cell<V> getCell(final int index);
+
+	/**
+	 * Gets the number of cells in the lattice. Lattices that reserve indices
+	 * for padding return the number of indices instead, so that arrays
+	 * indexed like the lattice can be sized with this.
+	 * 
+	 * @return
+	 */
+	public int size();
+
 	/**
 	 * Gets the state of the specified cell.
 	 * 
@@ -29,6 +51,21 @@ public interface Lattice<V> extends Iterable<Cell<V>> {
 	 */
 	public V getState(final Cell<V> cell);
 
+	/**
+	 * Gets the state of the cell with the specified index.
+	 * 
+	 * @param index
+	 */
+	public V getState(final int index);
+
+	/**
+	 * Sets the state of the cell with the specified index.
+	 * 
+	 * @param index
+	 * @param value
+	 */
+	public void setState(final int index, final V value);
+
 	/**
 	 * Sets the state of the specified cell.
 	 * 
@@ -38,7 +75,17 @@ public interface Lattice<V> extends Iterable<Cell<V>> {
 	public void setState(final Cell<V> cell, final V value);
 
 	/**
-	 * Executes when a rule has finished working on the lattice.
+	 * Executes before a rule makes a pass over the lattice.
+	 * 
+	 * @param writesAll
+	 *            true when the rule sets the state of every cell during the
+	 *            pass, so that the states from before the pass need not be
+	 *            carried over.
+	 */
+	public void prepare(final boolean writesAll);
+
+	/**
+	 * Executes when a rule has finished a pass over the lattice.
 	 */
 	public void complete();
 
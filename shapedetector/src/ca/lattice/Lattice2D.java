@@ -0,0 +1,61 @@
+package ca.lattice;
+
+/**
+ * A two dimensional lattice of cells, that maps cell coordinates to indices.
+ * <p>
+ * Rules that work with indices instead of cell objects can use this to find
+ * neighbouring cells without creating any objects.
+ * 
+ * @author Sean
+ * 
+ * @param <V>
+ */
+public interface Lattice2D<V> extends Lattice<V> {
+	/**
+	 * Gets the lattice width.
+	 * 
+	 * @return Lattice width.
+	 */
+	public int getWidth();
+
+	/**
+	 * Gets the lattice height.
+	 * 
+	 * @return Lattice height.
+	 */
+	public int getHeight();
+
+	/**
+	 * Gets the index of the cell at (x,y).
+	 * 
+	 * @param x
+	 *            Cell's x-coordinate.
+	 * @param y
+	 *            Cell's y-coordinate.
+	 * @return The cell's index, or -1 when coordinates are out of bounds.
+	 */
+	public int getIndex(final int x, final int y);
+
+	/**
+	 * Gets the x-coordinate of the cell with the specified index.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public int getX(final int index);
+
+	/**
+	 * Gets the y-coordinate of the cell with the specified index.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public int getY(final int index);
+
+	/**
+	 * Gets the order that the cells are stored in.
+	 * 
+	 * @return
+	 */
+	public Layout getLayout();
+}
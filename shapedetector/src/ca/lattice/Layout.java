@@ -0,0 +1,133 @@
+package ca.lattice;
+
+/**
+ * Decides where each cell of a two dimensional lattice is stored, by mapping
+ * coordinates to indices and back.
+ * <p>
+ * The layout determines which cells lie close together in memory, so it
+ * should match the order that rules visit cells in. Lattices iterate in index
+ * order, and lattices split into tiles ask the layout which tile size suits
+ * it.
+ * <p>
+ * Every layout keeps indices increasing with x along a row and with y down a
+ * column. Some layouts reserve indices that do not belong to any cell, such
+ * as padding, so size() may be greater than the number of cells.
+ *
+ * @author Sean
+ */
+public abstract class Layout {
+	/** Lattice width. */
+	protected final int width;
+	/** Lattice height. */
+	protected final int height;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width
+	 * @param height
+	 */
+	public Layout(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Gets the number of indices, including any that do not belong to a cell.
+	 *
+	 * @return
+	 */
+	public abstract int size();
+
+	/**
+	 * Gets the index of the cell at (x,y).
+	 *
+	 * @param x
+	 * @param y
+	 * @return The index, or -1 when coordinates are out of bounds.
+	 */
+	public abstract int getIndex(int x, int y);
+
+	/**
+	 * Gets the x-coordinate of the cell with the specified index.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public abstract int getX(int index);
+
+	/**
+	 * Gets the y-coordinate of the cell with the specified index.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public abstract int getY(int index);
+
+	/**
+	 * Checks whether the neighbours of every cell lie at the same index
+	 * offsets, so that neighbours can be found by adding offsets to a cell's
+	 * index.
+	 *
+	 * @return
+	 */
+	public abstract boolean isLinear();
+
+	/**
+	 * Checks whether the specified index belongs to a cell, rather than to
+	 * padding or to a gap in the layout.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public boolean isCell(final int index) {
+		int x = getX(index);
+		int y = getY(index);
+		return x >= 0 && y >= 0 && x < width && y < height;
+	}
+
+	/**
+	 * Gets the width of the border of padding around the cells, that any
+	 * linear stencil within that radius can read without checking bounds.
+	 *
+	 * @return
+	 */
+	public int getPadding() {
+		return 0;
+	}
+
+	/**
+	 * Gets the tile size that suits the layout, given the size a rule asks
+	 * for. By default the rule's size is kept.
+	 *
+	 * @param tileWidth
+	 * @param tileHeight
+	 * @return The width and height of the tiles.
+	 */
+	public int[] getTileSize(final int tileWidth, final int tileHeight) {
+		return new int[] { tileWidth, tileHeight };
+	}
+
+	/**
+	 * Gets the lattice width.
+	 *
+	 * @return
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the lattice height.
+	 *
+	 * @return
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+}
@@ -1,19 +1,23 @@
 package ca.lattice;
 
-import helpers.NDArrayList;
+import helpers.ConcurrentBitSet;
 
 import java.awt.Color;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import std.Picture;
 
 import ca.CACell;
 import ca.Cell;
 import exceptions.CAException;
+import exceptions.NullParameterException;
 
-public class PictureLattice implements Lattice<Color> {
-	/** Two dimensional array of cells. */
-	protected NDArrayList<Cell<Color>> lattice;
+public class PictureLattice implements Lattice2D<Color> {
+	/** The cells, stored in the order given by the layout. */
+	protected Cell<Color>[] lattice;
+	/** Maps coordinates to indices. */
+	protected final Layout layout;
 	/**
 	 * Picture first given to the CA to process or in the event that the CA did
 	 * not finish after its first pass, this is the output of the previous pass.
@@ -22,31 +26,70 @@ public class PictureLattice implements Lattice<Color> {
 	 */
 	protected Picture pictureBefore;
 	/**
-	 * Starts off as a copy of the source image, but is subject to change as
-	 * cells update.
+	 * The picture that cells write to during a pass. Only the pixels written
+	 * during the current pass are meaningful.
 	 */
 	protected Picture pictureAfter;
+	/** Cells written during the current pass, unless every cell is. */
+	protected ConcurrentBitSet written;
+	/** States whether the rule making the current pass writes every cell. */
+	protected boolean writesAll;
 
 	/**
-	 * Constructor.
+	 * Constructor. Cells are stored column by column.
 	 * 
 	 * @param picture
 	 * @throws CAException
 	 */
 	public PictureLattice(final Picture picture) throws CAException {
-		pictureBefore = picture;
+		this(picture, new ColumnMajorLayout(picture.width(), picture.height()));
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param picture
+	 * @param layout
+	 *            Order to store the cells in. Must be the size of the picture.
+	 * @throws CAException
+	 */
+	public PictureLattice(final Picture picture, final Layout layout)
+			throws CAException {
+		if (layout == null) {
+			throw new NullParameterException("layout");
+		} else if (layout.getWidth() != picture.width()
+				|| layout.getHeight() != picture.height()) {
+			throw new CAException("Layout does not match the picture size");
+		}
+		this.layout = layout;
+		/* The source picture is copied, so that passes never write to it. */
+		pictureBefore = new Picture(picture);
 		pictureAfter = new Picture(picture);
 
 		int w = picture.width();
 		int h = picture.height();
 
-		lattice = new NDArrayList<Cell<Color>>(w, h);
+		lattice = newCellArray(layout.size());
 		for (int x = 0; x < w; x++) {
 			for (int y = 0; y < h; y++) {
 				int[] coordinates = { x, y };
-				lattice.set(new CACell<Color>(this, coordinates), coordinates);
+				int index = layout.getIndex(x, y);
+				lattice[index] = new CACell<Color>(this, index, coordinates);
 			}
 		}
+		written = new ConcurrentBitSet(layout.size());
+	}
+
+	/**
+	 * Creates an empty array of cells. Java cannot create arrays of a
+	 * parameterised type directly.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected static Cell<Color>[] newCellArray(final int size) {
+		return new Cell[size];
 	}
 
 	/**
@@ -66,15 +109,48 @@ public class PictureLattice implements Lattice<Color> {
 		if (x.length != 2) {
 			throw new CAException("Wrong number of dimensions");
 		}
-		int[] dimensions = lattice.getDimensions();
-		if (x[0] >= 0 && x[1] >= 0 && x[0] < dimensions[0]
-				&& x[1] < dimensions[1]) {
-			return lattice.get(x);
+		int index = layout.getIndex(x[0], x[1]);
+		if (index >= 0) {
+			return lattice[index];
 		} else {
 			return null;
 		}
 	}
 
+	@Override
+	public Cell<Color> getCell(final int index) {
+		return lattice[index];
+	}
+
+	/**
+	 * Gets the number of indices, including those that do not belong to a
+	 * cell.
+	 */
+	@Override
+	public int size() {
+		return lattice.length;
+	}
+
+	@Override
+	public int getIndex(final int x, final int y) {
+		return layout.getIndex(x, y);
+	}
+
+	@Override
+	public int getX(final int index) {
+		return layout.getX(index);
+	}
+
+	@Override
+	public int getY(final int index) {
+		return layout.getY(index);
+	}
+
+	@Override
+	public Layout getLayout() {
+		return layout;
+	}
+
 	/**
 	 * Sets the colour of the pixel corresponding to the cell.
 	 * 
@@ -86,6 +162,9 @@ public class PictureLattice implements Lattice<Color> {
 	public void setState(final Cell<Color> cell, final Color colour) {
 		int[] coordinates = cell.getCoordinates();
 		pictureAfter.set(coordinates[0], coordinates[1], colour);
+		if (!writesAll) {
+			written.set(cell.getIndex());
+		}
 
 		/* This method supports transparency (but is slower). */
 		// Graphics graphics = pictureAfter.getImage().createGraphics();
@@ -105,13 +184,27 @@ public class PictureLattice implements Lattice<Color> {
 		return pictureBefore.get(coordinates[0], coordinates[1]);
 	}
 
+	@Override
+	public void setState(final int index, final Color colour) {
+		pictureAfter.set(getX(index), getY(index), colour);
+		if (!writesAll) {
+			written.set(index);
+		}
+	}
+
+	@Override
+	public Color getState(final int index) {
+		return pictureBefore.get(getX(index), getY(index));
+	}
+
 	/**
 	 * Gets the lattice width.
 	 * 
 	 * @return Lattice width.
 	 */
+	@Override
 	public int getWidth() {
-		return lattice.getDimensions()[0];
+		return layout.getWidth();
 	}
 
 	/**
@@ -119,29 +212,87 @@ public class PictureLattice implements Lattice<Color> {
 	 * 
 	 * @return Lattice height.
 	 */
+	@Override
 	public int getHeight() {
-		return lattice.getDimensions()[1];
+		return layout.getHeight();
+	}
+
+	@Override
+	public void prepare(final boolean writesAll) {
+		this.writesAll = writesAll;
 	}
 
 	/**
-	 * Saves a copy of pictureAfter in pictureBefore. Faster than creating a new
-	 * PictureLattice with the output of the last one.
+	 * Makes the output of the pass the new pictureBefore. When every cell was
+	 * written the pictures are swapped, otherwise only the written pixels are
+	 * copied. Nothing is allocated.
 	 */
 	public void complete() {
-		pictureBefore = new Picture(pictureAfter);
+		if (writesAll) {
+			Picture swap = pictureBefore;
+			pictureBefore = pictureAfter;
+			pictureAfter = swap;
+		} else {
+			for (int i = written.nextSetBit(0); i >= 0; i = written
+					.nextSetBit(i + 1)) {
+				int x = getX(i);
+				int y = getY(i);
+				pictureBefore.setRGB(x, y, pictureAfter.getRGB(x, y));
+			}
+			written.clear();
+		}
 	}
 
 	/**
-	 * Gets pictureAfter.
+	 * Gets the picture holding the output of the last completed pass.
 	 * 
 	 * @return
 	 */
 	public Picture getResult() {
-		return pictureAfter;
+		return pictureBefore;
 	}
 
+	/**
+	 * Iterates over the cells in index order, skipping the indices that do not
+	 * belong to a cell.
+	 */
 	@Override
 	public Iterator<Cell<Color>> iterator() {
-		return lattice.iterator();
+		return new Iterator<Cell<Color>>() {
+			protected int index = nextCell(0);
+
+			@Override
+			public boolean hasNext() {
+				return index < lattice.length;
+			}
+
+			@Override
+			public Cell<Color> next() {
+				if (index >= lattice.length) {
+					throw new NoSuchElementException();
+				}
+				Cell<Color> cell = lattice[index];
+				index = nextCell(index + 1);
+				return cell;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Finds the first index from the specified one that holds a cell.
+	 * 
+	 * @param index
+	 * @return The index, or size() if there are none.
+	 */
+	protected int nextCell(int index) {
+		while (index < lattice.length && lattice[index] == null) {
+			index++;
+		}
+		return index;
 	}
 }
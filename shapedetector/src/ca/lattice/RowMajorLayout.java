@@ -0,0 +1,75 @@
+package ca.lattice;
+
+/**
+ * Stores cells row by row, the same as the image raster, optionally with a
+ * border of padding around them.
+ * <p>
+ * Rules that visit a row at a time read memory in order, and a cell's
+ * neighbours above and below are one row apart.
+ *
+ * @author Sean
+ */
+public class RowMajorLayout extends Layout {
+	/** Width of the border of padding around the cells. */
+	protected final int padding;
+	/** Number of indices from one row to the next. */
+	protected final int stride;
+
+	/**
+	 * Constructor. Creates a layout without padding.
+	 *
+	 * @param width
+	 * @param height
+	 */
+	public RowMajorLayout(final int width, final int height) {
+		this(width, height, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width
+	 * @param height
+	 * @param padding
+	 *            Width of the border of padding around the cells.
+	 */
+	public RowMajorLayout(final int width, final int height, final int padding) {
+		super(width, height);
+		this.padding = padding;
+		stride = width + 2 * padding;
+	}
+
+	@Override
+	public int size() {
+		return stride * (height + 2 * padding);
+	}
+
+	@Override
+	public int getIndex(final int x, final int y) {
+		if (x >= 0 && y >= 0 && x < width && y < height) {
+			return (y + padding) * stride + x + padding;
+		} else {
+			return -1;
+		}
+	}
+
+	@Override
+	public int getX(final int index) {
+		return index % stride - padding;
+	}
+
+	@Override
+	public int getY(final int index) {
+		return index / stride - padding;
+	}
+
+	@Override
+	public boolean isLinear() {
+		return true;
+	}
+
+	@Override
+	public int getPadding() {
+		return padding;
+	}
+}
@@ -0,0 +1,264 @@
+package ca.lattice;
+
+import graphics.YCbCrPlanes;
+
+/**
+ * A summed-area table (integral image) of an ARGBLattice, from which the sum
+ * of any rectangle of cells is read in constant time, whatever its size.
+ * <p>
+ * Holds the sums of the red, green and blue components, of the Y, Cb and Cr
+ * components, and of the squared length of each cell's YCbCr vector. Entry
+ * (x,y) of each table is the sum over the cells above and to the left of
+ * (x,y), so the tables have one more row and column than the lattice.
+ * <p>
+ * The table is built in two phases: sumRows() adds up each row, after which
+ * sumColumns() adds the rows together. Each phase can be split into bands of
+ * rows or columns that are summed in parallel, as long as every band of the
+ * first phase is done before the second starts.
+ * <p>
+ * The RGB sums are ints and are allowed to overflow: the sum of a rectangle
+ * is still right, as long as it fits in an int. The YCbCr sums are doubles,
+ * since their rounding errors grow with the size of the lattice.
+ *
+ * @author Sean
+ */
+public class SummedAreaTable {
+	/** The lattice that the sums are taken of. */
+	protected final ARGBLattice lattice;
+	/** Lattice width. */
+	protected final int width;
+	/** Lattice height. */
+	protected final int height;
+	/** Number of entries from one row of the tables to the next. */
+	protected final int stride;
+	/** Sums of the red components. */
+	protected final int[] red;
+	/** Sums of the green components. */
+	protected final int[] green;
+	/** Sums of the blue components. */
+	protected final int[] blue;
+	/** Sums of the Y components. */
+	protected final double[] luma;
+	/** Sums of the Cb components. */
+	protected final double[] blueChroma;
+	/** Sums of the Cr components. */
+	protected final double[] redChroma;
+	/** Sums of Y^2 + Cb^2 + Cr^2. */
+	protected final double[] square;
+
+	/**
+	 * Constructor. The tables are empty until they are built.
+	 *
+	 * @param lattice
+	 */
+	public SummedAreaTable(final ARGBLattice lattice) {
+		this.lattice = lattice;
+		width = lattice.getWidth();
+		height = lattice.getHeight();
+		stride = width + 1;
+		int size = stride * (height + 1);
+		red = new int[size];
+		green = new int[size];
+		blue = new int[size];
+		luma = new double[size];
+		blueChroma = new double[size];
+		redChroma = new double[size];
+		square = new double[size];
+	}
+
+	/**
+	 * First phase of building the tables: adds up the cells of each row from
+	 * y0 up to, but not including, y1.
+	 *
+	 * @param y0
+	 * @param y1
+	 */
+	public void sumRows(final int y0, final int y1) {
+		YCbCrPlanes planes = lattice.getYCbCrPlanes();
+		float[] y = planes.getLuma();
+		float[] cb = planes.getBlueChroma();
+		float[] cr = planes.getRedChroma();
+
+		for (int row = y0; row < y1; row++) {
+			int entry = (row + 1) * stride + 1;
+			int r = 0, g = 0, b = 0;
+			double sy = 0d, scb = 0d, scr = 0d, sq = 0d;
+			for (int x = 0; x < width; x++, entry++) {
+				int index = lattice.getIndex(x, row);
+				int colour = lattice.getRGB(index);
+				r += (colour >> 16) & 0xff;
+				g += (colour >> 8) & 0xff;
+				b += colour & 0xff;
+				double cy = y[index];
+				double ccb = cb[index];
+				double ccr = cr[index];
+				sy += cy;
+				scb += ccb;
+				scr += ccr;
+				sq += cy * cy + ccb * ccb + ccr * ccr;
+				red[entry] = r;
+				green[entry] = g;
+				blue[entry] = b;
+				luma[entry] = sy;
+				blueChroma[entry] = scb;
+				redChroma[entry] = scr;
+				square[entry] = sq;
+			}
+		}
+	}
+
+	/**
+	 * Second phase of building the tables: adds the rows together, in the
+	 * columns from x0 up to, but not including, x1. Every row must have been
+	 * summed first.
+	 *
+	 * @param x0
+	 * @param x1
+	 */
+	public void sumColumns(final int x0, final int x1) {
+		for (int row = 2; row <= height; row++) {
+			int entry = row * stride + x0 + 1;
+			int end = row * stride + x1 + 1;
+			for (; entry < end; entry++) {
+				int above = entry - stride;
+				red[entry] += red[above];
+				green[entry] += green[above];
+				blue[entry] += blue[above];
+				luma[entry] += luma[above];
+				blueChroma[entry] += blueChroma[above];
+				redChroma[entry] += redChroma[above];
+				square[entry] += square[above];
+			}
+		}
+	}
+
+	/**
+	 * Builds the tables on the calling thread.
+	 */
+	public void build() {
+		sumRows(0, height);
+		sumColumns(0, width);
+	}
+
+	/**
+	 * Adds up a rectangle of an int table.
+	 *
+	 * @param table
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @return
+	 */
+	protected int sum(final int[] table, final int x0, final int y0,
+			final int x1, final int y1) {
+		return table[y1 * stride + x1] - table[y0 * stride + x1]
+				- table[y1 * stride + x0] + table[y0 * stride + x0];
+	}
+
+	/**
+	 * Adds up a rectangle of a double table.
+	 *
+	 * @param table
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @return
+	 */
+	protected double sum(final double[] table, final int x0, final int y0,
+			final int x1, final int y1) {
+		return table[y1 * stride + x1] - table[y0 * stride + x1]
+				- table[y1 * stride + x0] + table[y0 * stride + x0];
+	}
+
+	/**
+	 * Gets the sum of the red components of the cells from (x0,y0) up to, but
+	 * not including, (x1,y1).
+	 *
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @return
+	 */
+	public int getRed(final int x0, final int y0, final int x1, final int y1) {
+		return sum(red, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Gets the sum of the green components of the cells in a rectangle.
+	 *
+	 * @see #getRed(int, int, int, int)
+	 */
+	public int getGreen(final int x0, final int y0, final int x1, final int y1) {
+		return sum(green, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Gets the sum of the blue components of the cells in a rectangle.
+	 *
+	 * @see #getRed(int, int, int, int)
+	 */
+	public int getBlue(final int x0, final int y0, final int x1, final int y1) {
+		return sum(blue, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Gets the sum of the Y components of the cells in a rectangle.
+	 *
+	 * @see #getRed(int, int, int, int)
+	 */
+	public double getLuma(final int x0, final int y0, final int x1,
+			final int y1) {
+		return sum(luma, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Gets the sum of the Cb components of the cells in a rectangle.
+	 *
+	 * @see #getRed(int, int, int, int)
+	 */
+	public double getBlueChroma(final int x0, final int y0, final int x1,
+			final int y1) {
+		return sum(blueChroma, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Gets the sum of the Cr components of the cells in a rectangle.
+	 *
+	 * @see #getRed(int, int, int, int)
+	 */
+	public double getRedChroma(final int x0, final int y0, final int x1,
+			final int y1) {
+		return sum(redChroma, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Gets the sum of Y^2 + Cb^2 + Cr^2 over the cells in a rectangle.
+	 *
+	 * @see #getRed(int, int, int, int)
+	 */
+	public double getSquare(final int x0, final int y0, final int x1,
+			final int y1) {
+		return sum(square, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Gets the lattice width.
+	 *
+	 * @return
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the lattice height.
+	 *
+	 * @return
+	 */
+	public int getHeight() {
+		return height;
+	}
+}
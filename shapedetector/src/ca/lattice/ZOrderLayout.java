@@ -0,0 +1,135 @@
+package ca.lattice;
+
+import exceptions.CAException;
+
+/**
+ * Stores cells in Z-order (Morton order), where a cell's index interleaves
+ * the bits of its coordinates: bit i of x becomes bit 2i of the index and bit
+ * i of y becomes bit 2i+1.
+ * <p>
+ * Every square tile whose size is a power of two, and which is aligned to a
+ * multiple of that size, is stored as one contiguous run of indices. Cells
+ * that are close together in the image, in any direction, are close together
+ * in memory, so a stencil reads far fewer cache lines than it does across the
+ * rows of a row-major layout. Tiles are rounded to such squares (see
+ * getTileSize), so that each thread works through a contiguous run.
+ * <p>
+ * Neighbours are not at fixed offsets, so stencils find them through
+ * getIndex(), which looks up the interleaved bits in a table. When the
+ * lattice is not a square whose size is a power of two, some indices fall
+ * outside it and do not belong to any cell.
+ *
+ * @author Sean
+ */
+public class ZOrderLayout extends Layout {
+	/** Largest width or height supported, so that indices fit in an int. */
+	public final static int MAX_SIZE = 1 << 15;
+	/** Smallest tile edge that getTileSize() rounds to. */
+	public final static int MIN_TILE_SIZE = 8;
+
+	/** The bits of each x-coordinate, spread out to the even bits. */
+	protected final int[] xBits;
+	/** The bits of each y-coordinate, spread out to the odd bits. */
+	protected final int[] yBits;
+	/** Number of indices. */
+	protected final int size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width
+	 * @param height
+	 * @throws CAException
+	 *             When the lattice is too large.
+	 */
+	public ZOrderLayout(final int width, final int height) throws CAException {
+		super(width, height);
+		if (width > MAX_SIZE || height > MAX_SIZE) {
+			throw new CAException("Lattice too large for Z-order layout: "
+					+ width + "x" + height);
+		}
+		xBits = new int[width];
+		for (int x = 0; x < width; x++) {
+			xBits[x] = spread(x);
+		}
+		yBits = new int[height];
+		for (int y = 0; y < height; y++) {
+			yBits[y] = spread(y) << 1;
+		}
+		/* Indices increase with both coordinates, so the last is largest. */
+		size = (width == 0 || height == 0) ? 0
+				: xBits[width - 1] + yBits[height - 1] + 1;
+	}
+
+	/**
+	 * Spreads the low 16 bits of the value out to the even bits.
+	 *
+	 * @param value
+	 * @return
+	 */
+	protected static int spread(int value) {
+		value &= 0x0000ffff;
+		value = (value | (value << 8)) & 0x00ff00ff;
+		value = (value | (value << 4)) & 0x0f0f0f0f;
+		value = (value | (value << 2)) & 0x33333333;
+		value = (value | (value << 1)) & 0x55555555;
+		return value;
+	}
+
+	/**
+	 * Gathers the even bits of the value into the low 16 bits. The reverse of
+	 * spread().
+	 *
+	 * @param value
+	 * @return
+	 */
+	protected static int compact(int value) {
+		value &= 0x55555555;
+		value = (value | (value >>> 1)) & 0x33333333;
+		value = (value | (value >>> 2)) & 0x0f0f0f0f;
+		value = (value | (value >>> 4)) & 0x00ff00ff;
+		value = (value | (value >>> 8)) & 0x0000ffff;
+		return value;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getIndex(final int x, final int y) {
+		if (x >= 0 && y >= 0 && x < width && y < height) {
+			return xBits[x] | yBits[y];
+		} else {
+			return -1;
+		}
+	}
+
+	@Override
+	public int getX(final int index) {
+		return compact(index);
+	}
+
+	@Override
+	public int getY(final int index) {
+		return compact(index >>> 1);
+	}
+
+	@Override
+	public boolean isLinear() {
+		return false;
+	}
+
+	/**
+	 * Rounds the tile to the largest aligned square, whose size is a power of
+	 * two, that is no larger than the tile the rule asks for.
+	 */
+	@Override
+	public int[] getTileSize(final int tileWidth, final int tileHeight) {
+		long area = (long) tileWidth * tileHeight;
+		int side = Integer.highestOneBit((int) Math.sqrt((double) area));
+		side = Math.max(side, MIN_TILE_SIZE);
+		return new int[] { side, side };
+	}
+}
@@ -4,17 +4,74 @@ import java.util.List;
 
 import ca.Cell;
 import ca.lattice.Lattice;
+import ca.lattice.Lattice2D;
+import exceptions.CAException;
 import exceptions.NullParameterException;
 
 public abstract class CellNeighbourhood2D<V> implements Neighbourhood<V> {
 	protected final Lattice<V> lattice;
+	/** The lattice, or null if it cannot map coordinates to indices. */
+	protected final Lattice2D<V> lattice2D;
+	/** The shape of the neighbourhood, or null if lattice2D is. */
+	protected Stencil stencil;
 
+	@SuppressWarnings("unchecked")
 	public CellNeighbourhood2D(final Lattice<V> lattice)
 			throws NullParameterException {
 		if (lattice == null) {
 			throw new NullParameterException("lattice");
 		}
 		this.lattice = lattice;
+		if (lattice instanceof Lattice2D) {
+			lattice2D = (Lattice2D<V>) lattice;
+		} else {
+			lattice2D = null;
+		}
+	}
+
+	/**
+	 * Sets the shape of the neighbourhood. Subclasses call this from their
+	 * constructors.
+	 * 
+	 * @param dx
+	 *            Horizontal positions of the neighbours, relative to the cell.
+	 * @param dy
+	 *            Vertical positions of the neighbours, relative to the cell.
+	 */
+	protected void setStencil(final int[] dx, final int[] dy) {
+		if (lattice2D != null) {
+			stencil = new Stencil(lattice2D, dx, dy);
+		}
+	}
+
+	@Override
+	public Stencil getStencil() {
+		return stencil;
+	}
+
+	/**
+	 * Gathers the indices of the neighbours inside the lattice, in the order
+	 * of the stencil.
+	 */
+	@Override
+	public int gatherNeighbours(final int index, final int[] neighbours)
+			throws CAException {
+		getLattice2D();
+		return stencil.gather(index, neighbours);
+	}
+
+	/**
+	 * Gets the lattice for looking up cells by index.
+	 * 
+	 * @return
+	 * @throws CAException
+	 *             if the lattice does not support indices.
+	 */
+	protected Lattice2D<V> getLattice2D() throws CAException {
+		if (lattice2D == null) {
+			throw new CAException("Lattice does not support cell indices");
+		}
+		return lattice2D;
 	}
 
 	/**
@@ -29,4 +86,22 @@ public abstract class CellNeighbourhood2D<V> implements Neighbourhood<V> {
 			neighbourhood.add(neighbour);
 		}
 	}
+
+	/**
+	 * Adds the index to the neighbourhood if it is not -1 (i.e. a padding
+	 * cell).
+	 * 
+	 * @param neighbours
+	 * @param n
+	 *            Number of indices in the neighbourhood so far.
+	 * @param neighbour
+	 * @return Number of indices in the neighbourhood.
+	 */
+	protected int add(final int[] neighbours, final int n, final int neighbour) {
+		if (neighbour < 0) {
+			return n;
+		}
+		neighbours[n] = neighbour;
+		return n + 1;
+	}
 }
@@ -19,6 +19,9 @@ public class Moore<V> extends CellNeighbourhood2D<V> {
 			throws NullParameterException {
 		super(lattice);
 		this.r = r;
+		if (lattice2D != null) {
+			stencil = Stencil.square(lattice2D, r);
+		}
 	}
 
 	@Override
@@ -35,4 +38,18 @@ public class Moore<V> extends CellNeighbourhood2D<V> {
 		}
 		return neighbourhood;
 	}
+
+	/**
+	 * Gets the radius of the neighbourhood.
+	 * 
+	 * @return
+	 */
+	public int getR() {
+		return r;
+	}
+
+	@Override
+	public int getMaxSize() {
+		return (2 * r + 1) * (2 * r + 1);
+	}
 }
@@ -18,6 +18,9 @@ import exceptions.NullParameterException;
  * NOTE: the order has been made clockwise until the issue with reverse
  * PathIterators has been resolved. Does not really make a difference at this
  * point.
+ * <p>
+ * The stencil only gives the eight positions around the cell. The cells that
+ * belong to other blobs are left out by gatherNeighbours().
  */
 public class MooreOutline<V> extends CellNeighbourhood2D<V> {
 	protected final BlobMap<V> blobMap;
@@ -26,6 +29,8 @@ public class MooreOutline<V> extends CellNeighbourhood2D<V> {
 			throws NullParameterException {
 		super(lattice);
 		this.blobMap = blobMap;
+		setStencil(new int[] { 0, 1, 1, 1, 0, -1, -1, -1 }, new int[] { -1,
+				-1, 0, 1, 1, 1, 0, -1 });
 	}
 
 	@Override
@@ -48,6 +53,42 @@ public class MooreOutline<V> extends CellNeighbourhood2D<V> {
 		return neighbourhood;
 	}
 
+	@Override
+	public int gatherNeighbours(final int index, final int[] neighbours)
+			throws CAException {
+		int size = super.gatherNeighbours(index, neighbours);
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			n = add(neighbours, n, index, neighbours[i]);
+		}
+		return n;
+	}
+
+	@Override
+	public int getMaxSize() {
+		return 8;
+	}
+
+	/**
+	 * Only adds the neighbour's index if it belongs to the same blob.
+	 * 
+	 * @param neighbours
+	 * @param n
+	 * @param index
+	 * @param neighbour
+	 * @return Number of indices in the neighbourhood.
+	 * @throws CAException
+	 */
+	protected int add(final int[] neighbours, final int n, final int index,
+			final int neighbour) throws CAException {
+		if (neighbour >= 0
+				&& blobMap.getBlob(index) == blobMap.getBlob(neighbour)) {
+			neighbours[n] = neighbour;
+			return n + 1;
+		}
+		return n;
+	}
+
 	/**
 	 * Only adds the neighbour if it belongs to the same blob.
 	 * 
@@ -58,7 +99,8 @@ public class MooreOutline<V> extends CellNeighbourhood2D<V> {
 	 */
 	protected void add(final List<Cell<V>> neighbourhood, final Cell<V> cell,
 			final Cell<V> neighbour) throws CAException {
-		if (cell != null && blobMap.getBlob(cell) == blobMap.getBlob(neighbour)) {
+		if (neighbour != null
+				&& blobMap.getBlob(cell) == blobMap.getBlob(neighbour)) {
 			neighbourhood.add(neighbour);
 		}
 	}
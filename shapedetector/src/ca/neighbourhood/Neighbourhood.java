@@ -16,4 +16,34 @@ public interface Neighbourhood<V> {
 	 */
 	public List<Cell<V>> gatherNeighbours(final Cell<V> cell) throws CAException;
 
+	/**
+	 * Gathers the indices of the neighbouring cells of the cell with the
+	 * specified index, without creating any cell objects.
+	 * 
+	 * @param index
+	 *            The index of the cell.
+	 * @param neighbours
+	 *            Array to store the indices in. Must have room for at least
+	 *            getMaxSize() indices.
+	 * @return The number of indices stored.
+	 * @throws CAException
+	 */
+	public int gatherNeighbours(final int index, final int[] neighbours)
+			throws CAException;
+
+	/**
+	 * Gets the shape of the neighbourhood as index offsets, for visiting
+	 * neighbours without allocating anything.
+	 * 
+	 * @return The stencil, or null if the lattice does not support indices.
+	 */
+	public Stencil getStencil();
+
+	/**
+	 * Gets the greatest number of cells a neighbourhood can have.
+	 * 
+	 * @return
+	 */
+	public int getMaxSize();
+
 }
@@ -0,0 +1,227 @@
+package ca.neighbourhood;
+
+import ca.lattice.Lattice2D;
+
+/**
+ * The shape of a neighbourhood on a particular lattice, as the positions of
+ * the neighbours relative to the cell, in the order they are visited.
+ * <p>
+ * The positions are converted once into offsets between indices, so for a
+ * cell whose whole neighbourhood lies inside the lattice the neighbours are
+ * found by adding the offsets to its index, without any bounds checks. Only
+ * the cells along the edges of the lattice check each neighbour's
+ * coordinates. This works for any lattice that stores its cells row by row or
+ * column by column. For other layouts, such as a ZOrderLayout, neighbours are
+ * not at fixed offsets, so each one is looked up from its coordinates.
+ * <p>
+ * Nothing is allocated per cell. Rules can either gather the indices into an
+ * array they keep, or visit them with a StencilCursor. A stencil can be
+ * shared between threads, but each thread needs its own cursor.
+ *
+ * @author Sean
+ */
+public class Stencil {
+	/** The lattice that the offsets apply to. */
+	protected final Lattice2D<?> lattice;
+	/** Lattice width. */
+	protected final int width;
+	/** Lattice height. */
+	protected final int height;
+	/** Horizontal positions of the neighbours, relative to the cell. */
+	protected final int[] dx;
+	/** Vertical positions of the neighbours, relative to the cell. */
+	protected final int[] dy;
+	/** Index offsets of the neighbours, relative to the cell. */
+	protected final int[] offsets;
+	/** Greatest distance of a neighbour from the cell along either axis. */
+	protected final int radius;
+	/** States whether the offsets can be added to a cell's index. */
+	protected final boolean linear;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lattice
+	 * @param dx
+	 *            Horizontal positions of the neighbours, relative to the cell.
+	 * @param dy
+	 *            Vertical positions of the neighbours, relative to the cell.
+	 */
+	public Stencil(final Lattice2D<?> lattice, final int[] dx, final int[] dy) {
+		this.lattice = lattice;
+		this.dx = dx;
+		this.dy = dy;
+		width = lattice.getWidth();
+		height = lattice.getHeight();
+		linear = lattice.getLayout().isLinear();
+
+		int origin = lattice.getIndex(0, 0);
+		int xStride = width > 1 ? lattice.getIndex(1, 0) - origin : 0;
+		int yStride = height > 1 ? lattice.getIndex(0, 1) - origin : 0;
+		offsets = new int[dx.length];
+		int radius = 0;
+		for (int k = 0; k < dx.length; k++) {
+			offsets[k] = dx[k] * xStride + dy[k] * yStride;
+			radius = Math.max(radius, Math.max(Math.abs(dx[k]),
+					Math.abs(dy[k])));
+		}
+		this.radius = radius;
+	}
+
+	/**
+	 * Creates the stencil of the square of radius r, including the cell
+	 * itself, visited column by column.
+	 *
+	 * @param lattice
+	 * @param r
+	 * @return
+	 */
+	public static Stencil square(final Lattice2D<?> lattice, final int r) {
+		int size = (2 * r + 1) * (2 * r + 1);
+		int[] dx = new int[size];
+		int[] dy = new int[size];
+		int k = 0;
+		for (int i = -r; i <= r; i++) {
+			for (int j = -r; j <= r; j++) {
+				dx[k] = i;
+				dy[k++] = j;
+			}
+		}
+		return new Stencil(lattice, dx, dy);
+	}
+
+	/**
+	 * Gathers the indices of the neighbours of the cell with the specified
+	 * index that lie inside the lattice.
+	 *
+	 * @param index
+	 * @param neighbours
+	 *            Array to store the indices in. Must have room for size()
+	 *            indices.
+	 * @return The number of indices stored.
+	 */
+	public int gather(final int index, final int[] neighbours) {
+		int x = lattice.getX(index);
+		int y = lattice.getY(index);
+		if (!linear) {
+			int n = 0;
+			for (int k = 0; k < dx.length; k++) {
+				int neighbour = lattice.getIndex(x + dx[k], y + dy[k]);
+				if (neighbour >= 0) {
+					neighbours[n++] = neighbour;
+				}
+			}
+			return n;
+		}
+		if (isInterior(x, y)) {
+			for (int k = 0; k < offsets.length; k++) {
+				neighbours[k] = index + offsets[k];
+			}
+			return offsets.length;
+		}
+
+		int n = 0;
+		for (int k = 0; k < offsets.length; k++) {
+			if (contains(x + dx[k], y + dy[k])) {
+				neighbours[n++] = index + offsets[k];
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Creates a cursor for visiting the neighbours of cells one at a time.
+	 *
+	 * @return
+	 */
+	public StencilCursor cursor() {
+		return new StencilCursor(this);
+	}
+
+	/**
+	 * Checks whether the whole neighbourhood of the cell at (x,y) lies inside
+	 * the lattice.
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public boolean isInterior(final int x, final int y) {
+		return x >= radius && y >= radius && x < width - radius
+				&& y < height - radius;
+	}
+
+	/**
+	 * Checks whether (x,y) lies inside the lattice.
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	protected boolean contains(final int x, final int y) {
+		return x >= 0 && y >= 0 && x < width && y < height;
+	}
+
+	/**
+	 * Checks whether the neighbours of every cell lie at the same index
+	 * offsets (see Layout.isLinear()). Otherwise getOffset() does not apply.
+	 *
+	 * @return
+	 */
+	public boolean isLinear() {
+		return linear;
+	}
+
+	/**
+	 * Gets the index offset of the neighbour at the specified position in the
+	 * stencil, relative to the cell. Only for linear stencils.
+	 *
+	 * @param k
+	 * @return
+	 */
+	public int getOffset(final int k) {
+		return offsets[k];
+	}
+
+	/**
+	 * Gets the horizontal position of the neighbour at the specified position
+	 * in the stencil, relative to the cell.
+	 *
+	 * @param k
+	 * @return
+	 */
+	public int getDx(final int k) {
+		return dx[k];
+	}
+
+	/**
+	 * Gets the vertical position of the neighbour at the specified position
+	 * in the stencil, relative to the cell.
+	 *
+	 * @param k
+	 * @return
+	 */
+	public int getDy(final int k) {
+		return dy[k];
+	}
+
+	/**
+	 * Gets the number of cells in the stencil, which is the greatest number
+	 * of neighbours a cell can have.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+	/**
+	 * Gets the greatest distance of a neighbour from the cell along either
+	 * axis.
+	 *
+	 * @return
+	 */
+	public int getRadius() {
+		return radius;
+	}
+}
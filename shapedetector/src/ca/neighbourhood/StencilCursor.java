@@ -0,0 +1,101 @@
+package ca.neighbourhood;
+
+/**
+ * Visits the neighbours of a cell one at a time, in the order of a Stencil.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * cursor.moveTo(index);
+ * while (cursor.next()) {
+ * 	int neighbour = cursor.getIndex();
+ * }
+ * </pre>
+ *
+ * A cursor can be moved from cell to cell as often as needed, so each thread
+ * only needs one. It is not safe to share between threads.
+ *
+ * @author Sean
+ */
+public class StencilCursor {
+	/** The stencil to visit the neighbours in. */
+	protected final Stencil stencil;
+	/** Index of the cell whose neighbours are visited. */
+	protected int centre;
+	/** Coordinates of the cell. */
+	protected int x, y;
+	/** States whether the cell's whole neighbourhood is inside the lattice. */
+	protected boolean interior;
+	/** Position in the stencil. */
+	protected int k;
+	/** Index of the current neighbour. */
+	protected int index;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stencil
+	 */
+	public StencilCursor(final Stencil stencil) {
+		this.stencil = stencil;
+		k = stencil.size();
+	}
+
+	/**
+	 * Starts visiting the neighbours of the cell with the specified index.
+	 *
+	 * @param index
+	 */
+	public void moveTo(final int index) {
+		centre = index;
+		x = stencil.lattice.getX(index);
+		y = stencil.lattice.getY(index);
+		interior = stencil.isInterior(x, y);
+		k = -1;
+	}
+
+	/**
+	 * Moves on to the next neighbour inside the lattice.
+	 *
+	 * @return false when there are no more neighbours.
+	 */
+	public boolean next() {
+		int[] offsets = stencil.offsets;
+		if (!stencil.linear) {
+			while (++k < offsets.length) {
+				index = stencil.lattice.getIndex(x + stencil.dx[k], y
+						+ stencil.dy[k]);
+				if (index >= 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+		while (++k < offsets.length) {
+			if (interior
+					|| stencil.contains(x + stencil.dx[k], y + stencil.dy[k])) {
+				index = centre + offsets[k];
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the index of the current neighbour.
+	 *
+	 * @return
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Gets the index of the cell whose neighbours are visited.
+	 *
+	 * @return
+	 */
+	public int getCentre() {
+		return centre;
+	}
+}
@@ -1,6 +1,7 @@
 package ca.neighbourhood;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import ca.Cell;
@@ -28,6 +29,19 @@ public class VanNeumann<V> extends CellNeighbourhood2D<V> {
 		super(lattice);
 		this.r = r;
 		neighbourhoodSize = (int) Math.ceil(Math.PI * r * r);
+
+		int[] dx = new int[4 * r * r];
+		int[] dy = new int[4 * r * r];
+		int k = 0;
+		for (int i = -r; i < r; i++) {
+			for (int j = -r; j < r; j++) {
+				if (i * i + j * j <= r * r) {
+					dx[k] = i;
+					dy[k++] = j;
+				}
+			}
+		}
+		setStencil(Arrays.copyOf(dx, k), Arrays.copyOf(dy, k));
 	}
 
 	@Override
@@ -46,4 +60,9 @@ public class VanNeumann<V> extends CellNeighbourhood2D<V> {
 		}
 		return neighbourhood;
 	}
+
+	@Override
+	public int getMaxSize() {
+		return 4 * r * r;
+	}
 }
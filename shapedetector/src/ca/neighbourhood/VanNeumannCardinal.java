@@ -17,6 +17,7 @@ public class VanNeumannCardinal<V> extends CellNeighbourhood2D<V> {
 
 	public VanNeumannCardinal(final Lattice<V> lattice) throws NullParameterException {
 		super(lattice);
+		setStencil(new int[] { 0, 0, -1, 1 }, new int[] { -1, 1, 0, 0 });
 	}
 
 	@Override
@@ -30,4 +31,9 @@ public class VanNeumannCardinal<V> extends CellNeighbourhood2D<V> {
 		add(neighbourhood, lattice.get(coordinates[0] + 1, coordinates[1]));
 		return neighbourhood;
 	}
+
+	@Override
+	public int getMaxSize() {
+		return 4;
+	}
 }
@@ -11,10 +11,9 @@ import ca.lattice.Lattice;
 import ca.shapedetector.BlobMap;
 import ca.shapedetector.ShapeList;
 import ca.shapedetector.blob.Blob;
-import ca.shapedetector.blob.LoopFinder;
+import ca.shapedetector.blob.ContourTracer;
 import ca.shapedetector.path.SDPath;
 import ca.shapedetector.shapes.AbstractShape;
-import ca.shapedetector.shapes.RootShape;
 import ca.shapedetector.shapes.UnknownShape;
 import exceptions.CAException;
 import graphics.SDPanelTheme;
@@ -27,9 +26,11 @@ import graphics.SDPanelTheme;
  * Notice that this forms a closed loop of the shape's outside, so that it
  * automatically disregards any other enveloped shapes. This does not however,
  * do anything to add those shapes' areaCells to the shape enveloping them.
+ * <p>
+ * The cells are put in order by a ContourTracer, in time linear in the length
+ * of the outline.
  */
 public class ArrangeOutlineRule<V> extends BlobRule<V> {
-	protected final RootShape<V> shapeDetector = new RootShape<V>();
 	protected final Lattice<V> lattice;
 	protected final ShapeList shapeList;
 
@@ -55,9 +56,8 @@ public class ArrangeOutlineRule<V> extends BlobRule<V> {
 			// display(cells);
 			// }
 
-			LoopFinder<V> loopFinder = new LoopFinder<V>(cells, lattice,
-					blobMap);
-			cells = loopFinder.getLoop(first);
+			ContourTracer<V> tracer = new ContourTracer<V>(lattice, blobMap);
+			cells = tracer.trace(blob, first, cells.size());
 			blob.setOutlineCells(cells);
 
 			// /* For debugging */
@@ -4,12 +4,12 @@ import ca.Cell;
 import ca.lattice.Lattice;
 import ca.neighbourhood.Neighbourhood;
 import ca.shapedetector.BlobMap;
-import ca.shapedetector.blob.Blob;
 import exceptions.CAException;
 import exceptions.NullParameterException;
 
 /**
- * Creates a CABlob object for each cell.
+ * Makes each cell a blob of its own. No Blob objects are created here; see
+ * BlobMap.
  */
 public class BlobAssociationRule<V> extends CellRule<V> {
 	protected final BlobMap<V> blobMap;
@@ -27,10 +27,11 @@ public class BlobAssociationRule<V> extends CellRule<V> {
 
 	@Override
 	public void update(final Cell<V> cell) throws CAException {
-		Blob<V> blob = new Blob<V>(cell);
-		blobMap.setBlob(cell, blob);
-		blobMap.addBlob(blob);
-		// System.out.println(cell.getCoordinates()[0] + ", " +
-		// cell.getCoordinates()[1]);
+		update(cell.getIndex());
+	}
+
+	@Override
+	public void update(final int index) throws CAException {
+		blobMap.makeBlob(index);
 	}
 }
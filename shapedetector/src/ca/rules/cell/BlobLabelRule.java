@@ -0,0 +1,183 @@
+package ca.rules.cell;
+
+import exceptions.CAException;
+
+import java.awt.Color;
+
+import ca.Cell;
+import ca.lattice.Lattice;
+import ca.lattice.Lattice2D;
+import ca.neighbourhood.VanNeumannCardinal;
+import ca.shapedetector.BlobMap;
+
+/**
+ * Groups cells of similar colour together into blobs, like BlobMergeRule
+ * after BlobAssociationRule, but by labelling whole tiles at a time.
+ * <p>
+ * Each tile is labelled on its own by a classic two-pass algorithm: the first
+ * pass gives each quiescent cell a provisional label and records which labels
+ * are equivalent, the second pass resolves the labels and writes the tile's
+ * blobs to the BlobMap. No tile touches another tile's cells, so tiles are
+ * labelled in parallel without any locking. When every tile is done, the
+ * blobs that meet across tile borders are merged, and the blobs are created.
+ * <p>
+ * By default the lattice is split into strips of whole rows. Only works on
+ * two dimensional lattices, and assumes that the edge finder has already
+ * turned every cell either to an edge or quiescent.
+ * 
+ * @author Sean
+ */
+public class BlobLabelRule extends ColourRule {
+	/** Default height of the strips that are labelled independently. */
+	public final static int DEFAULT_STRIP_HEIGHT = 32;
+
+	protected final BlobMap<Color> blobMap;
+
+	public BlobLabelRule(final Lattice<Color> lattice,
+			final BlobMap<Color> blobMap) throws CAException {
+		super(lattice, new VanNeumannCardinal<Color>(lattice));
+		this.blobMap = blobMap;
+		setTileSize(0, DEFAULT_STRIP_HEIGHT);
+	}
+
+	@Override
+	public void update(final Cell<Color> cell) throws CAException {
+		update(cell.getIndex());
+	}
+
+	/**
+	 * Cells cannot be labelled one at a time.
+	 * 
+	 * @throws CAException
+	 */
+	@Override
+	public void update(final int index) throws CAException {
+		throw new CAException(toString() + " only labels whole tiles");
+	}
+
+	/**
+	 * Labels the cells in the tile from (x0,y0) up to, but not including,
+	 * (x1,y1).
+	 */
+	@Override
+	public void update(final int x0, final int y0, final int x1, final int y1)
+			throws CAException {
+		Lattice2D<Color> lattice2D = getLattice2D();
+		int w = x1 - x0;
+		int size = w * (y1 - y0);
+		/* Lattice index of each cell in the tile, or -1 for edge cells. */
+		int[] indices = new int[size];
+		/* Provisional labels, as a union-find on positions in the tile. */
+		int[] labels = new int[size];
+
+		/* First pass. */
+		for (int y = y0, i = 0; y < y1; y++) {
+			for (int x = x0; x < x1; x++, i++) {
+				int index = lattice2D.getIndex(x, y);
+				if (getRGB(index) == EdgeFinderRule.QUIESCENT_RGB) {
+					indices[i] = index;
+					labels[i] = i;
+					if (x > x0 && indices[i - 1] >= 0) {
+						labels[i] = find(labels, i - 1);
+					}
+					if (y > y0 && indices[i - w] >= 0) {
+						int up = find(labels, i - w);
+						if (labels[i] == i) {
+							labels[i] = up;
+						} else if (up != labels[i]) {
+							/* Links the later label under the earlier one. */
+							if (up < labels[i]) {
+								labels[labels[i]] = up;
+								labels[i] = up;
+							} else {
+								labels[up] = labels[i];
+							}
+						}
+					}
+				} else {
+					indices[i] = -1;
+					blobMap.makeBlob(index, 1);
+				}
+			}
+		}
+
+		/* Second pass, counting cells into the sizes array. */
+		int[] sizes = new int[size];
+		for (int i = 0; i < size; i++) {
+			if (indices[i] >= 0) {
+				int root = find(labels, i);
+				sizes[root]++;
+				if (root != i) {
+					blobMap.setRoot(indices[i], indices[root]);
+				}
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (sizes[i] > 0) {
+				blobMap.makeBlob(indices[i], sizes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Finds the root of the provisional label at the specified position,
+	 * compressing the path to it.
+	 * 
+	 * @param labels
+	 * @param i
+	 * @return
+	 */
+	protected static int find(final int[] labels, final int i) {
+		int root = i;
+		while (labels[root] != root) {
+			root = labels[root];
+		}
+		for (int j = i; labels[j] != root;) {
+			int next = labels[j];
+			labels[j] = root;
+			j = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Merges the blobs that meet across tile borders, then creates the blobs.
+	 */
+	@Override
+	public void complete() throws CAException {
+		Lattice2D<Color> lattice2D = getLattice2D();
+		int w = lattice2D.getWidth();
+		int h = lattice2D.getHeight();
+		int[] tileSize = getTileSize(lattice2D);
+		int tileW = tileSize[0];
+		int tileH = tileSize[1];
+
+		for (int y = tileH; y < h; y += tileH) {
+			for (int x = 0; x < w; x++) {
+				stitch(lattice2D.getIndex(x, y - 1), lattice2D.getIndex(x, y));
+			}
+		}
+		for (int x = tileW; x < w; x += tileW) {
+			for (int y = 0; y < h; y++) {
+				stitch(lattice2D.getIndex(x - 1, y), lattice2D.getIndex(x, y));
+			}
+		}
+
+		blobMap.createBlobs();
+		super.complete();
+	}
+
+	/**
+	 * Merges the blobs of two neighbouring cells on either side of a tile
+	 * border, if both are quiescent.
+	 * 
+	 * @param index1
+	 * @param index2
+	 */
+	protected void stitch(final int index1, final int index2) {
+		if (getRGB(index1) == EdgeFinderRule.QUIESCENT_RGB
+				&& getRGB(index2) == EdgeFinderRule.QUIESCENT_RGB) {
+			blobMap.union(index1, index2);
+		}
+	}
+}
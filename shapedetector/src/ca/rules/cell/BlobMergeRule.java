@@ -3,17 +3,17 @@ package ca.rules.cell;
 import exceptions.CAException;
 
 import java.awt.Color;
-import java.util.List;
 
 import ca.Cell;
 import ca.lattice.Lattice;
+import ca.neighbourhood.StencilCursor;
 import ca.neighbourhood.VanNeumannCardinal;
 import ca.shapedetector.BlobMap;
 
 /**
  * Groups cells of similar colour together into blobs.
  */
-public class BlobMergeRule extends CellRule<Color> {
+public class BlobMergeRule extends ColourRule {
 	protected final BlobMap<Color> blobMap;
 	protected final double epsilon;
 
@@ -27,43 +27,48 @@ public class BlobMergeRule extends CellRule<Color> {
 
 	@Override
 	public void update(final Cell<Color> cell) throws CAException {
+		update(cell.getIndex());
+	}
+
+	@Override
+	public void update(final int index) throws CAException {
 		/*
 		 * Do not generate shapes from the edges, only from the spaces in
 		 * between.
 		 */
-		if (lattice.getState(cell).equals(EdgeFinderRule.EDGE_COLOUR)) {
+		if (getRGB(index) == EdgeFinderRule.EDGE_RGB) {
 			return;
 		}
 
-		List<Cell<Color>> neighbourhood = neighbourhoodModel
-				.gatherNeighbours(cell);
-		cell.setNeighbourhood(neighbourhood);
-
-		for (Cell<Color> neighbour : neighbourhood) {
+		StencilCursor cursor = getCursor(index);
+		while (cursor.next()) {
+			int neighbour = cursor.getIndex();
 			/*
-			 * Checks whether blobs have merged already to save time if they
-			 * were.
+			 * The edge finder step can be run from here.
 			 */
-			if (neighbour != cell
-					&& blobMap.getBlob(neighbour) != blobMap.getBlob(cell)) {
-				/*
-				 * The edge finder step can be run from here.
-				 */
-				// double difference = ColourCompare.getDifference(
-				// lattice.getState(cell), lattice.getState(neighbour));
-				// if (difference < epsilon) {
-				// blobMap.mergeCells(cell, neighbour);
-				// }
+			// double difference = getDifference(index, neighbour);
+			// if (difference < epsilon) {
+			// blobMap.union(index, neighbour);
+			// }
 
-				/*
-				 * In conjunction with the edge finder, this works a little
-				 * faster.
-				 */
-				if (neighbour.getState()
-						.equals(EdgeFinderRule.QUIESCENT_COLOUR)) {
-					blobMap.mergeCells(cell, neighbour);
-				}
+			/*
+			 * In conjunction with the edge finder, this works a little
+			 * faster. Merging blobs that are merged already costs next to
+			 * nothing.
+			 */
+			if (neighbour != index
+					&& getRGB(neighbour) == EdgeFinderRule.QUIESCENT_RGB) {
+				blobMap.union(index, neighbour);
 			}
 		}
 	}
+
+	/**
+	 * Creates the blobs once all cells have been merged.
+	 */
+	@Override
+	public void complete() throws CAException {
+		blobMap.createBlobs();
+		super.complete();
+	}
 }
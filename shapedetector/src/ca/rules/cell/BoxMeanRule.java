@@ -0,0 +1,261 @@
+package ca.rules.cell;
+
+import exceptions.CAException;
+import graphics.ColourCompare;
+
+import java.awt.Color;
+import java.util.concurrent.CountDownLatch;
+
+import ca.concurrency.WorkerPool;
+import ca.lattice.Lattice;
+import ca.lattice.SummedAreaTable;
+import ca.neighbourhood.Neighbourhood;
+import ca.neighbourhood.StencilCursor;
+
+/**
+ * Removes noise the same way as NoiseRemoverRule, reading the sums over each
+ * cell's neighbourhood from a summed-area table instead of visiting the
+ * neighbours, so that the cost per cell does not grow with the radius.
+ * <p>
+ * The mean colour comes straight from the table. So does a bound on the
+ * test that every neighbour is within epsilon of the cell: the sum of the
+ * squared distances from the cell to its neighbours follows from the sums of
+ * the YCbCr components and of their squares. When that sum is below the
+ * threshold, no neighbour can exceed it, and when the average is above the
+ * threshold, some neighbour must. Only the cells in between, near the edges
+ * of regions, visit their neighbours to decide.
+ * <p>
+ * The table is built when the rule starts, in parallel when given a pool (see
+ * setPool). Passes after the first only visit a frontier of a few cells, so
+ * they visit the neighbours rather than build the table again.
+ * <p>
+ * The table takes 44 bytes per cell. At small radii NoiseRemoverRule costs
+ * about the same and can be fused with EdgeFinderRule, so ShapeDetector only
+ * switches to this rule from ShapeDetector.BOX_MEAN_R.
+ *
+ * @author Sean
+ */
+public class BoxMeanRule extends NoiseRemoverRule {
+	/**
+	 * Margin, relative to the threshold, that the bounds must clear, so that
+	 * rounding errors never decide a cell differently from NoiseRemoverRule.
+	 */
+	protected final static double TOLERANCE = 1e-6;
+
+	/** The squared distance in YCbCr space that epsilon corresponds to. */
+	protected final double threshold;
+	/** Sums over the lattice, while the first pass runs. */
+	protected SummedAreaTable table;
+	/** The pool to build the table on, or null for the calling thread. */
+	protected WorkerPool pool;
+	/** Number of threads to build the table on. */
+	protected int numThreads = 1;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lattice
+	 *            Must be an ARGBLattice.
+	 * @param neighbourhoodModel
+	 *            Must be a Moore neighbourhood.
+	 * @param epsilon
+	 * @throws CAException
+	 */
+	public BoxMeanRule(final Lattice<Color> lattice,
+			final Neighbourhood<Color> neighbourhoodModel, final double epsilon)
+			throws CAException {
+		super(lattice, neighbourhoodModel, epsilon);
+		if (argbLattice == null) {
+			throw new CAException(toString() + " requires an ARGBLattice");
+		} else if (radius < 0) {
+			throw new CAException(toString()
+					+ " requires a Moore neighbourhood");
+		}
+		double distance = epsilon * ColourCompare.MAX_DISTANCE;
+		threshold = distance * distance;
+	}
+
+	/**
+	 * Sets the pool to build the summed-area table on.
+	 *
+	 * @param pool
+	 * @param numThreads
+	 *            Number of threads to split the work between.
+	 */
+	public void setPool(final WorkerPool pool, final int numThreads) {
+		this.pool = pool;
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Builds the summed-area table.
+	 */
+	@Override
+	public void prepare() {
+		super.prepare();
+		final SummedAreaTable table = new SummedAreaTable(argbLattice);
+		if (pool == null || numThreads <= 1) {
+			table.build();
+		} else {
+			final int width = table.getWidth();
+			final int height = table.getHeight();
+			inParallel(new Band() {
+				@Override
+				public void run(final int i, final int n) {
+					table.sumRows(height * i / n, height * (i + 1) / n);
+				}
+			});
+			inParallel(new Band() {
+				@Override
+				public void run(final int i, final int n) {
+					table.sumColumns(width * i / n, width * (i + 1) / n);
+				}
+			});
+		}
+		this.table = table;
+	}
+
+	/**
+	 * A share of the work of building the table.
+	 */
+	protected interface Band {
+		/**
+		 * Does the i-th of n equal shares of the work.
+		 *
+		 * @param i
+		 * @param n
+		 */
+		public void run(int i, int n);
+	}
+
+	/**
+	 * Runs a share of the work on each thread, and waits for all of them.
+	 *
+	 * @param band
+	 */
+	protected void inParallel(final Band band) {
+		final CountDownLatch done = new CountDownLatch(numThreads);
+		for (int i = 0; i < numThreads; i++) {
+			final int share = i;
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						band.run(share, numThreads);
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Unexpected interruption");
+		}
+	}
+
+	@Override
+	public void update(final int index) throws CAException {
+		if (table == null || getFrontier() != null) {
+			meanState(index);
+		} else {
+			boxMeanState(index);
+		}
+	}
+
+	/**
+	 * Does the same as meanState(), reading the sums from the summed-area
+	 * table.
+	 *
+	 * @param index
+	 *            Index of the cell.
+	 * @throws CAException
+	 */
+	protected void boxMeanState(final int index) throws CAException {
+		int x = argbLattice.getX(index);
+		int y = argbLattice.getY(index);
+		int x0 = Math.max(0, x - radius);
+		int y0 = Math.max(0, y - radius);
+		int x1 = Math.min(table.getWidth(), x + radius + 1);
+		int y1 = Math.min(table.getHeight(), y + radius + 1);
+		int area = (x1 - x0) * (y1 - y0);
+
+		/*
+		 * Sum of the squared distances from the cell to the cells in the
+		 * window. The cell itself adds nothing.
+		 */
+		double cy = planes.getLuma()[index];
+		double ccb = planes.getBlueChroma()[index];
+		double ccr = planes.getRedChroma()[index];
+		double distance = table.getSquare(x0, y0, x1, y1) - 2d
+				* (cy * table.getLuma(x0, y0, x1, y1) + ccb
+						* table.getBlueChroma(x0, y0, x1, y1) + ccr
+						* table.getRedChroma(x0, y0, x1, y1)) + area
+				* (cy * cy + ccb * ccb + ccr * ccr);
+
+		int n = area - 1;
+		if (distance > n * threshold * (1d + TOLERANCE) + TOLERANCE) {
+			/* On average the neighbours are too far, so one of them is. */
+			return;
+		} else if (distance >= threshold * (1d - TOLERANCE) - TOLERANCE
+				&& !isUniform(index)) {
+			/* Too close to call from the sums, so the neighbours decided. */
+			return;
+		}
+
+		int colour = getRGB(index);
+		int r = table.getRed(x0, y0, x1, y1) - ((colour >> 16) & 0xff);
+		int g = table.getGreen(x0, y0, x1, y1) - ((colour >> 8) & 0xff);
+		int b = table.getBlue(x0, y0, x1, y1) - (colour & 0xff);
+		/* Every cell of an ARGBLattice is opaque. */
+		int mean = ColourCompare.meanColour(r, g, b, 0xff * n, n);
+		if (mean != colour) {
+			setRGB(index, mean);
+			changed(index);
+		}
+	}
+
+	/**
+	 * Checks whether every neighbour of the cell is within epsilon of it, as
+	 * meanState() does. Stops at the first neighbour that is not.
+	 *
+	 * @param index
+	 *            Index of the cell.
+	 * @return
+	 * @throws CAException
+	 */
+	protected boolean isUniform(final int index) throws CAException {
+		if (offsets != null) {
+			/* Padding compares as NaN, which never reaches epsilon. */
+			for (int k = 0; k < offsets.length; k++) {
+				if (planes.getDifference(index, index + offsets[k]) >= epsilon) {
+					return false;
+				}
+			}
+			return true;
+		}
+		StencilCursor cursor = getCursor(index);
+		while (cursor.next()) {
+			if (getDifference(index, cursor.getIndex()) >= epsilon) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The table is only built for single rules, so this rule is never fused.
+	 */
+	@Override
+	public boolean isFusable() {
+		return false;
+	}
+
+	@Override
+	public void complete() throws CAException {
+		super.complete();
+		table = null;
+	}
+}
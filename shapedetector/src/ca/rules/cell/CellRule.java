@@ -2,16 +2,51 @@ package ca.rules.cell;
 
 import helpers.Stopwatch;
 import ca.Cell;
+import ca.Frontier;
 import ca.lattice.Lattice;
+import ca.lattice.Lattice2D;
 import ca.neighbourhood.Neighbourhood;
+import ca.neighbourhood.Stencil;
+import ca.neighbourhood.StencilCursor;
 import ca.rules.Rule;
 import exceptions.CAException;
 import exceptions.NullParameterException;
 
 public abstract class CellRule<V> implements Rule<Cell<V>> {
+	/** Default tile width. 0 means that tiles span whole rows. */
+	public final static int DEFAULT_TILE_WIDTH = 0;
+	/** Default tile height. */
+	public final static int DEFAULT_TILE_HEIGHT = 8;
+	/** Default maximum number of passes. */
+	public final static int DEFAULT_MAX_PASSES = 1;
+
 	protected final Lattice<V> lattice;
 	protected final Neighbourhood<V> neighbourhoodModel;
 	protected final Stopwatch stopwatch;
+	/** Each thread's cursor over the neighbourhood's stencil. */
+	protected final ThreadLocal<StencilCursor> cursors;
+	/** Width of the tiles the lattice is split into, 0 for whole rows. */
+	protected int tileWidth = DEFAULT_TILE_WIDTH;
+	/** Height of the tiles the lattice is split into. */
+	protected int tileHeight = DEFAULT_TILE_HEIGHT;
+	/**
+	 * States whether the rule sets the state of every cell it updates, so that
+	 * the lattice can swap its buffers instead of copying them.
+	 */
+	protected boolean writesAllCells;
+	/** Maximum number of passes to make over the lattice. */
+	protected int maxPasses = DEFAULT_MAX_PASSES;
+	/** Number of passes completed so far. */
+	protected int passes;
+	/**
+	 * Cells to update during the current pass, or null to update every cell.
+	 */
+	protected Frontier frontier;
+	/**
+	 * Cells to update during the next pass, or null when the rule only makes
+	 * one pass. Cells are added to it as their neighbours change.
+	 */
+	protected Frontier nextFrontier;
 
 	/**
 	 * Constructor.
@@ -30,17 +65,299 @@ public abstract class CellRule<V> implements Rule<Cell<V>> {
 		this.lattice = lattice;
 		this.neighbourhoodModel = neighbourhoodModel;
 		stopwatch = new Stopwatch();
+		cursors = new ThreadLocal<StencilCursor>() {
+			@Override
+			protected StencilCursor initialValue() {
+				Stencil stencil = neighbourhoodModel.getStencil();
+				return stencil == null ? null : stencil.cursor();
+			}
+		};
+	}
+
+	/**
+	 * Gets this thread's cursor over the neighbours of the cell with the
+	 * specified index. The cursor is reused, so nothing is allocated.
+	 * 
+	 * @param index
+	 * @return
+	 * @throws CAException
+	 *             When the neighbourhood has no stencil.
+	 */
+	protected StencilCursor getCursor(final int index) throws CAException {
+		StencilCursor cursor = cursors.get();
+		if (cursor == null) {
+			throw new CAException(toString()
+					+ " requires a lattice that supports cell indices");
+		}
+		cursor.moveTo(index);
+		return cursor;
+	}
+
+	/**
+	 * Applies the rule to the cell with the specified index.
+	 * <p>
+	 * By default this asks the lattice for the cell object. Rules that can
+	 * work with indices alone should override this, so that the lattice does
+	 * not have to create a cell object for every position.
+	 * 
+	 * @param index
+	 * @throws CAException
+	 */
+	public void update(final int index) throws CAException {
+		update(lattice.getCell(index));
+	}
+
+	/**
+	 * Applies the rule to the cells with indices from start up to, but not
+	 * including, end.
+	 * 
+	 * @param start
+	 * @param end
+	 * @throws CAException
+	 */
+	public void update(final int start, final int end) throws CAException {
+		for (int i = start; i < end; i++) {
+			update(i);
+		}
+	}
+
+	/**
+	 * Applies the rule to the cells in the tile from (x0,y0) up to, but not
+	 * including, (x1,y1). Rows that are stored contiguously are handed to
+	 * update(start, end) as ranges of indices.
+	 * 
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @throws CAException
+	 */
+	public void update(final int x0, final int y0, final int x1, final int y1)
+			throws CAException {
+		Lattice2D<V> lattice2D = getLattice2D();
+		int start = lattice2D.getIndex(x0, y0);
+		int end = lattice2D.getIndex(x1 - 1, y1 - 1);
+		if (end - start + 1 == (x1 - x0) * (y1 - y0)) {
+			/* The layout stores the whole tile as one run of indices. */
+			update(start, end + 1);
+			return;
+		}
+		for (int y = y0; y < y1; y++) {
+			int rowStart = lattice2D.getIndex(x0, y);
+			int rowEnd = lattice2D.getIndex(x1 - 1, y);
+			if (rowEnd - rowStart == x1 - 1 - x0) {
+				update(rowStart, rowEnd + 1);
+			} else {
+				for (int x = x0; x < x1; x++) {
+					update(lattice2D.getIndex(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the lattice as a two dimensional lattice.
+	 * 
+	 * @return
+	 * @throws CAException
+	 *             When the lattice is not two dimensional.
+	 */
+	@SuppressWarnings("unchecked")
+	protected Lattice2D<V> getLattice2D() throws CAException {
+		if (!(lattice instanceof Lattice2D)) {
+			throw new CAException(toString()
+					+ " requires a two dimensional lattice");
+		}
+		return (Lattice2D<V>) lattice;
+	}
+
+	/**
+	 * Records that the cell with the specified index changed state during
+	 * this pass, so that it and its neighbours are updated again during the
+	 * next pass. Rules that can make more than one pass must call this
+	 * whenever they change a cell, otherwise the rule stops after one pass.
+	 * 
+	 * @param index
+	 * @throws CAException
+	 */
+	protected void changed(final int index) throws CAException {
+		if (nextFrontier != null) {
+			nextFrontier.add(index);
+			StencilCursor cursor = getCursor(index);
+			while (cursor.next()) {
+				nextFrontier.add(cursor.getIndex());
+			}
+		}
+	}
+
+	/**
+	 * Records that the cell with the specified index changed state during
+	 * this pass. Saves gathering the neighbourhood again when the rule already
+	 * has it.
+	 * 
+	 * @param index
+	 * @param neighbours
+	 *            Indices of the cell's neighbours.
+	 * @param n
+	 *            Number of neighbours.
+	 */
+	protected void changed(final int index, final int[] neighbours,
+			final int n) {
+		if (nextFrontier != null) {
+			nextFrontier.add(index);
+			nextFrontier.add(neighbours, n);
+		}
+	}
+
+	/**
+	 * Called after each pass over the lattice. Another pass is due when cells
+	 * changed and the pass budget is not spent; it updates only the frontier
+	 * of cells that were added during this pass.
+	 * 
+	 * @return true when another pass is due.
+	 */
+	public boolean completePass() {
+		passes++;
+		if (nextFrontier == null) {
+			return false;
+		}
+		if (passes >= maxPasses || nextFrontier.size() == 0) {
+			frontier = null;
+			return false;
+		}
+
+		Frontier done = frontier;
+		frontier = nextFrontier;
+		if (done == null) {
+			nextFrontier = new Frontier(lattice.size());
+		} else {
+			done.clear();
+			nextFrontier = done;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the cells to update during the current pass.
+	 * 
+	 * @return The frontier, or null when every cell is to be updated.
+	 */
+	public Frontier getFrontier() {
+		return frontier;
+	}
+
+	/**
+	 * Checks whether the rule sets the state of every cell in the lattice
+	 * during the current pass. Passes over a frontier never do.
+	 * 
+	 * @return
+	 */
+	public boolean writesAllCells() {
+		return writesAllCells && frontier == null;
+	}
+
+	/**
+	 * Sets the maximum number of passes to make over the lattice. The rule
+	 * stops early when a pass leaves every cell unchanged.
+	 * 
+	 * @param maxPasses
+	 */
+	public void setMaxPasses(final int maxPasses) {
+		this.maxPasses = maxPasses;
+	}
+
+	/**
+	 * Gets the maximum number of passes to make over the lattice.
+	 * 
+	 * @return
+	 */
+	public int getMaxPasses() {
+		return maxPasses;
+	}
+
+	/**
+	 * Gets the number of passes completed so far.
+	 * 
+	 * @return
+	 */
+	public int getPasses() {
+		return passes;
+	}
+
+	/**
+	 * Sets the size of the tiles that the lattice is split into when the rule
+	 * runs in parallel. Each thread works on one tile at a time, so this can
+	 * be tuned to the rule's memory access pattern.
+	 * 
+	 * @param width
+	 *            Tile width, or 0 for tiles that span whole rows.
+	 * @param height
+	 *            Tile height.
+	 */
+	public void setTileSize(final int width, final int height) {
+		tileWidth = width;
+		tileHeight = height;
+	}
+
+	/**
+	 * Gets the tile width.
+	 * 
+	 * @return Tile width, or 0 for tiles that span whole rows.
+	 */
+	public int getTileWidth() {
+		return tileWidth;
+	}
+
+	/**
+	 * Gets the tile height.
+	 * 
+	 * @return
+	 */
+	public int getTileHeight() {
+		return tileHeight;
+	}
+
+	/**
+	 * Gets the size of the tiles that the lattice is actually split into: the
+	 * rule's tile size adjusted to suit the lattice's layout (see
+	 * Layout.getTileSize()) and clipped to the lattice.
+	 * 
+	 * @param lattice2D
+	 * @return The width and height of the tiles.
+	 */
+	public int[] getTileSize(final Lattice2D<V> lattice2D) {
+		int w = lattice2D.getWidth();
+		int h = lattice2D.getHeight();
+		int[] tileSize = lattice2D.getLayout().getTileSize(
+				tileWidth > 0 ? tileWidth : w, tileHeight);
+		tileSize[0] = Math.max(1, Math.min(tileSize[0], w));
+		tileSize[1] = Math.max(1, Math.min(tileSize[1], h));
+		return tileSize;
 	}
 
 	@Override
 	public void prepare() {
 		stopwatch.start();
+		passes = 0;
+		frontier = null;
+		if (maxPasses > 1) {
+			nextFrontier = new Frontier(lattice.size());
+		} else {
+			nextFrontier = null;
+		}
 	}
 
 	@Override
-	public void complete() {
-		System.out.println(toString() + ", elapsed time: " + stopwatch.time()
-				+ " ms");
+	public void complete() throws CAException {
+		if (passes > 1) {
+			System.out.println(toString() + ", " + passes
+					+ " passes, elapsed time: " + stopwatch.time() + " ms");
+		} else {
+			System.out.println(toString() + ", elapsed time: "
+					+ stopwatch.time() + " ms");
+		}
+		frontier = null;
+		nextFrontier = null;
 	}
 
 	public String toString() {
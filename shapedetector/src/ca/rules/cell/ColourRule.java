@@ -0,0 +1,131 @@
+package ca.rules.cell;
+
+import graphics.ColourCompare;
+import graphics.YCbCrPlanes;
+
+import java.awt.Color;
+
+import ca.Cell;
+import ca.lattice.ARGBLattice;
+import ca.lattice.Lattice;
+import ca.neighbourhood.Neighbourhood;
+import exceptions.CAException;
+
+/**
+ * A cell rule that works with the colours of cells as packed ARGB integers.
+ * <p>
+ * When the lattice is an ARGBLattice, the colours are read and written
+ * directly, without creating Color objects. Any other Lattice<Color> still
+ * works, through its getState() and setState() methods.
+ * <p>
+ * Rules that compare colours should call cacheYCbCr() when they start, so
+ * that getDifference() can use the lattice's YCbCr planes.
+ * 
+ * @author Sean
+ */
+public abstract class ColourRule extends CellRule<Color> {
+	/** The lattice, or null if it does not store packed ARGB values. */
+	protected final ARGBLattice argbLattice;
+	/** The lattice's YCbCr planes, or null if they are not cached. */
+	protected YCbCrPlanes planes;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param lattice
+	 * @param neighbourhoodModel
+	 * @throws CAException
+	 */
+	public ColourRule(final Lattice<Color> lattice,
+			final Neighbourhood<Color> neighbourhoodModel) throws CAException {
+		super(lattice, neighbourhoodModel);
+		if (lattice instanceof ARGBLattice) {
+			argbLattice = (ARGBLattice) lattice;
+		} else {
+			argbLattice = null;
+		}
+	}
+
+	/**
+	 * Asks the lattice to keep its colours in YCbCr format, if it can. Call
+	 * from prepare().
+	 */
+	protected void cacheYCbCr() {
+		if (argbLattice != null) {
+			planes = argbLattice.getYCbCrPlanes();
+		}
+	}
+
+	/**
+	 * Gets the difference quotient between the colours of the cells with the
+	 * specified indices.
+	 * 
+	 * @see ColourCompare#getDifference(int, int)
+	 * @param index1
+	 * @param index2
+	 * @return
+	 */
+	protected double getDifference(final int index1, final int index2) {
+		if (planes != null) {
+			return planes.getDifference(index1, index2);
+		} else {
+			return ColourCompare.getDifference(getRGB(index1), getRGB(index2));
+		}
+	}
+
+	/**
+	 * Gets the packed ARGB colour of the cell.
+	 * 
+	 * @param cell
+	 * @return
+	 */
+	protected int getRGB(final Cell<Color> cell) {
+		if (argbLattice != null) {
+			return argbLattice.getRGB(cell);
+		} else {
+			return lattice.getState(cell).getRGB();
+		}
+	}
+
+	/**
+	 * Gets the packed ARGB colour of the cell with the specified index.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	protected int getRGB(final int index) {
+		if (argbLattice != null) {
+			return argbLattice.getRGB(index);
+		} else {
+			return lattice.getState(index).getRGB();
+		}
+	}
+
+	/**
+	 * Sets the packed ARGB colour of the cell with the specified index.
+	 * 
+	 * @param index
+	 * @param argb
+	 */
+	protected void setRGB(final int index, final int argb) {
+		if (argbLattice != null) {
+			argbLattice.setRGB(index, argb);
+		} else {
+			lattice.setState(index, new Color(argb, true));
+		}
+	}
+
+	/**
+	 * Sets the packed ARGB colour of the cell.
+	 * 
+	 * @param cell
+	 * @param argb
+	 */
+	protected void setRGB(final Cell<Color> cell, final int argb) {
+		if (argbLattice != null) {
+			argbLattice.setRGB(cell, argb);
+		} else {
+			lattice.setState(cell, new Color(argb, true));
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package ca.rules.cell;
+
+import java.awt.Color;
+
+import ca.Cell;
+import ca.lattice.DifferencePlanes;
+import ca.lattice.Lattice;
+import ca.neighbourhood.Moore;
+import exceptions.CAException;
+
+/**
+ * Computes the colour differences between adjacent cells of an ARGBLattice
+ * once, for the rules that follow to read (see DifferencePlanes). Each cell
+ * works out its differences to the right, down, down-right and down-left
+ * neighbours, so each pair of cells is compared only once, and the tiles are
+ * computed in parallel like those of any other rule. No cell changes.
+ * <p>
+ * NoiseRemoverRule and EdgeFinderRule read the differences instead of
+ * comparing colours when their radius is 1 and the lattice has padding (see
+ * StencilRule). They are kept up to date as NoiseRemoverRule smooths the
+ * image over several passes, but a rule that writes every cell, such as
+ * EdgeFinderRule, discards them. When the rules are fused, the first of them
+ * reads the differences from its tile (see FusedStencilRule), which is how
+ * ShapeDetector runs them.
+ *
+ * @author Sean
+ */
+public class DifferenceRule extends ColourRule {
+	/** The planes being computed. */
+	protected DifferencePlanes differences;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lattice
+	 *            Must be an ARGBLattice.
+	 * @throws CAException
+	 */
+	public DifferenceRule(final Lattice<Color> lattice) throws CAException {
+		super(lattice, new Moore<Color>(lattice, 1));
+		if (argbLattice == null) {
+			throw new CAException(toString() + " requires an ARGBLattice");
+		}
+	}
+
+	/**
+	 * Creates the lattice's difference planes.
+	 */
+	@Override
+	public void prepare() {
+		super.prepare();
+		differences = argbLattice.createDifferencePlanes();
+	}
+
+	@Override
+	public void update(final Cell<Color> cell) throws CAException {
+		update(cell.getIndex());
+	}
+
+	@Override
+	public void update(final int index) throws CAException {
+		differences.compute(index);
+	}
+
+	@Override
+	public void update(final int x0, final int y0, final int x1, final int y1)
+			throws CAException {
+		differences.compute(x0, y0, x1, y1);
+	}
+
+	@Override
+	public void complete() throws CAException {
+		super.complete();
+		differences = null;
+	}
+}
@@ -1,19 +1,19 @@
 package ca.rules.cell;
 
 import exceptions.CAException;
-import graphics.ColourCompare;
 
 import java.awt.Color;
-import java.util.List;
 
 import ca.Cell;
+import ca.lattice.DifferencePlanes;
 import ca.lattice.Lattice;
 import ca.neighbourhood.Neighbourhood;
+import ca.neighbourhood.StencilCursor;
 
 /**
  * Finds the edges in the image.
  */
-public class EdgeFinderRule extends CellRule<Color> {
+public class EdgeFinderRule extends StencilRule {
 	/**
 	 * Colour that cells turn to when they become inactive, that is the
 	 * background colour of the output image.
@@ -24,29 +24,79 @@ public class EdgeFinderRule extends CellRule<Color> {
 	 * output image.
 	 */
 	public final static Color EDGE_COLOUR = new Color(200, 200, 200);
+	/** QUIESCENT_COLOUR as a packed ARGB value. */
+	public final static int QUIESCENT_RGB = QUIESCENT_COLOUR.getRGB();
+	/** EDGE_COLOUR as a packed ARGB value. */
+	public final static int EDGE_RGB = EDGE_COLOUR.getRGB();
 
 	protected final double epsilon;
+	/** The least squared distance that is greater than epsilon. */
+	protected final float edgeThreshold;
 
 	public EdgeFinderRule(final Lattice<Color> lattice,
 			final Neighbourhood<Color> neighbourhoodModel, final double epsilon)
 			throws CAException {
 		super(lattice, neighbourhoodModel);
 		this.epsilon = epsilon;
+		edgeThreshold = DifferencePlanes.getThreshold(epsilon, false);
+		/* Every cell becomes either an edge or quiescent. */
+		writesAllCells = true;
 	}
 
 	@Override
-	public void update(Cell<Color> cell) {
-		List<Cell<Color>> neighbourhood = cell.getNeighbourhood();
-		for (Cell<Color> neighbour : neighbourhood) {
-			if (neighbour != cell) {
-				double difference = ColourCompare.getDifference(
-						lattice.getState(cell), lattice.getState(neighbour));
+	public void update(final Cell<Color> cell) throws CAException {
+		update(cell.getIndex());
+	}
+
+	@Override
+	public void update(final int index) throws CAException {
+		if (differencePlanes != null) {
+			/* The same comparisons, read from the planes. */
+			for (int k = 0; k < offsets.length; k++) {
+				if (differencePlanes[k][index + differenceShifts[k]]
+						>= edgeThreshold) {
+					setRGB(index, EDGE_RGB);
+					return;
+				}
+			}
+			setRGB(index, QUIESCENT_RGB);
+			return;
+		} else if (offsets != null) {
+			/* Padding is never different, see StencilRule. */
+			for (int k = 0; k < offsets.length; k++) {
+				if (planes.getDifference(index, index + offsets[k]) > epsilon) {
+					setRGB(index, EDGE_RGB);
+					return;
+				}
+			}
+			setRGB(index, QUIESCENT_RGB);
+			return;
+		}
+		StencilCursor cursor = getCursor(index);
+		while (cursor.next()) {
+			int neighbour = cursor.getIndex();
+			if (neighbour != index) {
+				double difference = getDifference(index, neighbour);
 				if (difference > epsilon) {
-					lattice.setState(cell, EDGE_COLOUR);
+					setRGB(index, EDGE_RGB);
 					return;
 				}
 			}
 		}
-		lattice.setState(cell, QUIESCENT_COLOUR);
+		setRGB(index, QUIESCENT_RGB);
+	}
+
+	@Override
+	public int apply(final StencilTile tile, final int index) {
+		int n = tile.gatherNeighbours(index, radius);
+		int[] neighbours = tile.getNeighbours();
+		for (int i = 0; i < n; i++) {
+			if (neighbours[i] != index
+					&& tile.getSquaredDistance(index, neighbours[i])
+							>= edgeThreshold) {
+				return EDGE_RGB;
+			}
+		}
+		return QUIESCENT_RGB;
 	}
 }
@@ -0,0 +1,204 @@
+package ca.rules.cell;
+
+import java.awt.Color;
+import java.util.List;
+
+import ca.Cell;
+import ca.lattice.DifferencePlanes;
+import ca.lattice.Lattice2D;
+import exceptions.CAException;
+
+/**
+ * Runs consecutive stencil rules as a single pass over the lattice.
+ * <p>
+ * Each tile is loaded into a StencilTile along with a border (halo) as wide
+ * as the radii of all the rules put together. The first rule computes the
+ * tile and the border that the rules after it read, the second a narrower
+ * border, and so on, until the last rule computes only the tile, which is
+ * written to the lattice. The cells in the borders are computed more than
+ * once, by neighbouring tiles, but the intermediate colours never pass
+ * through the lattice. The lattice is read once and written once, instead of
+ * once per rule, and is not copied between the rules.
+ * <p>
+ * When a DifferenceRule has computed the differences between adjacent cells
+ * and the first rule has a radius of 1, they are loaded with the colours,
+ * and the first rule reads them instead of comparing the colours.
+ * <p>
+ * Each thread keeps its own pair of buffers, which are reused from tile to
+ * tile.
+ *
+ * @author Sean
+ */
+public class FusedStencilRule extends ColourRule {
+	/** Default tile width. Tiles are kept small, so that they stay in cache. */
+	public final static int DEFAULT_TILE_WIDTH = 128;
+	/** Default tile height. */
+	public final static int DEFAULT_TILE_HEIGHT = 64;
+
+	/** The rules to apply, in order. */
+	protected final StencilRule[] stages;
+	/** Width of the border that the rules read around each tile. */
+	protected final int halo;
+	/** Each thread's pair of buffers. */
+	protected final ThreadLocal<StencilTile[]> buffers;
+	/** The lattice's difference planes, for the first rule to read, or null. */
+	protected DifferencePlanes differences;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stages
+	 *            The rules to apply, in order. They must all be fusable and
+	 *            share a lattice.
+	 * @throws CAException
+	 */
+	public FusedStencilRule(final List<StencilRule> stages) throws CAException {
+		super(first(stages).lattice, first(stages).neighbourhoodModel);
+		this.stages = stages.toArray(new StencilRule[stages.size()]);
+		int halo = 0;
+		for (StencilRule stage : this.stages) {
+			if (!stage.isFusable() || stage.lattice != lattice) {
+				throw new CAException(stage + " cannot be fused with "
+						+ this.stages[0]);
+			}
+			halo += stage.getRadius();
+		}
+		this.halo = halo;
+
+		buffers = new ThreadLocal<StencilTile[]>() {
+			@Override
+			protected StencilTile[] initialValue() {
+				return new StencilTile[] { new StencilTile(), new StencilTile() };
+			}
+		};
+		/* The last rule computes every cell of every tile. */
+		writesAllCells = true;
+		tileWidth = DEFAULT_TILE_WIDTH;
+		tileHeight = DEFAULT_TILE_HEIGHT;
+	}
+
+	/**
+	 * Gets the first rule to fuse.
+	 *
+	 * @param stages
+	 * @return
+	 * @throws CAException
+	 *             When there are none.
+	 */
+	protected static StencilRule first(final List<StencilRule> stages)
+			throws CAException {
+		if (stages == null || stages.isEmpty()) {
+			throw new CAException("No rules to fuse");
+		}
+		return stages.get(0);
+	}
+
+	@Override
+	public void prepare() {
+		super.prepare();
+		cacheYCbCr();
+		for (StencilRule stage : stages) {
+			stage.prepare();
+		}
+		differences = stages[0].getRadius() == 1 ? argbLattice
+				.getDifferencePlanes() : null;
+	}
+
+	@Override
+	public void complete() throws CAException {
+		super.complete();
+		differences = null;
+	}
+
+	@Override
+	public void update(final Cell<Color> cell) throws CAException {
+		update(cell.getIndex());
+	}
+
+	@Override
+	public void update(final int index) throws CAException {
+		Lattice2D<Color> lattice2D = getLattice2D();
+		int x = lattice2D.getX(index);
+		int y = lattice2D.getY(index);
+		update(x, y, x + 1, y + 1);
+	}
+
+	/**
+	 * Applies every rule to the tile from (x0,y0) up to, but not including,
+	 * (x1,y1).
+	 */
+	@Override
+	public void update(final int x0, final int y0, final int x1, final int y1)
+			throws CAException {
+		int width = argbLattice.getWidth();
+		int height = argbLattice.getHeight();
+		StencilTile[] tiles = buffers.get();
+		StencilTile in = tiles[0];
+		StencilTile out = tiles[1];
+
+		int bx0 = Math.max(0, x0 - halo);
+		int by0 = Math.max(0, y0 - halo);
+		int bx1 = Math.min(width, x1 + halo);
+		int by1 = Math.min(height, y1 + halo);
+		in.reset(bx0, by0, bx1, by1);
+		out.reset(bx0, by0, bx1, by1);
+		in.load(argbLattice, planes, differences);
+
+		/* Border still to be read by the rules after the current one. */
+		int border = halo;
+		for (int s = 0; s < stages.length; s++) {
+			StencilRule stage = stages[s];
+			boolean last = s == stages.length - 1;
+			border -= stage.getRadius();
+			int rx0 = Math.max(0, x0 - border);
+			int ry0 = Math.max(0, y0 - border);
+			int rx1 = Math.min(width, x1 + border);
+			int ry1 = Math.min(height, y1 + border);
+
+			for (int y = ry0; y < ry1; y++) {
+				int index = in.getIndex(rx0, y);
+				for (int x = rx0; x < rx1; x++, index++) {
+					int argb = stage.apply(in, index);
+					if (last) {
+						out.setRGB(index, argb);
+					} else {
+						out.setRGB(index, argb, in);
+					}
+				}
+			}
+			out.setRegion(rx0, ry0, rx1, ry1);
+
+			StencilTile swap = in;
+			in = out;
+			out = swap;
+		}
+
+		for (int y = y0; y < y1; y++) {
+			int index = in.getIndex(x0, y);
+			int latticeIndex = argbLattice.getIndex(x0, y);
+			if (argbLattice.getIndex(x1 - 1, y) - latticeIndex == x1 - 1 - x0) {
+				for (int x = x0; x < x1; x++) {
+					argbLattice.setRGB(latticeIndex++, in.getRGB(index++));
+				}
+			} else {
+				for (int x = x0; x < x1; x++) {
+					argbLattice.setRGB(argbLattice.getIndex(x, y),
+							in.getRGB(index++));
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder(super.toString());
+		stringBuilder.append(" [");
+		for (int s = 0; s < stages.length; s++) {
+			if (s > 0) {
+				stringBuilder.append(", ");
+			}
+			stringBuilder.append(stages[s]);
+		}
+		return stringBuilder.append("]").toString();
+	}
+}
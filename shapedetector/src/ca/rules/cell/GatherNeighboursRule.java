@@ -8,6 +8,9 @@ import exceptions.CAException;
 /**
  * Although other rules may gather neighbours themselves, this enables us to do
  * so expressly in a separate rule.
+ * <p>
+ * Only works on lattices that keep a cell object for each position, such as
+ * PictureLattice. Flyweight cells do not store their neighbourhoods.
  * 
  * @author Sean
  */
@@ -0,0 +1,170 @@
+package ca.rules.cell;
+
+import exceptions.CAException;
+import graphics.SlidingMedian;
+
+import java.awt.Color;
+
+import ca.Cell;
+import ca.lattice.Lattice;
+import ca.neighbourhood.Moore;
+import ca.neighbourhood.Neighbourhood;
+
+/**
+ * Removes noise by setting each cell to the median colour of its Moore
+ * neighbourhood, taking the median of the red, green and blue components
+ * separately. Unlike the mean, the median ignores outliers, so it removes
+ * salt-and-pepper noise while keeping edges sharp.
+ * <p>
+ * This replaces NoiseRemoverRule.medianState(), which sorted the colours of
+ * the whole neighbourhood for every cell. Each tile is swept row by row with
+ * a SlidingMedian for each component, so the cost per cell does not depend on
+ * the radius. Tiles overlap their neighbours by the radius, and the columns
+ * of the overlap are read again for each tile, so tiles should be much wider
+ * and taller than the radius.
+ * <p>
+ * There is no epsilon: every cell is set, since the median of a uniform
+ * neighbourhood is its own colour anyway.
+ *
+ * @author Sean
+ */
+public class MedianFilterRule extends ColourRule {
+	public final static int DEFAULT_TILE_WIDTH = 128;
+	public final static int DEFAULT_TILE_HEIGHT = 64;
+
+	/** Radius of the neighbourhood. */
+	protected final int radius;
+	/** Each thread's histograms, one for each colour component. */
+	protected final ThreadLocal<SlidingMedian[]> medians;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lattice
+	 *            Must be an ARGBLattice.
+	 * @param neighbourhoodModel
+	 *            Must be a Moore neighbourhood.
+	 * @throws CAException
+	 */
+	public MedianFilterRule(final Lattice<Color> lattice,
+			final Neighbourhood<Color> neighbourhoodModel) throws CAException {
+		super(lattice, neighbourhoodModel);
+		if (argbLattice == null) {
+			throw new CAException(toString() + " requires an ARGBLattice");
+		} else if (!(neighbourhoodModel instanceof Moore)) {
+			throw new CAException(toString()
+					+ " requires a Moore neighbourhood");
+		}
+		radius = ((Moore<Color>) neighbourhoodModel).getR();
+		medians = new ThreadLocal<SlidingMedian[]>() {
+			@Override
+			protected SlidingMedian[] initialValue() {
+				return new SlidingMedian[] { new SlidingMedian(0),
+						new SlidingMedian(0), new SlidingMedian(0) };
+			}
+		};
+		/* Every cell is set to its median. */
+		writesAllCells = true;
+		setTileSize(DEFAULT_TILE_WIDTH, DEFAULT_TILE_HEIGHT);
+	}
+
+	@Override
+	public void update(final Cell<Color> cell) throws CAException {
+		update(cell.getIndex());
+	}
+
+	/**
+	 * Updates a single cell, as a tile of its own. Only passes over a
+	 * frontier do this.
+	 */
+	@Override
+	public void update(final int index) throws CAException {
+		int x = argbLattice.getX(index);
+		int y = argbLattice.getY(index);
+		update(x, y, x + 1, y + 1);
+	}
+
+	/**
+	 * Sets the cells in the tile from (x0,y0) up to, but not including,
+	 * (x1,y1) to their medians.
+	 */
+	@Override
+	public void update(final int x0, final int y0, final int x1, final int y1)
+			throws CAException {
+		int w = argbLattice.getWidth();
+		int h = argbLattice.getHeight();
+		/* The columns that the windows of the tile cover. */
+		int cx0 = Math.max(0, x0 - radius);
+		int cx1 = Math.min(w, x1 + radius);
+		SlidingMedian[] channels = medians.get();
+		for (SlidingMedian channel : channels) {
+			channel.resize(cx1 - cx0);
+		}
+
+		int top = Math.max(0, y0 - radius);
+		int bottom = Math.min(h, y0 + radius + 1);
+		for (int y = top; y < bottom; y++) {
+			addRow(channels, cx0, cx1, y, true);
+		}
+
+		for (int y = y0; y < y1; y++) {
+			if (y > y0) {
+				/* Slides the column histograms down a row. */
+				if (y - radius - 1 >= 0) {
+					addRow(channels, cx0, cx1, y - radius - 1, false);
+				}
+				if (y + radius < h) {
+					addRow(channels, cx0, cx1, y + radius, true);
+				}
+			}
+			for (SlidingMedian channel : channels) {
+				channel.reset();
+			}
+			for (int x = x0; x < x1; x++) {
+				int left = Math.max(0, x - radius) - cx0;
+				int right = Math.min(w, x + radius + 1) - cx0;
+				int median = 0xff000000
+						| (channels[0].median(left, right) << 16)
+						| (channels[1].median(left, right) << 8)
+						| channels[2].median(left, right);
+				int index = argbLattice.getIndex(x, y);
+				if (median != getRGB(index)) {
+					changed(index);
+				}
+				setRGB(index, median);
+			}
+		}
+	}
+
+	/**
+	 * Adds the colours of a row of cells to the column histograms, or
+	 * removes them.
+	 *
+	 * @param channels
+	 *            Histograms of the red, green and blue components.
+	 * @param cx0
+	 *            The first column.
+	 * @param cx1
+	 *            The column after the last.
+	 * @param y
+	 * @param add
+	 *            true to add the colours, false to remove them.
+	 * @throws CAException
+	 */
+	protected void addRow(final SlidingMedian[] channels, final int cx0,
+			final int cx1, final int y, final boolean add) throws CAException {
+		for (int x = cx0; x < cx1; x++) {
+			int colour = getRGB(argbLattice.getIndex(x, y));
+			int column = x - cx0;
+			if (add) {
+				channels[0].addValue(column, (colour >> 16) & 0xff);
+				channels[1].addValue(column, (colour >> 8) & 0xff);
+				channels[2].addValue(column, colour & 0xff);
+			} else {
+				channels[0].removeValue(column, (colour >> 16) & 0xff);
+				channels[1].removeValue(column, (colour >> 8) & 0xff);
+				channels[2].removeValue(column, colour & 0xff);
+			}
+		}
+	}
+}
@@ -8,24 +8,39 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.Cell;
+import ca.lattice.DifferencePlanes;
 import ca.lattice.Lattice;
 import ca.neighbourhood.Neighbourhood;
+import ca.neighbourhood.StencilCursor;
 
 /**
  * Removes noise from the image.
  * <p>
- * It may be possible to improve performance by caching the colour differences.
+ * With more than one pass (see setMaxPasses), the image is smoothed until it
+ * stops changing. Each pass after the first only visits the frontier of cells
+ * around the ones that changed.
+ * <p>
+ * To compare each pair of neighbouring colours only once, see DifferenceRule.
+ * <p>
+ * For large radii see BoxMeanRule, and for salt-and-pepper noise see
+ * MedianFilterRule.
  * 
  * @author Sean
  */
-public class NoiseRemoverRule extends CellRule<Color> {
+public class NoiseRemoverRule extends StencilRule {
 	protected final double epsilon;
+	/** The least squared distance that is greater than epsilon. */
+	protected final float exceedingThreshold;
+	/** The least squared distance that is at least epsilon. */
+	protected final float reachingThreshold;
 
 	public NoiseRemoverRule(final Lattice<Color> lattice,
 			final Neighbourhood<Color> neighbourhoodModel, final double epsilon)
 			throws CAException {
 		super(lattice, neighbourhoodModel);
 		this.epsilon = epsilon;
+		exceedingThreshold = DifferencePlanes.getThreshold(epsilon, false);
+		reachingThreshold = DifferencePlanes.getThreshold(epsilon, true);
 	}
 	
 	// @Override
@@ -35,18 +50,20 @@ public class NoiseRemoverRule extends CellRule<Color> {
 
 	@Override
 	public void update(final Cell<Color> cell) throws CAException {
-		/*
-		 * For some reason this rule performs faster when this is set from here
-		 * and not in a separate rule.
-		 */
-		cell.setNeighbourhood(neighbourhoodModel.gatherNeighbours(cell));
+		update(cell.getIndex());
+	}
 
-		meanState(cell);
+	@Override
+	public void update(final int index) throws CAException {
+		meanState(index);
 
 		/*
 		 * Taking the mean value is similar to Gaussian blur, but taking the
 		 * median should be more effective at removing different kinds of noise.
-		 * At this time though, meanColour seems to work better.
+		 * At this time though, meanColour seems to work better. medianState is
+		 * slow; to take the median, ShapeDetector.setMedianFilter() puts
+		 * MedianFilterRule, which does so in constant time per cell, in place
+		 * of this rule.
 		 */
 		// medianState(cell);
 	}
@@ -56,20 +73,33 @@ public class NoiseRemoverRule extends CellRule<Color> {
 	 * is, the average colour. This colour may not appear among any of the
 	 * original cells.
 	 * 
-	 * @param cell
+	 * @param index
+	 *            Index of the cell.
+	 * @throws CAException
 	 */
-	protected void meanState(final Cell<Color> cell) {
-		List<Cell<Color>> neighbourhood = cell.getNeighbourhood();
-		List<Color> colours = new ArrayList<Color>(neighbourhood.size());
-		Color cellColour = cell.getState();
+	protected void meanState(final int index) throws CAException {
+		if (differencePlanes != null) {
+			differenceMeanState(index);
+			return;
+		} else if (offsets != null) {
+			paddedMeanState(index);
+			return;
+		}
+		StencilCursor cursor = getCursor(index);
+		int r = 0, g = 0, b = 0, a = 0;
+		int n = 0;
 		double maxDifference = 0d;
 
-		for (Cell<Color> neighbour : neighbourhood) {
-			if (neighbour != cell) {
-				Color neighbourColour = neighbour.getState();
-				colours.add(neighbourColour);
-				double difference = ColourCompare.getDifference(cellColour,
-						neighbourColour);
+		while (cursor.next()) {
+			int neighbour = cursor.getIndex();
+			if (neighbour != index) {
+				int colour = getRGB(neighbour);
+				r += (colour >> 16) & 0xff;
+				g += (colour >> 8) & 0xff;
+				b += colour & 0xff;
+				a += colour >>> 24;
+				n++;
+				double difference = getDifference(index, neighbour);
 				if (difference > epsilon) {
 					return;
 				} else if (difference > maxDifference) {
@@ -79,9 +109,124 @@ public class NoiseRemoverRule extends CellRule<Color> {
 		}
 
 		if (maxDifference < epsilon) {
-			Color newColour = ColourCompare.meanColour(colours);
-			cell.setState(newColour);
+			int mean = ColourCompare.meanColour(r, g, b, a, n);
+			if (mean != getRGB(index)) {
+				setRGB(index, mean);
+				changed(index);
+			}
+		}
+	}
+
+	/**
+	 * Does the same as meanState(), on a lattice with enough padding to skip
+	 * the bounds checks. Padding pixels are transparent, so they add nothing
+	 * to the sums or to the count, and their differences are NaN, so they
+	 * never exceed epsilon.
+	 * 
+	 * @param index
+	 *            Index of the cell.
+	 * @throws CAException
+	 */
+	protected void paddedMeanState(final int index) throws CAException {
+		int r = 0, g = 0, b = 0, a = 0;
+		int n = 0;
+		double maxDifference = 0d;
+
+		for (int k = 0; k < offsets.length; k++) {
+			int neighbour = index + offsets[k];
+			int colour = argbLattice.getRGB(neighbour);
+			r += (colour >> 16) & 0xff;
+			g += (colour >> 8) & 0xff;
+			b += colour & 0xff;
+			a += colour >>> 24;
+			n += colour >>> 31;
+			double difference = planes.getDifference(index, neighbour);
+			if (difference > epsilon) {
+				return;
+			} else if (difference > maxDifference) {
+				maxDifference = difference;
+			}
+		}
+
+		if (maxDifference < epsilon) {
+			int mean = ColourCompare.meanColour(r, g, b, a, n);
+			if (mean != getRGB(index)) {
+				setRGB(index, mean);
+				changed(index);
+			}
+		}
+	}
+
+	/**
+	 * Does the same as paddedMeanState(), reading the squared distances to
+	 * the neighbours from the lattice's difference planes.
+	 * 
+	 * @param index
+	 *            Index of the cell.
+	 * @throws CAException
+	 */
+	protected void differenceMeanState(final int index) throws CAException {
+		int r = 0, g = 0, b = 0, a = 0;
+		int n = 0;
+		float maxDistance = 0f;
+
+		for (int k = 0; k < offsets.length; k++) {
+			int colour = argbLattice.getRGB(index + offsets[k]);
+			r += (colour >> 16) & 0xff;
+			g += (colour >> 8) & 0xff;
+			b += colour & 0xff;
+			a += colour >>> 24;
+			n += colour >>> 31;
+			float distance = differencePlanes[k][index + differenceShifts[k]];
+			if (distance >= exceedingThreshold) {
+				return;
+			} else if (distance > maxDistance) {
+				maxDistance = distance;
+			}
+		}
+
+		if (maxDistance < reachingThreshold) {
+			int mean = ColourCompare.meanColour(r, g, b, a, n);
+			if (mean != getRGB(index)) {
+				setRGB(index, mean);
+				changed(index);
+			}
+		}
+	}
+
+	/**
+	 * Computes the mean state of the cell's neighbourhood in the tile, as
+	 * meanState() does on the lattice.
+	 */
+	@Override
+	public int apply(final StencilTile tile, final int index) {
+		int size = tile.gatherNeighbours(index, radius);
+		int[] neighbours = tile.getNeighbours();
+		int r = 0, g = 0, b = 0, a = 0;
+		int n = 0;
+		float maxDistance = 0f;
+
+		for (int i = 0; i < size; i++) {
+			if (neighbours[i] != index) {
+				int colour = tile.getRGB(neighbours[i]);
+				r += (colour >> 16) & 0xff;
+				g += (colour >> 8) & 0xff;
+				b += colour & 0xff;
+				a += colour >>> 24;
+				n++;
+				float distance = tile.getSquaredDistance(index, neighbours[i]);
+				if (distance >= exceedingThreshold) {
+					return tile.getRGB(index);
+				} else if (distance > maxDistance) {
+					maxDistance = distance;
+				}
+			}
+		}
+
+		if (maxDistance < reachingThreshold) {
+			return ColourCompare.meanColour(r, g, b, a, n);
 		}
+		return tile.getRGB(index);
 	}
 
 	/**
@@ -91,14 +236,16 @@ public class NoiseRemoverRule extends CellRule<Color> {
 	 * cells.
 	 * 
 	 * @param cell
+	 * @throws CAException
 	 */
-	protected void medianState(final Cell<Color> cell) {
-		List<Cell<Color>> neighbourhood = cell.getNeighbourhood();
+	protected void medianState(final Cell<Color> cell) throws CAException {
+		List<Cell<Color>> neighbourhood = neighbourhoodModel
+				.gatherNeighbours(cell);
 		List<Color> colours = new ArrayList<Color>(neighbourhood.size());
 		Color cellColour = lattice.getState(cell);
 
 		for (Cell<Color> neighbour : neighbourhood) {
-			if (neighbour != cell) {
+			if (!neighbour.equals(cell)) {
 				Color neighbourColour = lattice.getState(neighbour);
 				colours.add(neighbourColour);
 				double difference = ColourCompare.getDifference(cellColour,
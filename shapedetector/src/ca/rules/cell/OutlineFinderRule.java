@@ -5,6 +5,7 @@ import java.util.List;
 import ca.Cell;
 import ca.lattice.Lattice;
 import ca.neighbourhood.Neighbourhood;
+import ca.neighbourhood.StencilCursor;
 import ca.shapedetector.BlobMap;
 import ca.shapedetector.blob.Blob;
 import exceptions.CAException;
@@ -31,12 +32,34 @@ public class OutlineFinderRule<V> extends CellRule<V> {
 	public void update(final Cell<V> cell) throws CAException {
 		Blob<V> blob = blobMap.getBlob(cell);
 
-		List<Cell<V>> neighbourhood = cell.getNeighbourhood();
+		List<Cell<V>> neighbourhood = neighbourhoodModel.gatherNeighbours(cell);
 		for (Cell<V> neighbour : neighbourhood) {
-			if (neighbour != cell && blob != blobMap.getBlob(neighbour)) {
+			if (!neighbour.equals(cell) && blob != blobMap.getBlob(neighbour)) {
 				blob.addOutlineCell(cell);
 				return;
 			}
 		}
 	}
+
+	/**
+	 * Visits the neighbours through the stencil, so that a cell object is only
+	 * created for the outline cells.
+	 */
+	@Override
+	public void update(final int index) throws CAException {
+		if (neighbourhoodModel.getStencil() == null) {
+			super.update(index);
+			return;
+		}
+		Blob<V> blob = blobMap.getBlob(index);
+
+		StencilCursor cursor = getCursor(index);
+		while (cursor.next()) {
+			int neighbour = cursor.getIndex();
+			if (neighbour != index && blob != blobMap.getBlob(neighbour)) {
+				blob.addOutlineCell(lattice.getCell(index));
+				return;
+			}
+		}
+	}
 }
@@ -0,0 +1,220 @@
+package ca.rules.cell;
+
+import exceptions.CAException;
+import graphics.ColourCompare;
+import graphics.WindowExtrema;
+
+import java.awt.Color;
+
+import ca.lattice.Lattice;
+import ca.neighbourhood.Neighbourhood;
+
+/**
+ * Finds the edges in the image the same way as EdgeFinderRule, deciding most
+ * cells from the range of the Y, Cb and Cr components over their
+ * neighbourhood instead of comparing them with each neighbour, so that the
+ * cost per cell does not grow with the radius.
+ * <p>
+ * The minimum and maximum of each component over every cell's square
+ * neighbourhood are found with WindowExtrema, along the rows of a tile and
+ * then along its columns. The furthest any neighbour can be from the cell in
+ * a component is the distance to the further end of that component's range,
+ * which bounds the difference between the cell and its neighbours from both
+ * sides:
+ * <ul>
+ * <li>when the largest of these distances alone exceeds epsilon, some
+ * neighbour differs by more than epsilon, and the cell is an edge;</li>
+ * <li>when all three together are within epsilon, no neighbour differs by
+ * more, and the cell is quiescent.</li>
+ * </ul>
+ * Only the cells in between, where the range cannot tell, compare their
+ * neighbours as EdgeFinderRule does. So the result is the same as
+ * EdgeFinderRule's, in EDGE_COLOUR and QUIESCENT_COLOUR as BlobMergeRule
+ * expects.
+ * <p>
+ * The ranges cost about the same whatever the radius, while EdgeFinderRule
+ * stops at the first neighbour that differs, which is cheap in busy images
+ * and at small radii. So ShapeDetector only switches to this rule from
+ * ShapeDetector.RANGE_EDGE_R.
+ *
+ * @author Sean
+ */
+public class RangeEdgeFinderRule extends EdgeFinderRule {
+	public final static int DEFAULT_TILE_WIDTH = 128;
+	public final static int DEFAULT_TILE_HEIGHT = 64;
+	/**
+	 * Margin, relative to epsilon, that the bounds must clear, so that
+	 * rounding errors never decide a cell differently from EdgeFinderRule.
+	 */
+	protected final static double TOLERANCE = 1e-6;
+
+	/** The distance in YCbCr space below which every cell is quiescent. */
+	protected final double lowerThreshold;
+	/** The distance in YCbCr space above which a cell is an edge. */
+	protected final double upperThreshold;
+	/** Each thread's buffers. */
+	protected final ThreadLocal<Buffers> buffers;
+
+	/**
+	 * Buffers for the ranges of a tile.
+	 */
+	protected static class Buffers {
+		/** Finds the extrema along rows and columns. */
+		protected final WindowExtrema extrema = new WindowExtrema();
+		/** The components of the tile and its border, row by row. */
+		protected float[][] components = new float[3][0];
+		/** Extrema of each component along the rows. */
+		protected float[][] rowMin = new float[3][0];
+		protected float[][] rowMax = new float[3][0];
+		/** Extrema of each component over the squares. */
+		protected float[][] min = new float[3][0];
+		protected float[][] max = new float[3][0];
+
+		/**
+		 * Makes sure the buffers hold a tile of the specified size and its
+		 * border.
+		 *
+		 * @param regionSize
+		 *            Number of cells in the tile and its border.
+		 * @param rowSize
+		 *            Number of cells in the rows of the tile, across the
+		 *            height of the border.
+		 * @param tileSize
+		 *            Number of cells in the tile.
+		 */
+		protected void ensureCapacity(final int regionSize, final int rowSize,
+				final int tileSize) {
+			for (int c = 0; c < 3; c++) {
+				if (components[c].length < regionSize) {
+					components[c] = new float[regionSize];
+				}
+				if (rowMin[c].length < rowSize) {
+					rowMin[c] = new float[rowSize];
+					rowMax[c] = new float[rowSize];
+				}
+				if (min[c].length < tileSize) {
+					min[c] = new float[tileSize];
+					max[c] = new float[tileSize];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lattice
+	 *            Must be an ARGBLattice.
+	 * @param neighbourhoodModel
+	 *            Must be a Moore neighbourhood.
+	 * @param epsilon
+	 * @throws CAException
+	 */
+	public RangeEdgeFinderRule(final Lattice<Color> lattice,
+			final Neighbourhood<Color> neighbourhoodModel, final double epsilon)
+			throws CAException {
+		super(lattice, neighbourhoodModel, epsilon);
+		if (argbLattice == null) {
+			throw new CAException(toString() + " requires an ARGBLattice");
+		} else if (radius < 0) {
+			throw new CAException(toString()
+					+ " requires a Moore neighbourhood");
+		}
+		double distance = epsilon * ColourCompare.MAX_DISTANCE;
+		lowerThreshold = distance * (1d - TOLERANCE);
+		upperThreshold = distance * (1d + TOLERANCE);
+		buffers = new ThreadLocal<Buffers>() {
+			@Override
+			protected Buffers initialValue() {
+				return new Buffers();
+			}
+		};
+		setTileSize(DEFAULT_TILE_WIDTH, DEFAULT_TILE_HEIGHT);
+	}
+
+	/**
+	 * Classifies the cells in the tile from (x0,y0) up to, but not including,
+	 * (x1,y1).
+	 */
+	@Override
+	public void update(final int x0, final int y0, final int x1, final int y1)
+			throws CAException {
+		int w = argbLattice.getWidth();
+		int h = argbLattice.getHeight();
+		/* The tile and the border that its neighbourhoods cover. */
+		int cx0 = Math.max(0, x0 - radius);
+		int cy0 = Math.max(0, y0 - radius);
+		int cx1 = Math.min(w, x1 + radius);
+		int cy1 = Math.min(h, y1 + radius);
+		int columns = cx1 - cx0;
+		int rows = cy1 - cy0;
+		int tileWidth = x1 - x0;
+		int tileHeight = y1 - y0;
+
+		Buffers b = buffers.get();
+		b.ensureCapacity(columns * rows, tileWidth * rows, tileWidth
+				* tileHeight);
+		float[][] planeArrays = { planes.getLuma(), planes.getBlueChroma(),
+				planes.getRedChroma() };
+		for (int y = cy0, i = 0; y < cy1; y++) {
+			for (int x = cx0; x < cx1; x++, i++) {
+				int index = argbLattice.getIndex(x, y);
+				for (int c = 0; c < 3; c++) {
+					b.components[c][i] = planeArrays[c][index];
+				}
+			}
+		}
+
+		for (int c = 0; c < 3; c++) {
+			for (int row = 0; row < rows; row++) {
+				b.extrema.min(b.components[c], row * columns, 1, columns, x0
+						- cx0, x1 - cx0, radius, b.rowMin[c], row * tileWidth,
+						1);
+				b.extrema.max(b.components[c], row * columns, 1, columns, x0
+						- cx0, x1 - cx0, radius, b.rowMax[c], row * tileWidth,
+						1);
+			}
+			for (int column = 0; column < tileWidth; column++) {
+				b.extrema.min(b.rowMin[c], column, tileWidth, rows, y0 - cy0,
+						y1 - cy0, radius, b.min[c], column, tileWidth);
+				b.extrema.max(b.rowMax[c], column, tileWidth, rows, y0 - cy0,
+						y1 - cy0, radius, b.max[c], column, tileWidth);
+			}
+		}
+
+		for (int y = y0, t = 0; y < y1; y++) {
+			int i = (y - cy0) * columns + x0 - cx0;
+			for (int x = x0; x < x1; x++, i++, t++) {
+				double furthest = 0d;
+				double sum = 0d;
+				for (int c = 0; c < 3; c++) {
+					float value = b.components[c][i];
+					double below = value - b.min[c][t];
+					double above = b.max[c][t] - value;
+					double distance = below > above ? below : above;
+					if (distance > furthest) {
+						furthest = distance;
+					}
+					sum += distance * distance;
+				}
+				int index = argbLattice.getIndex(x, y);
+				if (furthest > upperThreshold) {
+					setRGB(index, EDGE_RGB);
+				} else if (Math.sqrt(sum) < lowerThreshold) {
+					setRGB(index, QUIESCENT_RGB);
+				} else {
+					/* The range cannot tell, so the neighbours decide. */
+					super.update(index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The ranges are only found for whole tiles, so this rule is never fused.
+	 */
+	@Override
+	public boolean isFusable() {
+		return false;
+	}
+}
@@ -90,9 +90,10 @@ public class ShapeAssimilatorRule extends CellRule<Color> {
 		 * why neighbouringShapes is a set and not a list.
 		 */
 		for (Cell<Color> cell : cells) {
-			List<Cell<Color>> neighbourhood = cell.getNeighbourhood();
+			List<Cell<Color>> neighbourhood = neighbourhoodModel
+					.gatherNeighbours(cell);
 			for (Cell<Color> neighbour : neighbourhood) {
-				if (neighbour != cell) {
+				if (!neighbour.equals(cell)) {
 					Blob<Color> neighbouringShape = blobMap.getBlob(neighbour);
 					if (neighbouringShape != blob) {
 						shapeRepresentatives.add(neighbour);
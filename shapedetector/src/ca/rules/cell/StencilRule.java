@@ -0,0 +1,144 @@
+package ca.rules.cell;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import ca.lattice.DifferencePlanes;
+import ca.lattice.Lattice;
+import ca.neighbourhood.Moore;
+import ca.neighbourhood.Neighbourhood;
+import ca.neighbourhood.Stencil;
+import exceptions.CAException;
+
+/**
+ * A colour rule that sets the state of each cell from the colours in the
+ * square around it, that is a stencil over its Moore neighbourhood.
+ * <p>
+ * Besides updating the lattice as any other rule does, a stencil rule can
+ * compute a cell's colour from a StencilTile. This lets a FusedStencilRule
+ * run consecutive stencil rules over a tile in one sweep, passing the
+ * intermediate colours through a small buffer instead of the whole lattice.
+ * <p>
+ * When the lattice is an ARGBLattice with at least as much padding as the
+ * stencil's radius, the rule can visit every cell's neighbours by adding
+ * offsets to its index, without bounds checks or special cases for the
+ * edges of the image. Padding pixels are transparent and compare as NaN, so
+ * rules written for this never mistake them for pixels of the image. At
+ * radius 1 such rules can also read the differences between neighbours that
+ * a DifferenceRule computed, if there is one before them.
+ *
+ * @author Sean
+ */
+public abstract class StencilRule extends ColourRule {
+	/** Radius of the stencil, or -1 if the neighbourhood is not Moore. */
+	protected final int radius;
+	/**
+	 * Index offsets of the neighbours, not including the cell itself, when
+	 * the lattice has enough padding to add them to any cell's index without
+	 * checking bounds. Otherwise null.
+	 */
+	protected int[] offsets;
+	/**
+	 * When there are offsets, the radius is 1 and a DifferenceRule has
+	 * computed the differences between adjacent cells, the plane holding the
+	 * squared distance to each neighbour. Otherwise null.
+	 */
+	protected float[][] differencePlanes;
+	/**
+	 * Offsets to add to a cell's index to look up the squared distance to
+	 * each neighbour in differencePlanes: 0 when it is stored at the cell,
+	 * the neighbour's offset when it is stored at the neighbour.
+	 */
+	protected int[] differenceShifts;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lattice
+	 * @param neighbourhoodModel
+	 * @throws CAException
+	 */
+	public StencilRule(final Lattice<Color> lattice,
+			final Neighbourhood<Color> neighbourhoodModel) throws CAException {
+		super(lattice, neighbourhoodModel);
+		if (neighbourhoodModel instanceof Moore) {
+			radius = ((Moore<Color>) neighbourhoodModel).getR();
+		} else {
+			radius = -1;
+		}
+	}
+
+	/**
+	 * Caches the YCbCr planes, and works out the offsets if the lattice has
+	 * enough padding, and where to look up the differences if it keeps them.
+	 */
+	@Override
+	public void prepare() {
+		super.prepare();
+		cacheYCbCr();
+		offsets = null;
+		differencePlanes = null;
+		differenceShifts = null;
+		Stencil stencil = neighbourhoodModel.getStencil();
+		if (planes != null && stencil != null && stencil.isLinear()
+				&& radius >= 0 && argbLattice.getPadding() >= radius) {
+			DifferencePlanes differences = radius == 1 ? argbLattice
+					.getDifferencePlanes() : null;
+			int[] offsets = new int[stencil.size()];
+			float[][] differencePlanes = new float[stencil.size()][];
+			int[] differenceShifts = new int[stencil.size()];
+			int n = 0;
+			for (int k = 0; k < stencil.size(); k++) {
+				if (stencil.getOffset(k) != 0) {
+					offsets[n] = stencil.getOffset(k);
+					if (differences != null) {
+						int dx = stencil.getDx(k);
+						int dy = stencil.getDy(k);
+						differencePlanes[n] = differences.getPlane(dx, dy);
+						differenceShifts[n] = DifferencePlanes
+								.isStored(dx, dy) ? 0 : offsets[n];
+					}
+					n++;
+				}
+			}
+			this.offsets = Arrays.copyOf(offsets, n);
+			if (differences != null) {
+				this.differencePlanes = Arrays.copyOf(differencePlanes, n);
+				this.differenceShifts = Arrays.copyOf(differenceShifts, n);
+			}
+		}
+	}
+
+	/**
+	 * Gets the radius of the stencil.
+	 *
+	 * @return The radius, or -1 if the neighbourhood is not a square.
+	 */
+	public int getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Checks whether the rule can be fused with others. Only rules that make a
+	 * single pass over a packed ARGB lattice, with a square neighbourhood, can
+	 * be.
+	 *
+	 * @return
+	 */
+	public boolean isFusable() {
+		return argbLattice != null && radius >= 0 && maxPasses <= 1;
+	}
+
+	/**
+	 * Computes the new colour of a cell from the colours in a tile. Must give
+	 * the same result as updating the cell on the lattice would.
+	 *
+	 * @param tile
+	 *            Holds the colours that the rule reads.
+	 * @param index
+	 *            Index of the cell in the tile.
+	 * @return The cell's new packed ARGB colour, which is its current colour
+	 *         if the rule leaves it unchanged.
+	 */
+	public abstract int apply(StencilTile tile, int index);
+}
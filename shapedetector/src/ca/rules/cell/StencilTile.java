@@ -0,0 +1,295 @@
+package ca.rules.cell;
+
+import graphics.YCbCrPlanes;
+import ca.lattice.ARGBLattice;
+import ca.lattice.DifferencePlanes;
+
+/**
+ * A small buffer holding the colours of a rectangular area of a lattice,
+ * which a FusedStencilRule passes from one stencil rule to the next.
+ * <p>
+ * The area covers a tile plus a border (halo) wide enough for every rule in
+ * the chain to find its neighbours. Only the cells in the current region
+ * hold valid colours: the area loaded from the lattice at first, and after
+ * that the part of the area that the last rule computed. Each rule computes
+ * a smaller region than it reads, until only the tile is left.
+ * <p>
+ * Cells are stored in row-major order, along with their YCbCr components so
+ * that colours compare the same as they do on the lattice. Indices are local
+ * to the buffer, see getIndex().
+ * <p>
+ * When the lattice's difference planes are loaded along with the colours,
+ * the first rule reads the differences between adjacent cells from them
+ * instead of comparing the colours, see getSquaredDistance(). Once a rule
+ * has computed the region, its colours no longer match the planes.
+ *
+ * @author Sean
+ */
+public class StencilTile {
+	/** The packed ARGB colours. */
+	protected int[] argb;
+	/** The colours in YCbCr format. */
+	protected YCbCrPlanes planes;
+	/** Position of the top left corner of the area in the lattice. */
+	protected int x0, y0;
+	/** Size of the area. */
+	protected int width, height;
+	/** The region holding valid colours, in lattice coordinates. */
+	protected int rx0, ry0, rx1, ry1;
+	/** Indices gathered by gatherNeighbours(). */
+	protected int[] neighbours;
+	/**
+	 * Differences to the right, down, down-right and down-left neighbours,
+	 * copied from the lattice's difference planes.
+	 */
+	protected float[][] differences;
+	/** Whether the differences match the colours in the region. */
+	protected boolean hasDifferences;
+
+	/**
+	 * Constructor. The buffer grows as needed.
+	 */
+	public StencilTile() {
+		argb = new int[0];
+		planes = new YCbCrPlanes(0);
+		neighbours = new int[0];
+		differences = new float[4][0];
+	}
+
+	/**
+	 * Sets the area of the lattice that the buffer covers, from (x0,y0) up to,
+	 * but not including, (x1,y1). The region is left empty.
+	 *
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 */
+	public void reset(final int x0, final int y0, final int x1, final int y1) {
+		this.x0 = x0;
+		this.y0 = y0;
+		width = x1 - x0;
+		height = y1 - y0;
+		if (argb.length < width * height) {
+			argb = new int[width * height];
+			planes = new YCbCrPlanes(width * height);
+			for (int k = 0; k < differences.length; k++) {
+				differences[k] = new float[width * height];
+			}
+		}
+		setRegion(x0, y0, x0, y0);
+	}
+
+	/**
+	 * Copies the whole area from the lattice and makes it the region.
+	 *
+	 * @param lattice
+	 * @param latticePlanes
+	 *            The lattice's YCbCr planes, which are copied instead of
+	 *            converting the colours again.
+	 */
+	public void load(final ARGBLattice lattice, final YCbCrPlanes latticePlanes) {
+		load(lattice, latticePlanes, null);
+	}
+
+	/**
+	 * Copies the whole area from the lattice and makes it the region, along
+	 * with the differences between adjacent cells.
+	 *
+	 * @param lattice
+	 * @param latticePlanes
+	 *            The lattice's YCbCr planes, which are copied instead of
+	 *            converting the colours again.
+	 * @param latticeDifferences
+	 *            The lattice's difference planes, or null to compare the
+	 *            colours instead. They are not copied into areas less than
+	 *            three cells wide, where adjacent cells cannot be told apart by
+	 *            their indices alone.
+	 */
+	public void load(final ARGBLattice lattice,
+			final YCbCrPlanes latticePlanes,
+			final DifferencePlanes latticeDifferences) {
+		lattice.getTile(x0, y0, width, height, argb, 0, width);
+		boolean copyDifferences = latticeDifferences != null && width > 2;
+		for (int y = 0; y < height; y++) {
+			int start = lattice.getIndex(x0, y0 + y);
+			if (lattice.getIndex(x0 + width - 1, y0 + y) - start == width - 1) {
+				latticePlanes.copy(start, planes, y * width, width);
+				if (copyDifferences) {
+					latticeDifferences.copy(start, differences, y * width,
+							width);
+				}
+			} else {
+				/* The layout does not store the row contiguously. */
+				for (int x = 0; x < width; x++) {
+					int index = lattice.getIndex(x0 + x, y0 + y);
+					latticePlanes.copy(index, planes, y * width + x, 1);
+					if (copyDifferences) {
+						latticeDifferences.copy(index, differences, y * width
+								+ x, 1);
+					}
+				}
+			}
+		}
+		setRegion(x0, y0, x0 + width, y0 + height);
+		hasDifferences = copyDifferences;
+	}
+
+	/**
+	 * Sets the region holding valid colours, from (rx0,ry0) up to, but not
+	 * including, (rx1,ry1). The colours are taken to have been computed, so
+	 * the differences loaded with them no longer apply.
+	 *
+	 * @param rx0
+	 * @param ry0
+	 * @param rx1
+	 * @param ry1
+	 */
+	public void setRegion(final int rx0, final int ry0, final int rx1,
+			final int ry1) {
+		this.rx0 = rx0;
+		this.ry0 = ry0;
+		this.rx1 = rx1;
+		this.ry1 = ry1;
+		hasDifferences = false;
+	}
+
+	/**
+	 * Gets the index in the buffer of the cell at (x,y) in the lattice.
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getIndex(final int x, final int y) {
+		return (y - y0) * width + x - x0;
+	}
+
+	/**
+	 * Gets the packed ARGB colour of the cell with the specified index.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getRGB(final int index) {
+		return argb[index];
+	}
+
+	/**
+	 * Sets the packed ARGB colour of the cell with the specified index,
+	 * without converting it to YCbCr. For the last rule in a chain, whose
+	 * colours are not compared again.
+	 *
+	 * @param index
+	 * @param argb
+	 */
+	public void setRGB(final int index, final int argb) {
+		this.argb[index] = argb;
+	}
+
+	/**
+	 * Sets the packed ARGB colour of the cell with the specified index, and
+	 * its YCbCr components. When the colour is the same as in the source
+	 * buffer, the components are copied instead of converted.
+	 *
+	 * @param index
+	 * @param argb
+	 * @param source
+	 *            Buffer that the colour was computed from, which covers the
+	 *            same area.
+	 */
+	public void setRGB(final int index, final int argb, final StencilTile source) {
+		this.argb[index] = argb;
+		if (argb == source.argb[index]) {
+			source.planes.copy(index, planes, index, 1);
+		} else {
+			planes.set(index, argb);
+		}
+	}
+
+	/**
+	 * Gets the difference quotient between the colours of the cells with the
+	 * specified indices.
+	 *
+	 * @see YCbCrPlanes#getDifference(int, int)
+	 * @param index1
+	 * @param index2
+	 * @return
+	 */
+	public double getDifference(final int index1, final int index2) {
+		return planes.getDifference(index1, index2);
+	}
+
+	/**
+	 * Gets the squared distance in YCbCr space between the colours of the
+	 * cells with the specified indices, reading it from the loaded difference
+	 * planes when the cells are adjacent. Compare it with
+	 * DifferencePlanes.getThreshold() rather than taking its square root.
+	 * <p>
+	 * While the differences are loaded, the neighbour is told apart by the
+	 * offset between the indices, so only adjacent cells may be compared, as
+	 * rules of radius 1 do.
+	 *
+	 * @see YCbCrPlanes#getSquaredDistance(int, int)
+	 * @param index1
+	 * @param index2
+	 * @return
+	 */
+	public float getSquaredDistance(final int index1, final int index2) {
+		if (hasDifferences) {
+			/* Each difference is stored at the earlier of the two cells. */
+			int index = Math.min(index1, index2);
+			int offset = Math.abs(index2 - index1);
+			if (offset == 1) {
+				return differences[0][index];
+			} else if (offset == width) {
+				return differences[1][index];
+			} else if (offset == width + 1) {
+				return differences[2][index];
+			} else if (offset == width - 1) {
+				return differences[3][index];
+			}
+		}
+		return planes.getSquaredDistance(index1, index2);
+	}
+
+	/**
+	 * Gathers the indices of the cells in the region within the square of
+	 * radius r centred on the cell with the specified index, including the
+	 * cell itself, in the same order as the Moore neighbourhood. The indices
+	 * are stored in getNeighbours().
+	 *
+	 * @param index
+	 * @param r
+	 * @return The number of indices stored.
+	 */
+	public int gatherNeighbours(final int index, final int r) {
+		int size = (2 * r + 1) * (2 * r + 1);
+		if (neighbours.length < size) {
+			neighbours = new int[size];
+		}
+		int x = index % width;
+		int y = index / width;
+		int left = Math.max(x - r, rx0 - x0);
+		int right = Math.min(x + r, rx1 - 1 - x0);
+		int top = Math.max(y - r, ry0 - y0);
+		int bottom = Math.min(y + r, ry1 - 1 - y0);
+
+		int n = 0;
+		for (int i = left; i <= right; i++) {
+			for (int j = top; j <= bottom; j++) {
+				neighbours[n++] = j * width + i;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the indices stored by the last call to gatherNeighbours().
+	 *
+	 * @return
+	 */
+	public int[] getNeighbours() {
+		return neighbours;
+	}
+}
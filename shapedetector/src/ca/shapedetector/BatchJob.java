@@ -0,0 +1,135 @@
+package ca.shapedetector;
+
+import java.io.File;
+import java.util.List;
+
+import std.Picture;
+import ca.shapedetector.shapes.AbstractShape;
+
+/**
+ * An image passing through a BatchProcessor, along with what each stage
+ * produced and how long it took.
+ *
+ * @author Sean
+ */
+public class BatchJob {
+	/** The image file. */
+	protected final File file;
+	/** The decoded image, until it has been processed. */
+	protected Picture picture;
+	/** The output image, until it has been written. */
+	protected Picture result;
+	/** The shapes found. */
+	protected List<AbstractShape> shapes;
+	/** Width of the image in pixels. */
+	protected int width;
+	/** Height of the image in pixels. */
+	protected int height;
+	/** States whether the image was processed whole on a single thread. */
+	protected boolean whole;
+	/** Time spent decoding, in nanoseconds. */
+	protected long decodeTime;
+	/** Time spent detecting shapes, in nanoseconds. */
+	protected long detectTime;
+	/** Time spent writing the output, in nanoseconds. */
+	protected long encodeTime;
+	/** The reason the job failed, or null if it did not. */
+	protected Exception error;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            The image file to process.
+	 */
+	public BatchJob(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Gets the image file.
+	 *
+	 * @return
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the shapes found, or null if the job failed.
+	 *
+	 * @return
+	 */
+	public List<AbstractShape> getShapes() {
+		return shapes;
+	}
+
+	/**
+	 * Gets the width of the image.
+	 *
+	 * @return
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the height of the image.
+	 *
+	 * @return
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Checks whether the image was processed whole on a single thread, rather
+	 * than split into tiles over many.
+	 *
+	 * @return
+	 */
+	public boolean isWhole() {
+		return whole;
+	}
+
+	/**
+	 * Gets the time spent decoding the image, in nanoseconds.
+	 *
+	 * @return
+	 */
+	public long getDecodeTime() {
+		return decodeTime;
+	}
+
+	/**
+	 * Gets the time spent detecting shapes, in nanoseconds.
+	 *
+	 * @return
+	 */
+	public long getDetectTime() {
+		return detectTime;
+	}
+
+	/**
+	 * Gets the time spent writing the output, in nanoseconds.
+	 *
+	 * @return
+	 */
+	public long getEncodeTime() {
+		return encodeTime;
+	}
+
+	/**
+	 * Gets the reason the job failed.
+	 *
+	 * @return The exception thrown by the failing stage, or null.
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return "(BatchJob) [" + file + "]";
+	}
+}
@@ -0,0 +1,434 @@
+package ca.shapedetector;
+
+import exceptions.CAException;
+import graphics.SDPanel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.imageio.ImageIO;
+
+import std.Picture;
+import ca.CA;
+import ca.concurrency.Granularity;
+import ca.rules.shape.ShapeDrawRule;
+import ca.shapedetector.shapes.AbstractShape;
+
+/**
+ * Finds shapes in many images, overlapping file I/O with detection.
+ * <p>
+ * Images pass through three stages, each running on its own thread: decoding,
+ * detection and encoding. The stages are joined by bounded queues, so the
+ * next image is decoded and the previous one's output written while shapes
+ * are being detected, and memory stays bounded however many images there
+ * are.
+ * <p>
+ * Images are processed at the granularity that suits them. Small images are
+ * processed whole, each on a single thread, with as many in flight at once as
+ * there are threads. Large images are split into tiles over all the threads,
+ * one image at a time. The Granularity decides which is which, from the
+ * number of pixels and the measured cost per pixel of the images processed
+ * so far.
+ * <p>
+ * For each image, the encoder writes the output image with the found shapes
+ * drawn over it and a text file listing the shapes. A report of the time each
+ * stage took is printed at the end.
+ * <p>
+ * Usage: BatchProcessor [-out dir] [-queue n] [-threads n] [-small pixels]
+ * [-median] <image or directory>...
+ * <p>
+ * With -median, noise is removed with the median instead of the mean, see
+ * ShapeDetector.setMedianFilter().
+ *
+ * @author Sean
+ */
+public class BatchProcessor {
+	/** Default number of images that may wait between two stages. */
+	public final static int DEFAULT_QUEUE_SIZE = 4;
+	/** Default directory to write output to. */
+	public final static String DEFAULT_OUTPUT_DIRECTORY = "output";
+	/** File extensions of the images to pick from directories. */
+	protected final static List<String> IMAGE_EXTENSIONS = Arrays.asList(
+			"png", "jpg", "jpeg", "gif", "bmp");
+	/** Marks the end of a queue. */
+	protected final static BatchJob END = new BatchJob(null);
+
+	/** Finds the shapes. */
+	protected final ShapeDetector sd;
+	/** Directory to write output to, or null to skip writing output. */
+	protected final File outputDirectory;
+	/** Number of images that may wait between two stages. */
+	protected final int queueSize;
+
+	/**
+	 * Processes the images and directories given on the command line.
+	 *
+	 * @param args
+	 * @throws InterruptedException
+	 */
+	public static void main(final String[] args) throws InterruptedException {
+		File outputDirectory = new File(DEFAULT_OUTPUT_DIRECTORY);
+		int queueSize = DEFAULT_QUEUE_SIZE;
+		int numThreads = CA.DEFAULT_NUMTHREADS;
+		int smallImageSize = Granularity.DEFAULT_SMALL_IMAGE_SIZE;
+		boolean median = false;
+		List<File> files = new ArrayList<File>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-out")) {
+				outputDirectory = new File(args[++i]);
+			} else if (args[i].equals("-queue")) {
+				queueSize = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads")) {
+				numThreads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-small")) {
+				smallImageSize = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-median")) {
+				median = true;
+			} else {
+				addImages(new File(args[i]), files);
+			}
+		}
+		if (files.isEmpty()) {
+			System.out
+					.println("Please specify the images or directories to process.");
+			return;
+		}
+
+		ShapeDetector sd = new ShapeDetector(ShapeDetector.DEFAULT_EPSILON,
+				ShapeDetector.DEFAULT_R, numThreads, false);
+		sd.setGranularity(new Granularity(Granularity.DEFAULT_MIN_TASK_TIME,
+				smallImageSize, Granularity.DEFAULT_MIN_TILED_TIME));
+		sd.setMedianFilter(median);
+		BatchProcessor processor = new BatchProcessor(sd, outputDirectory,
+				queueSize);
+		long start = System.nanoTime();
+		List<BatchJob> jobs = processor.process(files);
+		printReport(jobs, System.nanoTime() - start);
+		sd.shutdown();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sd
+	 *            The detector to use for large images. Must not be used by
+	 *            anything else while the batch is processed. Small images are
+	 *            processed by single threaded detectors with the same
+	 *            settings, pool and granularity.
+	 * @param outputDirectory
+	 *            Directory to write output to, or null to skip writing output.
+	 * @param queueSize
+	 *            Number of images that may wait between two stages.
+	 */
+	public BatchProcessor(final ShapeDetector sd, final File outputDirectory,
+			final int queueSize) {
+		this.sd = sd;
+		this.outputDirectory = outputDirectory;
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Adds the file to the list if it is an image, or the images in it if it
+	 * is a directory.
+	 *
+	 * @param file
+	 * @param files
+	 */
+	protected static void addImages(final File file, final List<File> files) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children == null) {
+				return;
+			}
+			Arrays.sort(children);
+			for (File child : children) {
+				if (child.isFile() && isImage(child)) {
+					files.add(child);
+				}
+			}
+		} else {
+			files.add(file);
+		}
+	}
+
+	/**
+	 * Checks whether the file has an image extension.
+	 *
+	 * @param file
+	 * @return
+	 */
+	protected static boolean isImage(final File file) {
+		String name = file.getName();
+		String suffix = name.substring(name.lastIndexOf('.') + 1);
+		return IMAGE_EXTENSIONS.contains(suffix.toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Processes the images. Large images are detected on the calling thread,
+	 * small ones on a thread per worker. Decoding and encoding run on threads
+	 * of their own.
+	 *
+	 * @param files
+	 *            The image files to process.
+	 * @return The jobs, in the order given. A job that failed holds the
+	 *         exception that stopped it.
+	 * @throws InterruptedException
+	 */
+	public List<BatchJob> process(final List<File> files)
+			throws InterruptedException {
+		final List<BatchJob> jobs = new ArrayList<BatchJob>(files.size());
+		for (File file : files) {
+			jobs.add(new BatchJob(file));
+		}
+		final BlockingQueue<BatchJob> decoded = new ArrayBlockingQueue<BatchJob>(
+				queueSize);
+		final BlockingQueue<BatchJob> small = new ArrayBlockingQueue<BatchJob>(
+				queueSize);
+		final BlockingQueue<BatchJob> detected = new ArrayBlockingQueue<BatchJob>(
+				queueSize);
+
+		Thread decoder = new Thread("BatchProcessor-decoder") {
+			@Override
+			public void run() {
+				try {
+					for (BatchJob job : jobs) {
+						decode(job);
+						decoded.put(job);
+					}
+					decoded.put(END);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		Thread encoder = new Thread("BatchProcessor-encoder") {
+			@Override
+			public void run() {
+				try {
+					BatchJob job;
+					while ((job = detected.take()) != END) {
+						encode(job);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		Thread[] workers = new Thread[Math.max(1, sd.getNumThreads())];
+		for (int i = 0; i < workers.length; i++) {
+			final ShapeDetector worker = new ShapeDetector(sd.getEpsilon(),
+					sd.getR(), 1, ShapeDetector.debug, sd.getPool());
+			worker.setGranularity(sd.getGranularity());
+			worker.setMedianFilter(sd.isMedianFilter());
+			workers[i] = new Thread("BatchProcessor-worker-" + (i + 1)) {
+				@Override
+				public void run() {
+					try {
+						BatchJob job;
+						while ((job = small.take()) != END) {
+							detect(worker, job);
+							detected.put(job);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+		}
+		decoder.setDaemon(true);
+		encoder.setDaemon(true);
+		decoder.start();
+		encoder.start();
+		for (Thread worker : workers) {
+			worker.setDaemon(true);
+			worker.start();
+		}
+
+		try {
+			BatchJob job;
+			while ((job = decoded.take()) != END) {
+				if (job.error == null
+						&& sd.getGranularity().isSmall(
+								job.width * job.height)) {
+					small.put(job);
+				} else {
+					detect(sd, job);
+					detected.put(job);
+				}
+			}
+			for (int i = 0; i < workers.length; i++) {
+				small.put(END);
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			detected.put(END);
+			encoder.join();
+		} finally {
+			decoder.interrupt();
+			encoder.interrupt();
+			for (Thread worker : workers) {
+				worker.interrupt();
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Reads the job's image.
+	 *
+	 * @param job
+	 */
+	protected void decode(final BatchJob job) {
+		long start = System.nanoTime();
+		try {
+			job.picture = new Picture(job.file);
+			job.width = job.picture.width();
+			job.height = job.picture.height();
+		} catch (RuntimeException e) {
+			job.error = e;
+		}
+		job.decodeTime = System.nanoTime() - start;
+	}
+
+	/**
+	 * Finds the shapes in the job's image. Skips jobs that have failed.
+	 *
+	 * @param detector
+	 *            The detector to use.
+	 * @param job
+	 */
+	protected void detect(final ShapeDetector detector, final BatchJob job) {
+		if (job.error != null) {
+			return;
+		}
+		long start = System.nanoTime();
+		job.whole = detector.getNumThreads() <= 1;
+		try {
+			job.shapes = new ArrayList<AbstractShape>(
+					detector.detect(job.picture));
+			job.result = detector.getResult();
+		} catch (CAException e) {
+			job.error = e;
+		} catch (RuntimeException e) {
+			job.error = e;
+		}
+		job.picture = null;
+		job.detectTime = System.nanoTime() - start;
+		if (job.whole && job.error == null) {
+			/* Only single threaded times give the cost per pixel. */
+			detector.getGranularity().record(Granularity.IMAGE_STAGE,
+					job.width * job.height, job.detectTime, 1);
+		}
+	}
+
+	/**
+	 * Writes the output image, with the shapes drawn over it, and the list of
+	 * shapes. Skips jobs that have failed.
+	 *
+	 * @param job
+	 */
+	protected void encode(final BatchJob job) {
+		if (job.error != null || outputDirectory == null) {
+			job.result = null;
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			outputDirectory.mkdirs();
+			String name = job.file.getName();
+			int dot = name.lastIndexOf('.');
+			if (dot > 0) {
+				name = name.substring(0, dot);
+			}
+
+			SDPanel panel = new SDPanel();
+			panel.setImage(job.result.getImage());
+			ShapeDrawRule rule = new ShapeDrawRule(null, panel);
+			for (AbstractShape shape : job.shapes) {
+				rule.update(shape);
+			}
+			ImageIO.write(job.result.getImage(), "png", new File(
+					outputDirectory, name + ".png"));
+
+			PrintWriter writer = new PrintWriter(new File(outputDirectory,
+					name + ".txt"), "UTF-8");
+			try {
+				for (AbstractShape shape : job.shapes) {
+					writer.println(shape);
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			job.error = e;
+		} catch (RuntimeException e) {
+			job.error = e;
+		}
+		job.result = null;
+		job.encodeTime = System.nanoTime() - start;
+	}
+
+	/**
+	 * Prints the time each stage took for each image, and the totals.
+	 *
+	 * @param jobs
+	 * @param elapsedTime
+	 *            Wall clock time taken by the whole batch, in nanoseconds.
+	 */
+	public static void printReport(final List<BatchJob> jobs,
+			final long elapsedTime) {
+		long decodeTime = 0;
+		long detectTime = 0;
+		long encodeTime = 0;
+		int shapes = 0;
+		int failed = 0;
+
+		System.out.println("image,width,height,mode,shapes,decode_ms,"
+				+ "detect_ms,encode_ms,error");
+		for (BatchJob job : jobs) {
+			int numShapes = job.shapes == null ? 0 : job.shapes.size();
+			System.out.println(job.file + "," + job.width + "," + job.height
+					+ "," + (job.whole ? "whole" : "tiled") + ","
+					+ numShapes + ","
+					+ toMillis(job.decodeTime) + ","
+					+ toMillis(job.detectTime) + ","
+					+ toMillis(job.encodeTime) + ","
+					+ (job.error == null ? "" : job.error));
+			decodeTime += job.decodeTime;
+			detectTime += job.detectTime;
+			encodeTime += job.encodeTime;
+			shapes += numShapes;
+			if (job.error != null) {
+				failed++;
+			}
+		}
+
+		System.out.println("Images: " + jobs.size() + " (" + failed
+				+ " failed), shapes: " + shapes);
+		System.out.println("Decode: " + toMillis(decodeTime)
+				+ " ms, detect: " + toMillis(detectTime) + " ms, encode: "
+				+ toMillis(encodeTime) + " ms");
+		System.out.println("Finished in " + toMillis(elapsedTime) + " ms, "
+				+ String.format(Locale.ENGLISH, "%.2f", jobs.size() * 1e9
+						/ Math.max(1, elapsedTime)) + " images/s");
+	}
+
+	/**
+	 * Converts nanoseconds to milliseconds, to one decimal place.
+	 *
+	 * @param nanos
+	 * @return
+	 */
+	protected static String toMillis(final long nanos) {
+		return String.format(Locale.ENGLISH, "%.1f", nanos / 1e6);
+	}
+}
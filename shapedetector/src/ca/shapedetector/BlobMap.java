@@ -1,16 +1,18 @@
 package ca.shapedetector;
 
-import helpers.NDArrayList;
 import helpers.Stopwatch;
 
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import ca.Cell;
+import ca.concurrency.Granularity;
 import ca.concurrency.ThreadServer;
 import ca.lattice.Lattice;
+import ca.lattice.Lattice2D;
 import ca.rules.Rule;
 import ca.rules.blob.*;
 import ca.shapedetector.blob.*;
@@ -19,14 +21,28 @@ import exceptions.CAException;
 /**
  * Maps cells to blobs and performs operations on the relationships between
  * them.
+ * <p>
+ * While cells are being merged, blobs are kept in a concurrent union-find
+ * structure: an array holding each cell's parent, indexed like the lattice.
+ * Roots hold their blob's size as a negative number instead. Unions are made
+ * by compare-and-set without locking, the smaller blob being linked under the
+ * larger one, and paths are compressed as they are followed. Blob objects are
+ * only created for the roots once merging is done (see createBlobs).
  * 
  * @author Sean
  */
 public class BlobMap<V> {
 	/** The ShapeDetector instance. */
 	protected final ShapeDetector sd;
-	/** Table mapping cells to blobs. */
-	protected NDArrayList<Blob<V>> cellBlobAssociations;
+	/** The lattice of the cells that make up the blobs. */
+	protected final Lattice<V> lattice;
+	/**
+	 * The parent of each cell, or the negated size of its blob if the cell is
+	 * a root.
+	 */
+	protected AtomicIntegerArray parents;
+	/** The blob of each root cell, or null until the blobs are created. */
+	protected Blob<V>[] rootBlobs;
 	/** Set of unique blobs. */
 	protected Set<Blob<V>> blobs;
 	/** Processes to apply to each blob in sequence. */
@@ -41,16 +57,28 @@ public class BlobMap<V> {
 	@SuppressWarnings("unchecked")
 	public BlobMap(ShapeDetector sd, ShapeList shapeList) {
 		this.sd = sd;
+		lattice = (Lattice<V>) sd.getLattice();
 
 		blobRules = new LinkedList<Rule<Blob<V>>>();
-		blobRules.add(new ArrangeOutlineRule<V>(this, shapeList,
-				(Lattice<V>) sd.getLattice()));
+		blobRules.add(new ArrangeOutlineRule<V>(this, shapeList, lattice));
 		blobRules.add(new BlobIdentifierRule<V>(this, shapeList));
 		// blobRules.add(new BlobDisplayRule(this, graphics.ShapeFrame.panel));
 		// blobRules.add(new BlobDrawRule((SDPictureFrame) sd.getPictureFrame(),
 		// this));
 	}
 
+	/**
+	 * Creates a map without any blob rules, for running the cell rules that
+	 * build blobs on their own. apply() cannot be used.
+	 * 
+	 * @param lattice
+	 */
+	public BlobMap(final Lattice<V> lattice) {
+		sd = null;
+		this.lattice = lattice;
+		blobRules = new LinkedList<Rule<Blob<V>>>();
+	}
+
 	/**
 	 * Clears all blob associations and the list of blobs.
 	 * 
@@ -58,8 +86,10 @@ public class BlobMap<V> {
 	 * @param h
 	 */
 	public void clear(final int w, final int h) {
-		cellBlobAssociations = new NDArrayList<Blob<V>>(w, h);
-		blobs = new HashSet<Blob<V>>(w * h);
+		/* The lattice may reserve indices for padding as well as cells. */
+		parents = new AtomicIntegerArray(Math.max(w * h, lattice.size()));
+		rootBlobs = null;
+		blobs = new HashSet<Blob<V>>();
 	}
 
 	/**
@@ -73,7 +103,7 @@ public class BlobMap<V> {
 		 * Attempt to eliminate the blob generated by the background. (Assumes
 		 * the top-left corner is part of the background.)
 		 */
-		blobs.remove(cellBlobAssociations.get(0, 0));
+		blobs.remove(getBlob(((Lattice2D<?>) lattice).getIndex(0, 0)));
 
 		/*
 		 * To ease debugging, sorts the shapes in some kind of order instead of
@@ -90,9 +120,16 @@ public class BlobMap<V> {
 				}
 			} else {
 				/* Multithreaded method. For improved performance. */
+				Granularity granularity = sd.getCA().getGranularity();
+				String stage = rule.getClass().getName();
+				int threads = granularity.getNumThreads(stage, blobs.size(), sd
+						.getCA().getNumThreads());
 				ThreadServer<Blob<V>> threadServer = new ThreadServer<Blob<V>>(
-						rule, blobs.iterator(), sd.getCA().getNumThreads());
+						rule, blobs.iterator(), threads, sd.getCA().getPool());
+				long start = System.nanoTime();
 				threadServer.run();
+				granularity.record(stage, blobs.size(), System.nanoTime()
+						- start, threads);
 			}
 			rule.complete();
 			System.out.println(rule + ", elapsed time: " + ruleStopwatch.time()
@@ -101,65 +138,197 @@ public class BlobMap<V> {
 	}
 
 	/**
-	 * Merges two cells' blobs together.
+	 * Makes the cell with the specified index a blob of its own.
+	 * 
+	 * @param index
+	 */
+	public void makeBlob(final int index) {
+		parents.set(index, -1);
+	}
+
+	/**
+	 * Makes the cell with the specified index the root of a blob of the
+	 * specified size. For labelling stages that build blobs themselves and
+	 * own the cells involved.
+	 * 
+	 * @param index
+	 * @param size
+	 */
+	public void makeBlob(final int index, final int size) {
+		parents.lazySet(index, -size);
+	}
+
+	/**
+	 * Links the cell with the specified index directly to a root, without any
+	 * checks. For labelling stages that build blobs themselves and own the
+	 * cells involved.
+	 * 
+	 * @param index
+	 * @param root
+	 */
+	public void setRoot(final int index, final int root) {
+		parents.lazySet(index, root);
+	}
+
+	/**
+	 * Finds the root of the blob that the cell with the specified index
+	 * belongs to. Halves the path to the root along the way.
+	 * 
+	 * @param index
+	 * @return Index of the root cell.
+	 */
+	public int findRoot(int index) {
+		int parent;
+		while ((parent = parents.get(index)) >= 0) {
+			int grandparent = parents.get(parent);
+			if (grandparent < 0) {
+				return parent;
+			}
+			parents.compareAndSet(index, parent, grandparent);
+			index = grandparent;
+		}
+		return index;
+	}
+
+	/**
+	 * Merges the blobs of the cells with the specified indices. Safe to call
+	 * from many threads at once.
+	 * <p>
+	 * The root of the smaller blob is linked under the root of the larger one,
+	 * ties going to the lower index. Since blobs only grow while they are
+	 * roots, threads can never link two roots under each other.
+	 * 
+	 * @param index1
+	 * @param index2
+	 * @return Index of the merged blob's root.
+	 */
+	public int union(final int index1, final int index2) {
+		while (true) {
+			int root1 = findRoot(index1);
+			int root2 = findRoot(index2);
+			if (root1 == root2) {
+				return root1;
+			}
+			int size1 = -parents.get(root1);
+			int size2 = -parents.get(root2);
+			if (size1 <= 0 || size2 <= 0) {
+				/* Another thread linked one of the roots. */
+				continue;
+			}
+			if (size1 > size2 || (size1 == size2 && root1 < root2)) {
+				int root = root1;
+				root1 = root2;
+				root2 = root;
+				int size = size1;
+				size1 = size2;
+				size2 = size;
+			}
+			if (parents.compareAndSet(root1, -size1, root2)) {
+				addSize(root2, size1);
+				return root2;
+			}
+		}
+	}
+
+	/**
+	 * Adds to the size of the blob that the specified cell belongs to.
+	 * 
+	 * @param index
+	 * @param size
+	 */
+	protected void addSize(int index, final int size) {
+		while (true) {
+			int value = parents.get(index);
+			if (value >= 0) {
+				index = value;
+			} else if (parents.compareAndSet(index, value, value - size)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Creates a Blob object for each root, and adds every cell to its blob.
+	 * Called once merging is done; blobs can still be merged afterwards with
+	 * mergeCells().
 	 * 
-	 * @param cell1
-	 *            1st cell to merge with.
-	 * @param cell2
-	 *            2nd cell to merge with.
-	 * @return The resulting blob.
 	 * @throws CAException
 	 */
-	public synchronized Blob<V> mergeCells(final Cell<V> cell1,
-			final Cell<V> cell2) throws CAException {
-		return mergeBlobs(getBlob(cell1), getBlob(cell2));
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void createBlobs() throws CAException {
+		int size = parents.length();
+		rootBlobs = new Blob[size];
+		blobs = new HashSet<Blob<V>>();
+
+		if (lattice instanceof Lattice2D) {
+			/* Skips any indices that do not belong to a cell. */
+			Lattice2D<V> lattice2D = (Lattice2D<V>) lattice;
+			for (int y = 0; y < lattice2D.getHeight(); y++) {
+				for (int x = 0; x < lattice2D.getWidth(); x++) {
+					addAreaCell(lattice2D.getIndex(x, y));
+				}
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				addAreaCell(i);
+			}
+		}
+	}
+
+	/**
+	 * Adds the cell with the specified index to its blob, creating the blob
+	 * if the cell's root has none yet.
+	 * 
+	 * @param index
+	 */
+	protected void addAreaCell(final int index) {
+		int root = findRoot(index);
+		Blob<V> blob = rootBlobs[root];
+		if (blob == null) {
+			blob = new Blob<V>(-parents.get(root));
+			rootBlobs[root] = blob;
+			blobs.add(blob);
+		}
+		if (root != index) {
+			/* Points straight at the root from now on. */
+			parents.set(index, root);
+		}
+		blob.addAreaCell(lattice.getCell(index));
 	}
 
 	/**
-	 * Merges 2 blobs together.
+	 * Merges two cells' blobs together. Only used after the blobs have been
+	 * created.
 	 * 
-	 * @see CAblobMergerThread
-	 * @param blob1
-	 *            1st blob to merge with.
-	 * @param blob2
-	 *            2st blob to merge with.
-	 * @return The resulting blob.
+	 * @param cell1
+	 *            1st cell to merge with.
+	 * @param cell2
+	 *            2nd cell to merge with.
+	 * @return The resulting blob, or null if the cells were in the same blob
+	 *         already.
 	 * @throws CAException
 	 */
-	protected Blob<V> mergeBlobs(final Blob<V> blob1, final Blob<V> blob2)
-			throws CAException {
-		/* NB */
+	public synchronized Blob<V> mergeCells(final Cell<V> cell1,
+			final Cell<V> cell2) throws CAException {
+		Blob<V> blob1 = getBlob(cell1);
+		Blob<V> blob2 = getBlob(cell2);
 		if (blob1 == blob2) {
 			return null;
 		}
+
+		Blob<V> newBlob = rootBlobs[union(cell1.getIndex(), cell2.getIndex())];
+		Blob<V> oldBlob = (newBlob == blob1) ? blob2 : blob1;
 		synchronized (blob1) {
 			synchronized (blob2) {
-				/*
-				 * Improves efficiency by merging the smaller blob into the
-				 * larger blob.
-				 */
-				Blob<V> newBlob;
-				Blob<V> oldBlob;
-				if (blob1.getArea() > blob2.getArea()) {
-					newBlob = blob1;
-					oldBlob = blob2;
-				} else {
-					newBlob = blob2;
-					oldBlob = blob1;
-				}
-
-				for (Cell<V> cell : oldBlob.getAreaCells()) {
-					setBlob(cell, newBlob);
-				}
 				/*
 				 * oldBlob must be removed *before* merging. (No need for
 				 * synchronizing on blobs.)
 				 */
 				blobs.remove(oldBlob);
 				newBlob.merge(oldBlob);
-				return newBlob;
 			}
 		}
+		return newBlob;
 	}
 
 	/**
@@ -171,23 +340,29 @@ public class BlobMap<V> {
 	 * @throws CAException
 	 */
 	public Blob<V> getBlob(final Cell<V> cell) throws CAException {
-		int[] coordinates = cell.getCoordinates();
-		return cellBlobAssociations.get(coordinates);
+		return getBlob(cell.getIndex());
 	}
 
 	/**
-	 * Sets the blob associated with the specified cell.
+	 * Gets the blob associated with the cell with the specified index.
 	 * 
-	 * @param cell
-	 *            A cell that is to belong to the blob.
-	 * @param shape
-	 *            The blob to be associated with the specified cell.
-	 * @throws CAException
+	 * @param index
+	 * @return The blob, or null if the blobs have not been created yet.
+	 */
+	public Blob<V> getBlob(final int index) {
+		if (rootBlobs == null) {
+			return null;
+		}
+		return rootBlobs[findRoot(index)];
+	}
+
+	/**
+	 * Gets the set of unique blobs.
+	 * 
+	 * @return
 	 */
-	public void setBlob(final Cell<V> cell, final Blob<V> blob)
-			throws CAException {
-		int[] coordinates = cell.getCoordinates();
-		cellBlobAssociations.set(blob, coordinates);
+	public Set<Blob<V>> getBlobs() {
+		return blobs;
 	}
 
 	/**
@@ -1,28 +1,32 @@
 package ca.shapedetector;
 
 import exceptions.CAException;
-import graphics.PictureFrame;
-import graphics.SDPanel;
+import graphics.ShapeDetectorFrame;
 import helpers.Stopwatch;
 
 import java.awt.Color;
+import java.awt.image.BufferedImage;
 import java.util.LinkedList;
 import java.util.List;
 
 import std.Picture;
 import ca.CA;
 import ca.Cell;
+import ca.concurrency.Granularity;
+import ca.concurrency.WorkerPool;
+import ca.lattice.ARGBLattice;
 import ca.lattice.Lattice;
-import ca.lattice.PictureLattice;
 import ca.neighbourhood.Moore;
 import ca.neighbourhood.Neighbourhood;
+import ca.neighbourhood.VanNeumannCardinal;
 import ca.rules.Rule;
 import ca.rules.cell.*;
+import ca.shapedetector.shapes.AbstractShape;
 
 /**
  * Finds shapes in an image. Accepts bmp, png and jpg images.
  * <p>
- * Usage: CAShapeDetector <image_path>
+ * Usage: CAShapeDetector <image_path> [epsilon] [r] [debug] [median]
  * <p>
  * Some images to test with are:
  * <p>
@@ -35,30 +39,50 @@ import ca.rules.cell.*;
  * batman.jpg: Low monochrome contrast image.
  * <p>
  * shapes.png: Low monochrome contrast image.
+ * <p>
+ * The detector itself does not open any windows, so it can run on a headless
+ * server. Results can be displayed by adding a ShapeDetectorFrame as a
+ * listener, as main() does.
+ * <p>
+ * To process many images at once, see BatchProcessor.
  * 
  * @author Sean
  */
 public class ShapeDetector {
-	protected final static double DEFAULT_EPSILON = 0.05d;
-	protected final static int DEFAULT_R = 1;
+	public final static double DEFAULT_EPSILON = 0.05d;
+	public final static int DEFAULT_R = 1;
+	/**
+	 * Radius from which noise is removed with a summed-area table (see
+	 * BoxMeanRule) instead of visiting each cell's neighbours.
+	 */
+	public final static int BOX_MEAN_R = 3;
+	/**
+	 * Radius from which edges are found from the range of each cell's
+	 * neighbourhood (see RangeEdgeFinderRule) instead of comparing it with
+	 * each neighbour.
+	 */
+	public final static int RANGE_EDGE_R = 5;
 
 	protected ShapeList shapeList;
 	protected final double epsilon;
 	protected final int r;
 	protected final int numThreads;
+	/** The threads that the rules run on, kept for as long as the detector. */
+	protected final WorkerPool pool;
+	/** Decides how many threads each stage is worth splitting between. */
+	protected Granularity granularity;
+	/**
+	 * When true, noise is removed by taking the median of each cell's
+	 * neighbourhood (see MedianFilterRule) instead of the mean.
+	 */
+	protected boolean medianFilter;
 
 	protected CA<Color> ca;
-	protected PictureLattice lattice;
+	protected ARGBLattice lattice;
 	/** Maps cells to blobs. */
 	protected BlobMap<Color> blobMap;
-	/** A list of shapes found. */
-
-	/** A frame for displaying the output image. */
-	protected final PictureFrame pictureFrame;
-	/** A frame for displaying the output image. */
-	protected final SDPanel picturePanel;
-	/** Signals that the CA should display its results in a window. */
-	protected final boolean visible;
+	/** Notified when detection starts and finishes. */
+	protected final List<ShapeDetectorListener> listeners;
 
 	/**
 	 * When true, displays the shape being processed, distribution graphs and
@@ -76,12 +100,15 @@ public class ShapeDetector {
 	 *            The difference threshold expressed as a fraction.
 	 * @param r
 	 *            Search radius. Determines the size of the neighbourhood.
+	 * @param median
+	 *            Removes noise with the median instead of the mean.
 	 */
 	public static void main(final String[] args) {
 		String path;
 		double epsilon = 0.05d;
 		int r = 1;
 		boolean debug = false;
+		boolean median = false;
 
 		if (args.length == 0) {
 			System.out
@@ -99,6 +126,9 @@ public class ShapeDetector {
 		if (args.length > 3) {
 			debug = Boolean.parseBoolean(args[3]);
 		}
+		if (args.length > 4) {
+			median = Boolean.parseBoolean(args[4]);
+		}
 
 		Picture picture = new Picture(path);
 
@@ -109,7 +139,10 @@ public class ShapeDetector {
 		Stopwatch stopwatch = new Stopwatch();
 		ShapeDetector shapeDetector = new ShapeDetector(epsilon, r,
 				CA.DEFAULT_NUMTHREADS, debug);
+		shapeDetector.setMedianFilter(median);
+		shapeDetector.addListener(new ShapeDetectorFrame());
 		shapeDetector.apply(picture);
+		shapeDetector.shutdown();
 
 		System.out.println("Finished in " + stopwatch.time() + " ms");
 	}
@@ -141,15 +174,47 @@ public class ShapeDetector {
 	 */
 	public ShapeDetector(final double epsilon, final int r,
 			final int numThreads, final boolean debug) {
+		this(epsilon, r, numThreads, debug, new WorkerPool());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param epsilon
+	 * @param r
+	 * @param numThreads
+	 * @param debug
+	 * @param pool
+	 *            The threads to run the rules on. The detector shuts the pool
+	 *            down in shutdown().
+	 */
+	public ShapeDetector(final double epsilon, final int r,
+			final int numThreads, final boolean debug, final WorkerPool pool) {
 		this.epsilon = epsilon;
 		this.r = r;
 		this.numThreads = numThreads;
+		this.pool = pool;
 		ShapeDetector.debug = debug;
+		granularity = new Granularity();
+		listeners = new LinkedList<ShapeDetectorListener>();
+	}
 
-		picturePanel = new SDPanel();
-		pictureFrame = new PictureFrame(picturePanel);
-		pictureFrame.setTitle("CA Shape Detector");
-		visible = true;
+	/**
+	 * Adds a listener to notify when detection starts and finishes.
+	 * 
+	 * @param listener
+	 */
+	public void addListener(final ShapeDetectorListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 * 
+	 * @param listener
+	 */
+	public void removeListener(final ShapeDetectorListener listener) {
+		listeners.remove(listener);
 	}
 
 	/**
@@ -163,7 +228,8 @@ public class ShapeDetector {
 		int w = picture.width();
 		int h = picture.height();
 
-		lattice = new PictureLattice(picture);
+		/* Lets the stencil rules skip bounds checks, see StencilRule. */
+		lattice = new ARGBLattice(picture, r);
 		List<Rule<Cell<Color>>> rules = new LinkedList<Rule<Cell<Color>>>();
 		try {
 			shapeList = new ShapeList(this);
@@ -173,29 +239,96 @@ public class ShapeDetector {
 					r);
 //			 rules.add(new DummyRule(lattice, neighbourhoodModel));
 			// rules.add(new GatherNeighboursRule(lattice, neighbourhoodModel));
-			rules.add(new NoiseRemoverRule(lattice, neighbourhoodModel, epsilon));
+			if (medianFilter) {
+				rules.add(new MedianFilterRule(lattice, neighbourhoodModel));
+			} else if (r >= BOX_MEAN_R) {
+				BoxMeanRule boxMeanRule = new BoxMeanRule(lattice,
+						neighbourhoodModel, epsilon);
+				boxMeanRule.setPool(pool, numThreads);
+				rules.add(boxMeanRule);
+			} else {
+				if (r == 1) {
+					/*
+					 * Compares each pair of neighbours once, for the fused
+					 * noise and edge pass to read, see FusedStencilRule.
+					 */
+					rules.add(new DifferenceRule(lattice));
+				}
+				rules.add(new NoiseRemoverRule(lattice, neighbourhoodModel,
+						epsilon));
+			}
 			/* Optional step */
-			rules.add(new EdgeFinderRule(lattice, neighbourhoodModel, epsilon));
-			rules.add(new BlobAssociationRule<Color>(lattice,
-					neighbourhoodModel, blobMap));
+			if (r >= RANGE_EDGE_R) {
+				rules.add(new RangeEdgeFinderRule(lattice, neighbourhoodModel,
+						epsilon));
+			} else {
+				rules.add(new EdgeFinderRule(lattice, neighbourhoodModel,
+						epsilon));
+			}
+			/*
+			 * Labels tiles in parallel. BlobAssociationRule followed by
+			 * BlobMergeRule does the same cell by cell.
+			 */
+			rules.add(new BlobLabelRule(lattice, blobMap));
+			// rules.add(new BlobAssociationRule<Color>(lattice,
+			// neighbourhoodModel, blobMap));
 			// rules.add(new PrintBlobAssociationRule(lattice,
 			// neighbourhoodModel, blobMap));
-			rules.add(new BlobMergeRule(lattice, blobMap, epsilon));
+			// rules.add(new BlobMergeRule(lattice, blobMap, epsilon));
 			// rules.add(new ShapeAssimilatorRule(lattice, neighbourhoodModel,
 			// blobMap));
-			rules.add(new OutlineFinderRule<Color>(lattice, neighbourhoodModel,
-					blobMap));
-		} catch (CAException e) {
-			handleException(e);
+			rules.add(new OutlineFinderRule<Color>(lattice,
+					new VanNeumannCardinal<Color>(lattice), blobMap));
 		} finally {
-			ca = new CA<Color>(lattice, rules, numThreads);
+			ca = new CA<Color>(lattice, rules, numThreads, pool, granularity);
+			/* Removes noise and finds edges in one pass over the lattice. */
+			ca.setFuseStencils(true);
 		}
 
-		pictureFrame.setImage(lattice.getResult().getImage());
 		blobMap.clear(w, h);
 		shapeList.clear();
 	}
 
+	/**
+	 * Runs the cell, blob and shape rules to detect shapes in the target
+	 * picture. Does not open any windows unless a listener does. The detector
+	 * can be applied to any number of pictures, one at a time.
+	 * 
+	 * @param picture
+	 * @return The shapes found.
+	 * @throws CAException
+	 */
+	public List<AbstractShape> detect(final Picture picture)
+			throws CAException {
+		setPicture(picture);
+		for (ShapeDetectorListener listener : listeners) {
+			listener.started(this, getResult());
+		}
+
+		ca.apply();
+		blobMap.apply();
+		shapeList.apply();
+
+		List<AbstractShape> shapes = shapeList.getShapes();
+		for (ShapeDetectorListener listener : listeners) {
+			listener.finished(this, getResult(), shapes);
+		}
+		return shapes;
+	}
+
+	/**
+	 * Runs the cell, blob and shape rules to detect shapes in the target
+	 * image.
+	 * 
+	 * @param image
+	 * @return The shapes found.
+	 * @throws CAException
+	 */
+	public List<AbstractShape> detect(final BufferedImage image)
+			throws CAException {
+		return detect(new Picture(image));
+	}
+
 	/**
 	 * Runs the cell, blob and shape rules to detect shapes in the target
 	 * picture.
@@ -205,26 +338,106 @@ public class ShapeDetector {
 	 */
 	public Picture apply(final Picture picture) {
 		try {
-			setPicture(picture);
+			detect(picture);
 		} catch (CAException e) {
 			handleException(e);
 		}
-		pictureFrame.setVisible(visible);
+		return getResult();
+	}
 
-		try {
-			ca.apply();
-			blobMap.apply();
-			shapeList.apply();
-		} catch (CAException e) {
-			handleException(e);
-		}
+	/**
+	 * Gets the output image of the last picture processed.
+	 * 
+	 * @return
+	 */
+	public Picture getResult() {
+		return lattice.getResult();
+	}
+
+	/**
+	 * Stops the detector's worker threads. The detector cannot be applied
+	 * after this.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Gets the difference threshold.
+	 * 
+	 * @return
+	 */
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	/**
+	 * Gets the search radius.
+	 * 
+	 * @return
+	 */
+	public int getR() {
+		return r;
+	}
+
+	/**
+	 * Gets the most threads that a stage is split between.
+	 * 
+	 * @return
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Gets the threads that the rules run on.
+	 * 
+	 * @return
+	 */
+	public WorkerPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Gets the object that decides how many threads each stage is worth
+	 * splitting between.
+	 * 
+	 * @return
+	 */
+	public Granularity getGranularity() {
+		return granularity;
+	}
 
-		graphics.ShapeFrame.frame.setVisible(false);
-		graphics.IdentityFrame.frame.setVisible(false);
-		graphics.LineChartFrame.frame.setVisible(false);
+	/**
+	 * Sets the object that decides how many threads each stage is worth
+	 * splitting between. Detectors that share one learn from each other's
+	 * measurements.
+	 * 
+	 * @param granularity
+	 */
+	public void setGranularity(final Granularity granularity) {
+		this.granularity = granularity;
+	}
+
+	/**
+	 * Checks whether noise is removed with the median instead of the mean.
+	 * 
+	 * @return
+	 */
+	public boolean isMedianFilter() {
+		return medianFilter;
+	}
 
-		pictureFrame.setVisible(true);
-		return ((PictureLattice) ca.getLattice()).getResult();
+	/**
+	 * Sets whether noise is removed by taking the median of each cell's
+	 * neighbourhood instead of the mean. The median keeps edges sharper, but
+	 * the mean is cheaper and has worked better on the test images. Takes
+	 * effect from the next picture.
+	 * 
+	 * @param medianFilter
+	 */
+	public void setMedianFilter(final boolean medianFilter) {
+		this.medianFilter = medianFilter;
 	}
 
 	/**
@@ -273,22 +486,4 @@ public class ShapeDetector {
 		return ca;
 	}
 
-	/**
-	 * Gets the panel displaying the CA output.
-	 * 
-	 * @return
-	 */
-	public PictureFrame getPictureFrame() {
-		return pictureFrame;
-	}
-
-	/**
-	 * Gets the panel displaying the CA output.
-	 * 
-	 * @return
-	 */
-	public SDPanel getPicturePanel() {
-		return picturePanel;
-	}
-
 }
@@ -0,0 +1,36 @@
+package ca.shapedetector;
+
+import java.util.List;
+
+import std.Picture;
+import ca.shapedetector.shapes.AbstractShape;
+
+/**
+ * Receives progress from a ShapeDetector. Lets a GUI display results without
+ * the detector itself depending on one.
+ * 
+ * @author Sean
+ */
+public interface ShapeDetectorListener {
+	/**
+	 * Called once the picture has been loaded into the lattice, before any
+	 * rules run.
+	 * 
+	 * @param sd
+	 * @param result
+	 *            The output image, which the rules write to as they run.
+	 */
+	public void started(ShapeDetector sd, Picture result);
+
+	/**
+	 * Called once all the shapes have been found.
+	 * 
+	 * @param sd
+	 * @param result
+	 *            The output image.
+	 * @param shapes
+	 *            The shapes found.
+	 */
+	public void finished(ShapeDetector sd, Picture result,
+			List<AbstractShape> shapes);
+}
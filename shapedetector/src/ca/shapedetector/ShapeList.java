@@ -7,8 +7,8 @@ import helpers.Stopwatch;
 import java.util.LinkedList;
 import java.util.List;
 
+import ca.concurrency.Granularity;
 import ca.concurrency.ThreadServer;
-import ca.rules.shape.ShapeDrawRule;
 import ca.rules.shape.ShapeRule;
 import ca.shapedetector.shapes.AbstractShape;
 
@@ -28,7 +28,7 @@ public class ShapeList {
 		shapeRules = new LinkedList<ShapeRule>();
 
 		// shapeRules.add(new ShapeDisplayRule(this, ShapeFrame.frame));
-		shapeRules.add(new ShapeDrawRule(this, sd.getPicturePanel()));
+		/* Found shapes are drawn by ShapeDetectorFrame, if one is listening. */
 	}
 
 	/**
@@ -57,9 +57,16 @@ public class ShapeList {
 				}
 			} else {
 				/* Multithreaded method */
+				Granularity granularity = sd.getCA().getGranularity();
+				String stage = rule.getClass().getName();
+				int threads = granularity.getNumThreads(stage, shapes.size(),
+						sd.getCA().getNumThreads());
 				ThreadServer<AbstractShape> threadServer = new ThreadServer<AbstractShape>(
-						rule, shapes, sd.getCA().getNumThreads());
+						rule, shapes, threads, sd.getCA().getPool());
+				long start = System.nanoTime();
 				threadServer.run();
+				granularity.record(stage, shapes.size(), System.nanoTime()
+						- start, threads);
 			}
 
 			rule.complete();
@@ -68,6 +75,15 @@ public class ShapeList {
 		}
 	}
 
+	/**
+	 * Gets the list of detected shapes.
+	 * 
+	 * @return
+	 */
+	public List<AbstractShape> getShapes() {
+		return shapes;
+	}
+
 	/**
 	 * Adds the shape to the list.
 	 * 
@@ -3,6 +3,7 @@ package ca.shapedetector.blob;
 
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -53,6 +54,36 @@ public class Blob<V> {
 		bounds = new Rectangle(coordinates[0], coordinates[1], 1, 1);
 	}
 
+	/**
+	 * Creates an empty blob with room for the specified number of cells.
+	 * 
+	 * @see BlobMap
+	 * @param area
+	 *            Number of cells that will be added to the blob.
+	 */
+	public Blob(final int area) {
+		areaCells = new ArrayList<Cell<V>>(area);
+		outlineCells = new LinkedList<Cell<V>>();
+	}
+
+	/**
+	 * Adds a cell to the collection of cells that make up this blob, and
+	 * extends the boundaries to include it.
+	 * 
+	 * @param cell
+	 *            Cell to add.
+	 */
+	public void addAreaCell(final Cell<V> cell) {
+		int[] coordinates = cell.getCoordinates();
+		if (bounds == null) {
+			bounds = new Rectangle(coordinates[0], coordinates[1], 1, 1);
+		} else {
+			bounds.add(coordinates[0], coordinates[1]);
+			bounds.add(coordinates[0] + 1, coordinates[1] + 1);
+		}
+		areaCells.add(cell);
+	}
+
 	/**
 	 * Transfers all cells from the specified blob to the current blob.
 	 * <p>
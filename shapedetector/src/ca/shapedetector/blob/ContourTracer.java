@@ -0,0 +1,179 @@
+package ca.shapedetector.blob;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.Cell;
+import ca.lattice.Lattice;
+import ca.lattice.Lattice2D;
+import ca.shapedetector.BlobMap;
+import exceptions.CAException;
+import exceptions.NullParameterException;
+
+/**
+ * Places the outline cells of a blob in order, by following them around the
+ * outside of the blob (Moore-neighbour tracing).
+ * <p>
+ * The tracer reads the blob map directly: a cell is an outline cell when it
+ * belongs to the blob and one of its Van Neumann neighbours does not, as
+ * OutlineFinderRule decides. Standing on an outline cell, with the cell it
+ * came from on the outside, it looks clockwise around its Moore neighbourhood
+ * for the next outline cell, starting just after the outside cell. Each step
+ * looks at no more than 8 cells and nothing is searched, so the time is
+ * linear in the length of the outline.
+ * <p>
+ * The trace stops when it is about to repeat its first step from the first
+ * cell (Jacob's stopping criterion), or after 8 steps for each outline cell,
+ * which a trace of a closed outline never takes.
+ * <p>
+ * Where the blob has a spur only one cell thick, the trace goes out along it
+ * and back, so the spur's cells appear twice, except for the one at its tip.
+ * This is intended: every cell in the trace is next to the one before it, so
+ * the outline stays a closed path that can be measured along, and the spur
+ * adds nothing to the area it encloses. A blob that is only a line of cells
+ * has an outline that encloses no area at all (see RootShape).
+ *
+ * @author Sean
+ */
+public class ContourTracer<V> {
+	/** Horizontal steps to the neighbours, clockwise from above. */
+	protected final static int[] DX = { 0, 1, 1, 1, 0, -1, -1, -1 };
+	/** Vertical steps to the neighbours, clockwise from above. */
+	protected final static int[] DY = { -1, -1, 0, 1, 1, 1, 0, -1 };
+
+	protected final Lattice2D<V> lattice;
+	protected final BlobMap<V> blobMap;
+	protected final int width;
+	protected final int height;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lattice
+	 *            Must be a Lattice2D.
+	 * @param blobMap
+	 * @throws CAException
+	 */
+	public ContourTracer(final Lattice<V> lattice, final BlobMap<V> blobMap)
+			throws CAException {
+		if (lattice == null) {
+			throw new NullParameterException("lattice");
+		} else if (blobMap == null) {
+			throw new NullParameterException("blobMap");
+		} else if (!(lattice instanceof Lattice2D)) {
+			throw new CAException("ContourTracer requires a Lattice2D");
+		}
+		this.lattice = (Lattice2D<V>) lattice;
+		this.blobMap = blobMap;
+		width = this.lattice.getWidth();
+		height = this.lattice.getHeight();
+	}
+
+	/**
+	 * Places the blob's outline cells in clockwise order, starting with the
+	 * specified cell.
+	 *
+	 * @param blob
+	 * @param first
+	 *            An outline cell on the top row of the blob, so that the cell
+	 *            above it is outside.
+	 * @param maxSize
+	 *            Number of outline cells the blob has, which bounds the
+	 *            length of the trace.
+	 * @return The outline cells in order.
+	 * @throws CAException
+	 */
+	public List<Cell<V>> trace(final Blob<V> blob, final Cell<V> first,
+			final int maxSize) throws CAException {
+		List<Cell<V>> orderedCells = new ArrayList<Cell<V>>(maxSize);
+		int[] coordinates = first.getCoordinates();
+		int x = coordinates[0];
+		int y = coordinates[1];
+		int startX = x;
+		int startY = y;
+		/* Direction of the outside cell that the search starts after. */
+		int back = 0;
+		int firstStep = -1;
+		long maxSteps = 8L * maxSize;
+
+		for (long step = 0; step <= maxSteps; step++) {
+			int next = -1;
+			for (int i = 1; i < 8; i++) {
+				int k = (back + i) & 7;
+				if (isOutline(blob, x + DX[k], y + DY[k])) {
+					next = k;
+					break;
+				}
+			}
+			if (x == startX && y == startY) {
+				if (next == firstStep) {
+					/* Back at the start, about to go round again. */
+					break;
+				} else if (firstStep < 0) {
+					firstStep = next;
+				}
+			}
+			orderedCells.add(lattice.getCell(lattice.getIndex(x, y)));
+			if (next < 0) {
+				/* A single cell. */
+				break;
+			}
+
+			/* The last cell looked at before the next one is outside. */
+			int outsideX = x + DX[(next + 7) & 7];
+			int outsideY = y + DY[(next + 7) & 7];
+			x += DX[next];
+			y += DY[next];
+			back = getDirection(outsideX - x, outsideY - y);
+		}
+		return orderedCells;
+	}
+
+	/**
+	 * Checks whether the cell at (x,y) is an outline cell of the blob.
+	 *
+	 * @param blob
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	protected boolean isOutline(final Blob<V> blob, final int x, final int y) {
+		if (!contains(blob, x, y)) {
+			return false;
+		}
+		return (y > 0 && !contains(blob, x, y - 1))
+				|| (x < width - 1 && !contains(blob, x + 1, y))
+				|| (y < height - 1 && !contains(blob, x, y + 1))
+				|| (x > 0 && !contains(blob, x - 1, y));
+	}
+
+	/**
+	 * Checks whether the cell at (x,y) is on the lattice and belongs to the
+	 * blob.
+	 *
+	 * @param blob
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	protected boolean contains(final Blob<V> blob, final int x, final int y) {
+		return x >= 0 && y >= 0 && x < width && y < height
+				&& blobMap.getBlob(lattice.getIndex(x, y)) == blob;
+	}
+
+	/**
+	 * Gets the direction of a neighbour, clockwise from above.
+	 *
+	 * @param dx
+	 * @param dy
+	 * @return
+	 */
+	protected static int getDirection(final int dx, final int dy) {
+		for (int k = 0; k < 8; k++) {
+			if (DX[k] == dx && DY[k] == dy) {
+				return k;
+			}
+		}
+		return 0;
+	}
+}
@@ -277,9 +277,15 @@ public abstract class AbstractShape implements SDShape {
 		return similarity;
 	}
 
-	static JFrame frame1 = new JFrame();
-	static JFrame frame2 = new JFrame();
-	static JFrame frame3 = new JFrame();
+	/**
+	 * Frames for debugging. Kept in a holder class so that they are only
+	 * created when debugging, and never on a headless machine.
+	 */
+	static class DebugFrames {
+		static JFrame frame1 = new JFrame();
+		static JFrame frame2 = new JFrame();
+		static JFrame frame3 = new JFrame();
+	}
 
 	protected double compareByAreaDifference(final AbstractShape shape) {
 		Area maskAreaPolygon = getPath().getAreaPolygon();
@@ -318,13 +324,13 @@ public abstract class AbstractShape implements SDShape {
 
 			// SDPanel.displayShape(bgShape, bgShape, SDPanelTheme.HIGHLIGHT);
 
-			// display(bgShape, frame1);
-			// display(shape, frame2);
-			// display(this, frame3);
+			// display(bgShape, DebugFrames.frame1);
+			// display(shape, DebugFrames.frame2);
+			// display(this, DebugFrames.frame3);
 
-			frame1.setTitle("Combined");
-			frame2.setTitle("Shape");
-			frame3.setTitle("Mask");
+			DebugFrames.frame1.setTitle("Combined");
+			DebugFrames.frame2.setTitle("Shape");
+			DebugFrames.frame3.setTitle("Mask");
 		}
 
 		/* Path either contains curved segments or crosses itself. */
@@ -24,6 +24,11 @@ public class RootShape<V> extends AbstractShape {
 	/**
 	 * Returns an instance of the shape detected from the blob. Returns an
 	 * UnknownShape if none was found.
+	 * <p>
+	 * A blob that is only one cell thick has an outline that goes out and
+	 * back along itself, which encloses no area and so has no centroid. Such
+	 * blobs are returned as UnknownShapes without being compared to any
+	 * shapes.
 	 * 
 	 * @param blob
 	 * @return
@@ -32,6 +37,9 @@ public class RootShape<V> extends AbstractShape {
 	public AbstractShape identify(final Blob<V> blob) throws NullParameterException {
 		SDPath path = path(blob.getOutlineCells());
 		AbstractShape shape = new UnknownShape(path);
+		if (path.getArea() == 0d) {
+			return shape;
+		}
 
 		for (SDShape relatedShape : shapeClasses) {
 			shape = relatedShape.identify(shape);
@@ -16,6 +16,8 @@ import std.Picture;
 public class ColourCompare {
 	/** YCbCr colour space. */
 	static final YCbCrColorSpace colourSpace = new YCbCrColorSpace();
+	/** The greatest distance possible between two YCbCr colours. */
+	public static final double MAX_DISTANCE = Math.sqrt(3);
 
 	/**
 	 * Computes Euclidian distance between two colour vectors. Assumes both
@@ -77,6 +79,90 @@ public class ColourCompare {
 		return distance / max_distance;
 	}
 
+	/**
+	 * Gets the difference quotient between two colours given as packed RGB
+	 * values.
+	 * <p>
+	 * Gives the same result as getDifference(Color, Color), but does not
+	 * create any objects, so it is much faster in the inner loops of cell
+	 * rules.
+	 * 
+	 * @param rgb1
+	 *            1st colour.
+	 * @param rgb2
+	 *            2nd colour.
+	 * @return The difference expressed as a ratio, where 1f is the maximum
+	 *         difference.
+	 */
+	public static double getDifference(final int rgb1, final int rgb2) {
+		if (rgb1 == rgb2) {
+			return 0d;
+		}
+		float y = getLuma(rgb1) - getLuma(rgb2);
+		float cb = getBlueChroma(rgb1) - getBlueChroma(rgb2);
+		float cr = getRedChroma(rgb1) - getRedChroma(rgb2);
+
+		float sum = 0.0f;
+		sum += y * y;
+		sum += cb * cb;
+		sum += cr * cr;
+		return Math.sqrt(sum) / MAX_DISTANCE;
+	}
+
+	/**
+	 * Gets the Y component of a packed RGB colour, in the range 0-1.
+	 * 
+	 * @param rgb
+	 * @return
+	 */
+	public static float getLuma(final int rgb) {
+		float r = ((rgb >> 16) & 0xff) / 255f;
+		float g = ((rgb >> 8) & 0xff) / 255f;
+		float b = (rgb & 0xff) / 255f;
+		return clamp(16 + (float) (65.481 * r + 128.553 * g + 24.966 * b)) / 255f;
+	}
+
+	/**
+	 * Gets the Cb component of a packed RGB colour, in the range 0-1.
+	 * 
+	 * @param rgb
+	 * @return
+	 */
+	public static float getBlueChroma(final int rgb) {
+		float r = ((rgb >> 16) & 0xff) / 255f;
+		float g = ((rgb >> 8) & 0xff) / 255f;
+		float b = (rgb & 0xff) / 255f;
+		return clamp(128 + (float) (-37.797 * r + -74.203 * g + 112. * b)) / 255f;
+	}
+
+	/**
+	 * Gets the Cr component of a packed RGB colour, in the range 0-1.
+	 * 
+	 * @param rgb
+	 * @return
+	 */
+	public static float getRedChroma(final int rgb) {
+		float r = ((rgb >> 16) & 0xff) / 255f;
+		float g = ((rgb >> 8) & 0xff) / 255f;
+		float b = (rgb & 0xff) / 255f;
+		return clamp(128 + (float) (112. * r + -93.786 * g + -18.214 * b)) / 255f;
+	}
+
+	/**
+	 * Clamps a YCbCr component to the range 0-255, as YCbCrColorSpace does.
+	 * 
+	 * @param component
+	 * @return
+	 */
+	protected static float clamp(final float component) {
+		if (component > 255) {
+			return 255;
+		} else if (component < 0) {
+			return 0;
+		}
+		return component;
+	}
+
 	/**
 	 * Converts an RGB colour to YCbCr format, with values in the range 0-1.
 	 * 
@@ -132,6 +218,52 @@ public class ColourCompare {
 		return new Color(r, g, b, a);
 	}
 
+	/**
+	 * Gets the mean (average) colour of an array of packed ARGB colours.
+	 * 
+	 * @param colours
+	 *            Array of colours to find the average of.
+	 * @param n
+	 *            Number of colours in the array to use.
+	 * @return Average colour.
+	 */
+	public static int meanColour(final int[] colours, final int n) {
+		int r = 0, g = 0, b = 0, a = 0;
+		for (int i = 0; i < n; i++) {
+			int colour = colours[i];
+			r += (colour >> 16) & 0xff;
+			g += (colour >> 8) & 0xff;
+			b += colour & 0xff;
+			a += colour >>> 24;
+		}
+		return meanColour(r, g, b, a, n);
+	}
+
+	/**
+	 * Gets the mean (average) colour from the sums of the components of n
+	 * colours, for callers that add up the components as they go.
+	 * 
+	 * @param r
+	 *            Sum of the red components.
+	 * @param g
+	 *            Sum of the green components.
+	 * @param b
+	 *            Sum of the blue components.
+	 * @param a
+	 *            Sum of the alpha components.
+	 * @param n
+	 *            Number of colours.
+	 * @return Average colour.
+	 */
+	public static int meanColour(int r, int g, int b, int a, final int n) {
+		double size = (double) n;
+		r = (int) Math.round((double) r / size);
+		g = (int) Math.round((double) g / size);
+		b = (int) Math.round((double) b / size);
+		a = (int) Math.round((double) a / size);
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+
 	/**
 	 * Gets the median colour from an array of colours, relative to the
 	 * reference colour.
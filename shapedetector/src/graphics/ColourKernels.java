@@ -0,0 +1,136 @@
+package graphics;
+
+/**
+ * Converts and compares whole runs of pixels at a time, for the loops that
+ * process every pixel of an image. The results are exactly the same as those
+ * of ColourCompare.getLuma(), getBlueChroma(), getRedChroma() and
+ * YCbCrPlanes.getSquaredDistance(), which remain the way to convert or
+ * compare one pixel, or pixels that are not stored next to each other.
+ * <p>
+ * The conversion looks up the products of each RGB component with the
+ * coefficients of the YCbCr matrix in tables, instead of unpacking the
+ * components and multiplying them again for each of Y, Cb and Cr. The sums
+ * are added in the same order as in ColourCompare, so the rounding is the
+ * same.
+ * <p>
+ * The distance kernel is a plain loop over float arrays with unit stride and
+ * no calls or branches, which the JIT compiler turns into SIMD instructions
+ * where the processor has them. Java does not fuse multiplications and
+ * additions, so this does not change the results either.
+ *
+ * @author Sean
+ */
+public class ColourKernels {
+	/** Products of each 8-bit component with the Y coefficients. */
+	protected static final double[] LUMA_R = new double[256];
+	protected static final double[] LUMA_G = new double[256];
+	protected static final double[] LUMA_B = new double[256];
+	/** Products of each 8-bit component with the Cb coefficients. */
+	protected static final double[] BLUE_CHROMA_R = new double[256];
+	protected static final double[] BLUE_CHROMA_G = new double[256];
+	protected static final double[] BLUE_CHROMA_B = new double[256];
+	/** Products of each 8-bit component with the Cr coefficients. */
+	protected static final double[] RED_CHROMA_R = new double[256];
+	protected static final double[] RED_CHROMA_G = new double[256];
+	protected static final double[] RED_CHROMA_B = new double[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			/* The same float as ColourCompare divides by. */
+			float c = i / 255f;
+			LUMA_R[i] = 65.481 * c;
+			LUMA_G[i] = 128.553 * c;
+			LUMA_B[i] = 24.966 * c;
+			BLUE_CHROMA_R[i] = -37.797 * c;
+			BLUE_CHROMA_G[i] = -74.203 * c;
+			BLUE_CHROMA_B[i] = 112. * c;
+			RED_CHROMA_R[i] = 112. * c;
+			RED_CHROMA_G[i] = -93.786 * c;
+			RED_CHROMA_B[i] = -18.214 * c;
+		}
+	}
+
+	/**
+	 * Converts a run of packed RGB pixels to Y, Cb and Cr components, with
+	 * values in the range 0-1.
+	 *
+	 * @param pixels
+	 *            Packed RGB pixels.
+	 * @param srcPos
+	 *            Index of the first pixel to convert.
+	 * @param luma
+	 *            Receives the Y components.
+	 * @param blueChroma
+	 *            Receives the Cb components.
+	 * @param redChroma
+	 *            Receives the Cr components.
+	 * @param destPos
+	 *            Index of the first components to set.
+	 * @param length
+	 *            Number of pixels to convert.
+	 */
+	public static void toYCbCr(final int[] pixels, final int srcPos,
+			final float[] luma, final float[] blueChroma,
+			final float[] redChroma, final int destPos, final int length) {
+		for (int i = 0; i < length; i++) {
+			int rgb = pixels[srcPos + i];
+			int r = (rgb >> 16) & 0xff;
+			int g = (rgb >> 8) & 0xff;
+			int b = rgb & 0xff;
+			luma[destPos + i] = clamp(16 + (float) (LUMA_R[r] + LUMA_G[g]
+					+ LUMA_B[b])) / 255f;
+			blueChroma[destPos + i] = clamp(128 + (float) (BLUE_CHROMA_R[r]
+					+ BLUE_CHROMA_G[g] + BLUE_CHROMA_B[b])) / 255f;
+			redChroma[destPos + i] = clamp(128 + (float) (RED_CHROMA_R[r]
+					+ RED_CHROMA_G[g] + RED_CHROMA_B[b])) / 255f;
+		}
+	}
+
+	/**
+	 * Clamps a YCbCr component to the range 0-255.
+	 *
+	 * @see ColourCompare#clamp(float)
+	 */
+	protected static float clamp(final float component) {
+		return component > 255 ? 255 : (component < 0 ? 0 : component);
+	}
+
+	/**
+	 * Gets the squared distances in YCbCr space between each of a run of
+	 * pixels and the pixel at a fixed offset from it.
+	 *
+	 * @param luma
+	 *            Y plane.
+	 * @param blueChroma
+	 *            Cb plane.
+	 * @param redChroma
+	 *            Cr plane.
+	 * @param srcPos
+	 *            Index of the first pixel.
+	 * @param offset
+	 *            Offset of the other pixel of each pair.
+	 * @param dest
+	 *            Receives the squared distances.
+	 * @param destPos
+	 *            Index of the first distance to set.
+	 * @param length
+	 *            Number of pixels.
+	 */
+	public static void squaredDistances(final float[] luma,
+			final float[] blueChroma, final float[] redChroma,
+			final int srcPos, final int offset, final float[] dest,
+			final int destPos, final int length) {
+		for (int i = 0; i < length; i++) {
+			int j = srcPos + i;
+			float y = luma[j] - luma[j + offset];
+			float cb = blueChroma[j] - blueChroma[j + offset];
+			float cr = redChroma[j] - redChroma[j + offset];
+
+			float sum = 0.0f;
+			sum += y * y;
+			sum += cb * cb;
+			sum += cr * cr;
+			dest[destPos + i] = sum;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package graphics;
+
+import java.util.List;
+
+import std.Picture;
+import ca.rules.shape.ShapeDrawRule;
+import ca.shapedetector.ShapeDetector;
+import ca.shapedetector.ShapeDetectorListener;
+import ca.shapedetector.shapes.AbstractShape;
+
+/**
+ * Displays a ShapeDetector's output image, with the shapes it found drawn
+ * over it.
+ * 
+ * @author Sean
+ */
+public class ShapeDetectorFrame extends PictureFrame implements
+		ShapeDetectorListener {
+	private static final long serialVersionUID = 1L;
+
+	/** The panel that displays the output image. */
+	protected final SDPanel sdPanel;
+
+	public ShapeDetectorFrame() {
+		this(new SDPanel());
+	}
+
+	public ShapeDetectorFrame(final SDPanel sdPanel) {
+		super(sdPanel);
+		this.sdPanel = sdPanel;
+		setTitle("CA Shape Detector");
+	}
+
+	@Override
+	public void started(final ShapeDetector sd, final Picture result) {
+		setImage(result.getImage());
+		setVisible(true);
+	}
+
+	@Override
+	public void finished(final ShapeDetector sd, final Picture result,
+			final List<AbstractShape> shapes) {
+		if (ShapeDetector.debug) {
+			ShapeFrame.frame.setVisible(false);
+			IdentityFrame.frame.setVisible(false);
+			LineChartFrame.frame.setVisible(false);
+		}
+
+		ShapeDrawRule rule = new ShapeDrawRule(sd.getShapeList(), sdPanel);
+		for (AbstractShape shape : shapes) {
+			rule.update(shape);
+		}
+		setVisible(true);
+	}
+
+	/**
+	 * Gets the panel displaying the output image.
+	 * 
+	 * @return
+	 */
+	public SDPanel getSDPanel() {
+		return sdPanel;
+	}
+}
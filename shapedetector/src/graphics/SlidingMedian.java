@@ -0,0 +1,233 @@
+package graphics;
+
+import java.util.Arrays;
+
+/**
+ * Finds the median of the 8-bit values in a window that slides along a row of
+ * an image, in constant time per position whatever the size of the window
+ * (Perreault and Hebert's algorithm).
+ * <p>
+ * A histogram is kept for each column, holding the values of the rows in the
+ * window. As the window moves down a row, each column histogram gains one
+ * value and loses one. As it moves along the row, the window histogram gains
+ * the column histogram entering on the right and loses the one leaving on the
+ * left. The column histograms are added and subtracted 16 bins at a time: the
+ * window keeps a coarse histogram of the high 4 bits of the values, which is
+ * always up to date, and a fine histogram of the full values whose blocks are
+ * only brought up to date when the median falls in them.
+ * <p>
+ * Usage, for each row: update the column histograms with addValue() and
+ * removeValue(), call reset(), then call median() for each window from left
+ * to right. Windows may shrink at the ends of the row, but neither of their
+ * edges may move left. Not safe to share between threads.
+ *
+ * @author Sean
+ */
+public class SlidingMedian {
+	/** Number of fine bins, one for each value. */
+	public final static int BINS = 256;
+	/** Number of fine bins for each coarse bin. */
+	public final static int BLOCK = 16;
+
+	/** Fine histograms of the columns, BINS entries each. */
+	protected int[] columnFine;
+	/** Coarse histograms of the columns, BINS / BLOCK entries each. */
+	protected int[] columnCoarse;
+	/** Number of columns. */
+	protected int columns;
+	/** Fine histogram of the window, up to date only in some blocks. */
+	protected final int[] fine;
+	/** Coarse histogram of the window. */
+	protected final int[] coarse;
+	/** The columns that each block of the fine histogram was summed over. */
+	protected final int[] blockLeft, blockRight;
+	/** The columns in the window, from left up to but not including right. */
+	protected int left, right;
+	/** Number of values in the window. */
+	protected int count;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param columns
+	 *            Number of columns. More are added as needed, see resize().
+	 */
+	public SlidingMedian(final int columns) {
+		fine = new int[BINS];
+		coarse = new int[BINS / BLOCK];
+		blockLeft = new int[BINS / BLOCK];
+		blockRight = new int[BINS / BLOCK];
+		columnFine = new int[0];
+		columnCoarse = new int[0];
+		resize(columns);
+	}
+
+	/**
+	 * Sets the number of columns and empties their histograms.
+	 *
+	 * @param columns
+	 */
+	public void resize(final int columns) {
+		this.columns = columns;
+		if (columnFine.length < columns * BINS) {
+			columnFine = new int[columns * BINS];
+			columnCoarse = new int[columns * (BINS / BLOCK)];
+		} else {
+			Arrays.fill(columnFine, 0, columns * BINS, 0);
+			Arrays.fill(columnCoarse, 0, columns * (BINS / BLOCK), 0);
+		}
+	}
+
+	/**
+	 * Adds a value to a column's histogram.
+	 *
+	 * @param column
+	 * @param value
+	 *            From 0 to 255.
+	 */
+	public void addValue(final int column, final int value) {
+		columnFine[column * BINS + value]++;
+		columnCoarse[column * (BINS / BLOCK) + value / BLOCK]++;
+	}
+
+	/**
+	 * Removes a value from a column's histogram.
+	 *
+	 * @param column
+	 * @param value
+	 *            From 0 to 255.
+	 */
+	public void removeValue(final int column, final int value) {
+		columnFine[column * BINS + value]--;
+		columnCoarse[column * (BINS / BLOCK) + value / BLOCK]--;
+	}
+
+	/**
+	 * Empties the window, ready to slide along a row.
+	 */
+	public void reset() {
+		Arrays.fill(coarse, 0);
+		/* No block of the fine histogram holds any column. */
+		Arrays.fill(blockLeft, 0);
+		Arrays.fill(blockRight, 0);
+		left = 0;
+		right = 0;
+		count = 0;
+	}
+
+	/**
+	 * Gets the median of the values in the columns from left up to, but not
+	 * including, right. Of an even number of values, gets the lower median.
+	 *
+	 * @param left
+	 * @param right
+	 * @return The median, or -1 if the window is empty.
+	 */
+	public int median(final int left, final int right) {
+		moveTo(left, right);
+		if (count == 0) {
+			return -1;
+		}
+
+		/* Finds the coarse bin holding the median, then the fine bin. */
+		int rank = (count - 1) / 2;
+		int block = 0;
+		while (rank >= coarse[block]) {
+			rank -= coarse[block++];
+		}
+		updateBlock(block);
+		int bin = block * BLOCK;
+		while (rank >= fine[bin]) {
+			rank -= fine[bin++];
+		}
+		return bin;
+	}
+
+	/**
+	 * Moves the window, updating the coarse histogram.
+	 *
+	 * @param left
+	 * @param right
+	 */
+	protected void moveTo(final int left, final int right) {
+		if (left >= this.right) {
+			/* The windows do not overlap. */
+			for (int c = this.left; c < this.right; c++) {
+				addCoarse(c, -1);
+			}
+			this.left = left;
+			this.right = left;
+		}
+		for (int c = this.left; c < left; c++) {
+			addCoarse(c, -1);
+		}
+		for (int c = this.right; c < right; c++) {
+			addCoarse(c, 1);
+		}
+		this.left = left;
+		this.right = right;
+	}
+
+	/**
+	 * Adds a column's coarse histogram to the window's, or subtracts it.
+	 *
+	 * @param column
+	 * @param sign
+	 *            1 to add, -1 to subtract.
+	 */
+	protected void addCoarse(final int column, final int sign) {
+		int offset = column * (BINS / BLOCK);
+		int n = 0;
+		for (int i = 0; i < BINS / BLOCK; i++) {
+			int value = sign * columnCoarse[offset + i];
+			coarse[i] += value;
+			n += value;
+		}
+		count += n;
+	}
+
+	/**
+	 * Brings a block of the fine histogram up to date with the window.
+	 *
+	 * @param block
+	 */
+	protected void updateBlock(final int block) {
+		int l = blockLeft[block];
+		int r = blockRight[block];
+		if (l == left && r == right) {
+			return;
+		}
+		int start = block * BLOCK;
+		if (r <= left || l > left || r > right) {
+			/* Sums the block again from scratch. */
+			Arrays.fill(fine, start, start + BLOCK, 0);
+			l = left;
+			r = left;
+		}
+		for (int c = l; c < left; c++) {
+			addFine(c, start, -1);
+		}
+		for (int c = r; c < right; c++) {
+			addFine(c, start, 1);
+		}
+		blockLeft[block] = left;
+		blockRight[block] = right;
+	}
+
+	/**
+	 * Adds a block of a column's fine histogram to the window's, or
+	 * subtracts it.
+	 *
+	 * @param column
+	 * @param start
+	 *            The first bin of the block.
+	 * @param sign
+	 *            1 to add, -1 to subtract.
+	 */
+	protected void addFine(final int column, final int start, final int sign) {
+		int offset = column * BINS;
+		for (int i = start; i < start + BLOCK; i++) {
+			fine[i] += sign * columnFine[offset + i];
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package graphics;
+
+/**
+ * Finds the minimum or maximum of the values in a window that slides along a
+ * sequence, in constant time per position whatever the size of the window
+ * (the van Herk/Gil-Werman algorithm).
+ * <p>
+ * The sequence is split into blocks as long as the window. Within each block
+ * the running extremum is taken from the left and from the right, and the
+ * extremum of a window, which spans at most two blocks, is the extremum of
+ * the right-to-left value at its start and the left-to-right value at its
+ * end. That is about three comparisons per value.
+ * <p>
+ * Windows are clipped to the sequence. Applying the filter along the rows of
+ * an image and then along the columns of the result gives the extrema over
+ * square windows.
+ * <p>
+ * The buffers are reused between calls, so it is not safe to share between
+ * threads.
+ *
+ * @author Sean
+ */
+public class WindowExtrema {
+	/** The values, padded by the radius at both ends. */
+	protected float[] values;
+	/** Running extrema from the left of each block. */
+	protected float[] forward;
+	/** Running extrema from the right of each block. */
+	protected float[] backward;
+
+	/**
+	 * Constructor.
+	 */
+	public WindowExtrema() {
+		values = new float[0];
+		forward = new float[0];
+		backward = new float[0];
+	}
+
+	/**
+	 * Finds the minimum of each window of radius r centred on the positions
+	 * from start up to, but not including, end.
+	 *
+	 * @param src
+	 *            Holds the sequence.
+	 * @param srcPos
+	 *            Position of the first value in src.
+	 * @param srcStride
+	 *            Distance between consecutive values in src.
+	 * @param n
+	 *            Length of the sequence.
+	 * @param start
+	 * @param end
+	 * @param r
+	 *            Radius of the window.
+	 * @param dst
+	 *            Receives the minimum of each window.
+	 * @param dstPos
+	 *            Position of the first result in dst.
+	 * @param dstStride
+	 *            Distance between consecutive results in dst.
+	 */
+	public void min(final float[] src, final int srcPos, final int srcStride,
+			final int n, final int start, final int end, final int r,
+			final float[] dst, final int dstPos, final int dstStride) {
+		int size = load(src, srcPos, srcStride, n, start, end, r,
+				Float.POSITIVE_INFINITY);
+		int k = 2 * r + 1;
+		for (int block = 0; block < size; block += k) {
+			int last = Math.min(block + k, size) - 1;
+			float v = values[block];
+			forward[block] = v;
+			for (int j = block + 1; j <= last; j++) {
+				float u = values[j];
+				v = v < u ? v : u;
+				forward[j] = v;
+			}
+			v = values[last];
+			backward[last] = v;
+			for (int j = last - 1; j >= block; j--) {
+				float u = values[j];
+				v = v < u ? v : u;
+				backward[j] = v;
+			}
+		}
+		for (int j = 0, d = dstPos; j < end - start; j++, d += dstStride) {
+			float a = backward[j];
+			float b = forward[j + k - 1];
+			dst[d] = a < b ? a : b;
+		}
+	}
+
+	/**
+	 * Finds the maximum of each window of radius r centred on the positions
+	 * from start up to, but not including, end.
+	 *
+	 * @see #min(float[], int, int, int, int, int, int, float[], int, int)
+	 */
+	public void max(final float[] src, final int srcPos, final int srcStride,
+			final int n, final int start, final int end, final int r,
+			final float[] dst, final int dstPos, final int dstStride) {
+		int size = load(src, srcPos, srcStride, n, start, end, r,
+				Float.NEGATIVE_INFINITY);
+		int k = 2 * r + 1;
+		for (int block = 0; block < size; block += k) {
+			int last = Math.min(block + k, size) - 1;
+			float v = values[block];
+			forward[block] = v;
+			for (int j = block + 1; j <= last; j++) {
+				float u = values[j];
+				v = v > u ? v : u;
+				forward[j] = v;
+			}
+			v = values[last];
+			backward[last] = v;
+			for (int j = last - 1; j >= block; j--) {
+				float u = values[j];
+				v = v > u ? v : u;
+				backward[j] = v;
+			}
+		}
+		for (int j = 0, d = dstPos; j < end - start; j++, d += dstStride) {
+			float a = backward[j];
+			float b = forward[j + k - 1];
+			dst[d] = a > b ? a : b;
+		}
+	}
+
+	/**
+	 * Copies the values that the windows cover into the buffer, with the
+	 * neutral value in place of any that lie outside the sequence.
+	 *
+	 * @return The number of values copied.
+	 */
+	protected int load(final float[] src, final int srcPos,
+			final int srcStride, final int n, final int start, final int end,
+			final int r, final float neutral) {
+		int size = end - start + 2 * r;
+		if (values.length < size) {
+			values = new float[size];
+			forward = new float[size];
+			backward = new float[size];
+		}
+		for (int j = 0, i = start - r; j < size; j++, i++) {
+			values[j] = (i >= 0 && i < n) ? src[srcPos + i * srcStride]
+					: neutral;
+		}
+		return size;
+	}
+}
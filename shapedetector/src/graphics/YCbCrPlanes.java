@@ -0,0 +1,153 @@
+package graphics;
+
+/**
+ * Caches the Y, Cb and Cr components of an array of packed RGB pixels in
+ * separate planes, with values in the range 0-1.
+ * <p>
+ * Converting a picture once and comparing the cached components is much
+ * faster than ColourCompare.getDifference(), which converts both colours on
+ * every call. The results are the same.
+ * 
+ * @author Sean
+ */
+public class YCbCrPlanes {
+	/** Y plane. */
+	protected final float[] luma;
+	/** Cb plane. */
+	protected final float[] blueChroma;
+	/** Cr plane. */
+	protected final float[] redChroma;
+
+	/**
+	 * Constructor. Converts all the pixels.
+	 * 
+	 * @param pixels
+	 *            Packed RGB pixels.
+	 */
+	public YCbCrPlanes(final int[] pixels) {
+		luma = new float[pixels.length];
+		blueChroma = new float[pixels.length];
+		redChroma = new float[pixels.length];
+		ColourKernels.toYCbCr(pixels, 0, luma, blueChroma, redChroma, 0,
+				pixels.length);
+	}
+
+	/**
+	 * Constructor. Creates empty planes, for pixels to be set one at a time.
+	 * 
+	 * @param size
+	 *            Number of pixels.
+	 */
+	public YCbCrPlanes(final int size) {
+		luma = new float[size];
+		blueChroma = new float[size];
+		redChroma = new float[size];
+	}
+
+	/**
+	 * Converts the pixel at the specified index again, after it has changed.
+	 * 
+	 * @param index
+	 * @param rgb
+	 *            The pixel's new packed RGB value.
+	 */
+	public void set(final int index, final int rgb) {
+		luma[index] = ColourCompare.getLuma(rgb);
+		blueChroma[index] = ColourCompare.getBlueChroma(rgb);
+		redChroma[index] = ColourCompare.getRedChroma(rgb);
+	}
+
+	/**
+	 * Marks the pixel at the specified index as undefined, such as padding
+	 * around an image. The difference between it and any other pixel is NaN,
+	 * so it compares as neither greater nor less than any threshold.
+	 * 
+	 * @param index
+	 */
+	public void setUndefined(final int index) {
+		luma[index] = Float.NaN;
+		blueChroma[index] = Float.NaN;
+		redChroma[index] = Float.NaN;
+	}
+
+	/**
+	 * Copies the components of a run of pixels to other planes.
+	 * 
+	 * @param srcPos
+	 *            Index of the first pixel to copy.
+	 * @param dest
+	 *            Planes to copy to.
+	 * @param destPos
+	 *            Index of the first pixel to copy to.
+	 * @param length
+	 *            Number of pixels to copy.
+	 */
+	public void copy(final int srcPos, final YCbCrPlanes dest,
+			final int destPos, final int length) {
+		System.arraycopy(luma, srcPos, dest.luma, destPos, length);
+		System.arraycopy(blueChroma, srcPos, dest.blueChroma, destPos, length);
+		System.arraycopy(redChroma, srcPos, dest.redChroma, destPos, length);
+	}
+
+	/**
+	 * Gets the difference quotient between the pixels at the specified
+	 * indices.
+	 * 
+	 * @see ColourCompare#getDifference(int, int)
+	 * @param index1
+	 * @param index2
+	 * @return The difference expressed as a ratio, where 1f is the maximum
+	 *         difference.
+	 */
+	public double getDifference(final int index1, final int index2) {
+		return Math.sqrt(getSquaredDistance(index1, index2))
+				/ ColourCompare.MAX_DISTANCE;
+	}
+
+	/**
+	 * Gets the squared distance in YCbCr space between the pixels at the
+	 * specified indices. The result is the same either way round.
+	 * 
+	 * @param index1
+	 * @param index2
+	 * @return
+	 */
+	public float getSquaredDistance(final int index1, final int index2) {
+		float y = luma[index1] - luma[index2];
+		float cb = blueChroma[index1] - blueChroma[index2];
+		float cr = redChroma[index1] - redChroma[index2];
+
+		float sum = 0.0f;
+		sum += y * y;
+		sum += cb * cb;
+		sum += cr * cr;
+		return sum;
+	}
+
+	/**
+	 * Gets the Y plane.
+	 * 
+	 * @return
+	 */
+	public float[] getLuma() {
+		return luma;
+	}
+
+	/**
+	 * Gets the Cb plane.
+	 * 
+	 * @return
+	 */
+	public float[] getBlueChroma() {
+		return blueChroma;
+	}
+
+	/**
+	 * Gets the Cr plane.
+	 * 
+	 * @return
+	 */
+	public float[] getRedChroma() {
+		return redChroma;
+	}
+}
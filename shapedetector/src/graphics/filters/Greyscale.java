@@ -1,21 +1,31 @@
 package graphics.filters;
 
-import java.awt.Color;
-
 import std.Picture;
 
 public class Greyscale extends ImageFilter {
 	public static Picture greyscale(final Picture picture) {
-		Picture greypic = new Picture(picture.width(), picture.height());
+		int w = picture.width();
+		Picture greypic = new Picture(w, picture.height());
 		greypic.setOriginUpperLeft();
-		for (int x = 0; x < picture.width(); x++) {
-			for (int y = 0; y < picture.height(); y++) {
-				Color pixel = picture.get(x, y);
-				int c = (pixel.getRed() + pixel.getGreen() + pixel.getBlue()) / 3;
-				greypic.set(x, y, new Color(c, c, c));
+		int[] pixels = greypic.getPixels();
+		for (int y = 0; y < picture.height(); y++) {
+			picture.getRow(y, pixels, y * w);
+			for (int i = y * w; i < (y + 1) * w; i++) {
+				int c = average(pixels[i]);
+				pixels[i] = 0xff000000 | (c << 16) | (c << 8) | c;
 			}
 		}
 		return greypic;
 	}
 
+	/**
+	 * Averages the red, green and blue components of an RGB value.
+	 * 
+	 * @param rgb
+	 * @return
+	 */
+	protected static int average(final int rgb) {
+		return (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3;
+	}
+
 }
@@ -1,7 +1,5 @@
 package graphics.filters;
 
-import java.awt.Color;
-
 import std.Picture;
 
 /**
@@ -11,18 +9,19 @@ import std.Picture;
  */
 public class Monochrome extends ImageFilter {
 	public static Picture apply(final Picture picture) {
-		Picture output = new Picture(picture.width(), picture.height());
+		int w = picture.width();
+		Picture output = new Picture(w, picture.height());
 		output.setOriginUpperLeft();
-		for (int x = 0; x < picture.width(); x++) {
-			for (int y = 0; y < picture.height(); y++) {
-				Color pixel = picture.get(x, y);
-				int c = (pixel.getRed() + pixel.getGreen() + pixel.getBlue()) / 3;
+		int[] pixels = output.getPixels();
+		for (int y = 0; y < picture.height(); y++) {
+			picture.getRow(y, pixels, y * w);
+			for (int i = y * w; i < (y + 1) * w; i++) {
+				int c = Greyscale.average(pixels[i]);
 				if (c > 127) {
-					c = 255;
+					pixels[i] = 0xffffffff;
 				} else {
-					c = 0;
+					pixels[i] = 0xff000000;
 				}
-				output.set(x, y, new Color(c, c, c));
 			}
 		}
 		return output;
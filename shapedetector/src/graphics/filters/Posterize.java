@@ -32,16 +32,19 @@ public class Posterize {
 			}
 		}
 
-		Picture output = new Picture(picture.width(), picture.height());
-		for (int x = 0; x < picture.width(); x++) {
-			for (int y = 0; y < picture.height(); y++) {
-				Color pixel = picture.get(x, y);
+		int w = picture.width();
+		Picture output = new Picture(w, picture.height());
+		int[] pixels = output.getPixels();
+		for (int y = 0; y < picture.height(); y++) {
+			picture.getRow(y, pixels, y * w);
+			for (int x = y * w; x < (y + 1) * w; x++) {
+				Color pixel = new Color(pixels[x]);
 				float[] components = pixel.getColorComponents(null);
 				for (int i = 0; i < intervals.length; i++) {
 					components[i] = ColourCompare.findInterval(components[i], intervals[i]);
 				}
-				output.set(x, y, new Color(pixel.getColorSpace(), components,
-						1f));
+				pixels[x] = new Color(pixel.getColorSpace(), components, 1f)
+						.getRGB();
 			}
 		}
 
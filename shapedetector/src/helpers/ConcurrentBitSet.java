@@ -0,0 +1,111 @@
+package helpers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size set of bits that many threads can set at once without locking.
+ * <p>
+ * Bits are packed 64 to a word and set with compare-and-set, so threads only
+ * contend when they set bits in the same word.
+ *
+ * @author Sean
+ */
+public class ConcurrentBitSet {
+	/** The bits, 64 to a word. */
+	protected final AtomicLongArray words;
+	/** Number of bits in the set. */
+	protected final int size;
+
+	/**
+	 * Constructor. All bits start cleared.
+	 *
+	 * @param size
+	 *            Number of bits.
+	 */
+	public ConcurrentBitSet(final int size) {
+		this.size = size;
+		words = new AtomicLongArray((size + 63) >>> 6);
+	}
+
+	/**
+	 * Sets the specified bit.
+	 *
+	 * @param index
+	 * @return true if the bit was not already set.
+	 */
+	public boolean set(final int index) {
+		int word = index >>> 6;
+		long mask = 1L << index;
+		long old;
+		do {
+			old = words.get(word);
+			if ((old & mask) != 0) {
+				return false;
+			}
+		} while (!words.compareAndSet(word, old, old | mask));
+		return true;
+	}
+
+	/**
+	 * Checks whether the specified bit is set.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public boolean get(final int index) {
+		return (words.get(index >>> 6) & (1L << index)) != 0;
+	}
+
+	/**
+	 * Finds the first set bit at or after the specified index.
+	 *
+	 * @param from
+	 * @return Index of the bit, or -1 if there is none.
+	 */
+	public int nextSetBit(final int from) {
+		if (from >= size) {
+			return -1;
+		}
+		int word = from >>> 6;
+		long bits = words.get(word) & (-1L << from);
+		while (bits == 0) {
+			if (++word >= words.length()) {
+				return -1;
+			}
+			bits = words.get(word);
+		}
+		int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+		return index < size ? index : -1;
+	}
+
+	/**
+	 * Counts the set bits. Should not be called while bits are being set.
+	 *
+	 * @return
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (int i = 0; i < words.length(); i++) {
+			count += Long.bitCount(words.get(i));
+		}
+		return count;
+	}
+
+	/**
+	 * Clears every bit. Should not be called while bits are being set.
+	 */
+	public void clear() {
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, 0L);
+		}
+	}
+
+	/**
+	 * Gets the number of bits in the set.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -62,6 +62,26 @@ public class NDArrayList<V> implements Iterable<V> {
 		return data.get(getIndex(x));
 	}
 
+	/**
+	 * Gets the element at the specified position in the underlying list,
+	 * where elements are ordered by the last dimension first.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public V getElement(final int index) {
+		return data.get(index);
+	}
+
+	/**
+	 * Gets the total number of elements.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return roof;
+	}
+
 	protected int getIndex(final int... x) throws CAException {
 		if (x.length != dimensions.length) {
 			throw new CAException("Wrong number of dimensions, " + x.length
@@ -31,6 +31,10 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
@@ -53,6 +57,11 @@ import javax.swing.KeyStroke;
  * By default, pixel (x, y) is column x, row y, where (0, 0) is upper left. The
  * method setOriginLowerLeft() change the origin to the lower left.
  * <p>
+ * Images are always stored as TYPE_INT_RGB or TYPE_INT_ARGB, converting them
+ * when loaded if necessary. getPixels() gives direct access to the ints
+ * backing the image, and the row and tile methods copy blocks of pixels in
+ * and out of it, which is much faster than going through get() and set().
+ * <p>
  * For additional documentation, see <a
  * href="http://introcs.cs.princeton.edu/31datatype">Section 3.1</a> of
  * <i>Introduction to Programming in Java: An Interdisciplinary Approach</i> by
@@ -60,6 +69,7 @@ import javax.swing.KeyStroke;
  */
 public final class Picture implements ActionListener {
 	private BufferedImage image; // the rasterized image
+	private int[] pixels; // the image's backing array, row by row
 	private JFrame frame; // on-screen view
 	private String filename; // name of file
 	private boolean isOriginUpperLeft = true; // location of origin
@@ -73,20 +83,36 @@ public final class Picture implements ActionListener {
 		height = h;
 		image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
 		// set to TYPE_INT_ARGB to support transparency.
+		pixels = getData(image);
 		filename = w + "-by-" + h;
 	}
 
 	/**
-	 * Copy constructor.
+	 * Copy constructor. Copies the pixels in one go.
 	 */
 	public Picture(Picture pic) {
 		width = pic.width();
 		height = pic.height();
-		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		image = new BufferedImage(width, height, pic.image.getType());
+		pixels = getData(image);
+		System.arraycopy(pic.pixels, 0, pixels, 0, pixels.length);
 		filename = pic.filename;
-		for (int i = 0; i < width(); i++)
-			for (int j = 0; j < height(); j++)
-				image.setRGB(i, j, pic.get(i, j).getRGB());
+		isOriginUpperLeft = pic.isOriginUpperLeft;
+	}
+
+	/**
+	 * Create a picture from an existing image. The image is not copied unless
+	 * it has to be converted to TYPE_INT_RGB or TYPE_INT_ARGB.
+	 */
+	public Picture(BufferedImage image) {
+		if (image == null) {
+			throw new RuntimeException("image is null");
+		}
+		this.image = normalise(image);
+		pixels = getData(this.image);
+		width = image.getWidth();
+		height = image.getHeight();
+		filename = width + "-by-" + height;
 	}
 
 	/**
@@ -110,6 +136,8 @@ public final class Picture implements ActionListener {
 				}
 				image = ImageIO.read(url);
 			}
+			image = normalise(image);
+			pixels = getData(image);
 			width = image.getWidth(null);
 			height = image.getHeight(null);
 		} catch (IOException e) {
@@ -131,11 +159,47 @@ public final class Picture implements ActionListener {
 		if (image == null) {
 			throw new RuntimeException("Invalid image file: " + file);
 		}
+		image = normalise(image);
+		pixels = getData(image);
 		width = image.getWidth(null);
 		height = image.getHeight(null);
 		filename = file.getName();
 	}
 
+	/**
+	 * Return the image if it stores one int per pixel, row by row with nothing
+	 * in between, otherwise a copy of it that does.
+	 */
+	private static BufferedImage normalise(BufferedImage image) {
+		int type = image.getType();
+		int w = image.getWidth();
+		int h = image.getHeight();
+		if (type == BufferedImage.TYPE_INT_RGB
+				|| type == BufferedImage.TYPE_INT_ARGB) {
+			WritableRaster raster = image.getRaster();
+			DataBuffer buffer = raster.getDataBuffer();
+			if (buffer.getSize() == w * h && buffer.getOffset() == 0
+					&& raster.getSampleModelTranslateX() == 0
+					&& raster.getSampleModelTranslateY() == 0
+					&& ((SinglePixelPackedSampleModel) raster.getSampleModel())
+							.getScanlineStride() == w) {
+				return image;
+			}
+		}
+		BufferedImage copy = new BufferedImage(w, h, image.getColorModel()
+				.hasAlpha() ? BufferedImage.TYPE_INT_ARGB
+				: BufferedImage.TYPE_INT_RGB);
+		image.getRGB(0, 0, w, h, getData(copy), 0, w);
+		return copy;
+	}
+
+	/**
+	 * Return the array backing a TYPE_INT_RGB or TYPE_INT_ARGB image.
+	 */
+	private static int[] getData(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
 	/**
 	 * Return a JLabel containing this Picture, for embedding in a JPanel,
 	 * JFrame or other GUI widget.
@@ -215,10 +279,7 @@ public final class Picture implements ActionListener {
 	 * Return the color of pixel (i, j).
 	 */
 	public Color get(int i, int j) {
-		if (isOriginUpperLeft)
-			return new Color(image.getRGB(i, j));
-		else
-			return new Color(image.getRGB(i, height - j - 1));
+		return new Color(getRGB(i, j));
 	}
 
 	/**
@@ -228,10 +289,85 @@ public final class Picture implements ActionListener {
 		if (c == null) {
 			throw new RuntimeException("can't set Color to null");
 		}
-		if (isOriginUpperLeft)
-			image.setRGB(i, j, c.getRGB());
-		else
-			image.setRGB(i, height - j - 1, c.getRGB());
+		setRGB(i, j, c.getRGB());
+	}
+
+	/**
+	 * Return the ARGB value of pixel (i, j). The alpha byte is meaningless
+	 * unless the picture has an alpha channel.
+	 */
+	public int getRGB(int i, int j) {
+		return pixels[row(j) * width + i];
+	}
+
+	/**
+	 * Set pixel (i, j) to the specified ARGB value.
+	 */
+	public void setRGB(int i, int j, int argb) {
+		pixels[row(j) * width + i] = argb;
+	}
+
+	/**
+	 * Copy row j into dst, starting at the specified offset.
+	 */
+	public void getRow(int j, int[] dst, int offset) {
+		System.arraycopy(pixels, row(j) * width, dst, offset, width);
+	}
+
+	/**
+	 * Copy src, starting at the specified offset, into row j.
+	 */
+	public void setRow(int j, int[] src, int offset) {
+		System.arraycopy(src, offset, pixels, row(j) * width, width);
+	}
+
+	/**
+	 * Copy the w-by-h tile at (i, j) into dst, starting at the specified
+	 * offset with scansize ints from one row to the next. Row y of the tile is
+	 * row j + y of the picture.
+	 */
+	public void getTile(int i, int j, int w, int h, int[] dst, int offset,
+			int scansize) {
+		for (int y = 0; y < h; y++) {
+			System.arraycopy(pixels, row(j + y) * width + i, dst, offset + y
+					* scansize, w);
+		}
+	}
+
+	/**
+	 * Copy a w-by-h tile from src, starting at the specified offset with
+	 * scansize ints from one row to the next, to (i, j).
+	 */
+	public void setTile(int i, int j, int w, int h, int[] src, int offset,
+			int scansize) {
+		for (int y = 0; y < h; y++) {
+			System.arraycopy(src, offset + y * scansize, pixels, row(j + y)
+					* width + i, w);
+		}
+	}
+
+	/**
+	 * Return the ints backing the image, one ARGB value per pixel. Pixel (x, y)
+	 * of the stored image, counted from the upper left whatever the origin, is
+	 * at index y * width + x. This is not a copy: writes to the array change
+	 * the picture. The alpha byte is meaningless unless hasAlpha().
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * Does this picture have an alpha channel?
+	 */
+	public boolean hasAlpha() {
+		return image.getType() == BufferedImage.TYPE_INT_ARGB;
+	}
+
+	/**
+	 * Return the stored row of row j, taking the origin into account.
+	 */
+	private int row(int j) {
+		return isOriginUpperLeft ? j : height - j - 1;
 	}
 
 	/**
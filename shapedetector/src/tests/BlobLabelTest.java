@@ -0,0 +1,245 @@
+package tests;
+
+import exceptions.CAException;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import std.Picture;
+import ca.CA;
+import ca.Cell;
+import ca.concurrency.Granularity;
+import ca.concurrency.WorkerPool;
+import ca.lattice.ARGBLattice;
+import ca.neighbourhood.VanNeumannCardinal;
+import ca.rules.Rule;
+import ca.rules.cell.BlobAssociationRule;
+import ca.rules.cell.BlobLabelRule;
+import ca.rules.cell.BlobMergeRule;
+import ca.rules.cell.EdgeFinderRule;
+import ca.shapedetector.BlobMap;
+
+/**
+ * Checks that BlobLabelRule groups cells into the same blobs as
+ * BlobAssociationRule followed by BlobMergeRule, for tiles of several shapes
+ * and sizes, on one thread and on several.
+ * <p>
+ * The edge images are random, with edge densities either side of the point
+ * where the quiescent cells stop forming one large blob, and nested walls
+ * whose single blob winds through every tile. The same seed is used on every
+ * run.
+ *
+ * @author Sean
+ */
+public class BlobLabelTest {
+	/** Tile sizes to label with. A width of 0 spans whole rows. */
+	protected final static int[][] TILE_SIZES = { { 0, 32 }, { 0, 1 },
+			{ 7, 5 }, { 1, 9 }, { 16, 16 }, { 1, 1 } };
+	/** Numbers of threads to label with. */
+	protected final static int[] NUM_THREADS = { 1, 4 };
+
+	protected static int failures;
+
+	public static void main(String[] args) throws CAException {
+		WorkerPool pool = new WorkerPool(4, false);
+		try {
+			for (double density : new double[] { 0.3, 0.42, 0.5, 0.6 }) {
+				test("random " + density, randomEdges(61, 47, density, 1L),
+						pool);
+			}
+			test("nested walls", nestedWalls(64, 48), pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS");
+		} else {
+			System.out.println("FAIL: " + failures + " failures");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Labels the edge image every way and compares the blobs with those of
+	 * BlobAssociationRule and BlobMergeRule on a single thread.
+	 *
+	 * @param name
+	 * @param edges
+	 * @param pool
+	 * @throws CAException
+	 */
+	protected static void test(final String name, final Picture edges,
+			final WorkerPool pool) throws CAException {
+		ARGBLattice lattice = new ARGBLattice(edges);
+		BlobMap<Color> expected = newBlobMap(lattice);
+		apply(lattice, new BlobAssociationRule<Color>(lattice,
+				new VanNeumannCardinal<Color>(lattice), expected), 1, pool);
+		apply(lattice, new BlobMergeRule(lattice, expected, 0d), 1, pool);
+
+		for (int numThreads : NUM_THREADS) {
+			/* Nor should the cell by cell rules depend on the threads. */
+			BlobMap<Color> merged = newBlobMap(lattice);
+			apply(lattice, new BlobAssociationRule<Color>(lattice,
+					new VanNeumannCardinal<Color>(lattice), merged),
+					numThreads, pool);
+			apply(lattice, new BlobMergeRule(lattice, merged, 0d),
+					numThreads, pool);
+			check(name + ", BlobMergeRule, threads: " + numThreads, lattice,
+					expected, merged);
+
+			for (int[] tileSize : TILE_SIZES) {
+				BlobMap<Color> labelled = newBlobMap(lattice);
+				BlobLabelRule rule = new BlobLabelRule(lattice, labelled);
+				rule.setTileSize(tileSize[0], tileSize[1]);
+				apply(lattice, rule, numThreads, pool);
+				check(name + ", BlobLabelRule " + tileSize[0] + "x"
+						+ tileSize[1] + ", threads: " + numThreads,
+						lattice, expected, labelled);
+			}
+		}
+	}
+
+	/**
+	 * Checks that two blob maps partition the cells the same way: two cells
+	 * share a root in one exactly when they share a root in the other.
+	 *
+	 * @param name
+	 * @param lattice
+	 * @param expected
+	 * @param actual
+	 */
+	protected static void check(final String name, final ARGBLattice lattice,
+			final BlobMap<Color> expected, final BlobMap<Color> actual) {
+		Map<Integer, Integer> forward = new HashMap<Integer, Integer>();
+		Map<Integer, Integer> backward = new HashMap<Integer, Integer>();
+		String error = null;
+
+		for (int y = 0; y < lattice.getHeight() && error == null; y++) {
+			for (int x = 0; x < lattice.getWidth(); x++) {
+				int index = lattice.getIndex(x, y);
+				Integer root1 = expected.findRoot(index);
+				Integer root2 = actual.findRoot(index);
+				Integer mapped1 = forward.put(root1, root2);
+				Integer mapped2 = backward.put(root2, root1);
+				if ((mapped1 != null && !mapped1.equals(root2))
+						|| (mapped2 != null && !mapped2.equals(root1))) {
+					error = "blobs differ at (" + x + "," + y + ")";
+					break;
+				}
+			}
+		}
+		if (error == null
+				&& expected.getBlobs().size() != actual.getBlobs().size()) {
+			error = expected.getBlobs().size() + " blobs expected, found "
+					+ actual.getBlobs().size();
+		}
+
+		if (error == null) {
+			System.out.println("PASS " + name + ": " + forward.size()
+					+ " blobs");
+		} else {
+			System.out.println("FAIL " + name + ": " + error);
+			failures++;
+		}
+	}
+
+	/**
+	 * Applies a single rule to the lattice, split between the specified
+	 * number of threads.
+	 *
+	 * @param lattice
+	 * @param rule
+	 * @param numThreads
+	 * @param pool
+	 * @throws CAException
+	 */
+	protected static void apply(final ARGBLattice lattice,
+			final Rule<Cell<Color>> rule, final int numThreads,
+			final WorkerPool pool) throws CAException {
+		List<Rule<Cell<Color>>> rules = new LinkedList<Rule<Cell<Color>>>();
+		rules.add(rule);
+		/* Splits every pass between all the threads, however small. */
+		Granularity granularity = new Granularity(0L, 0, 0L);
+		new CA<Color>(lattice, rules, numThreads, pool, granularity).apply();
+	}
+
+	/**
+	 * Creates an empty BlobMap for the lattice.
+	 *
+	 * @param lattice
+	 * @return
+	 */
+	protected static BlobMap<Color> newBlobMap(final ARGBLattice lattice) {
+		BlobMap<Color> blobMap = new BlobMap<Color>(lattice);
+		blobMap.clear(lattice.getWidth(), lattice.getHeight());
+		return blobMap;
+	}
+
+	/**
+	 * Creates an edge image with edges at random.
+	 *
+	 * @param w
+	 * @param h
+	 * @param density
+	 *            Chance of each cell being an edge.
+	 * @param seed
+	 * @return
+	 */
+	protected static Picture randomEdges(final int w, final int h,
+			final double density, final long seed) {
+		Random random = new Random(seed);
+		Picture picture = new Picture(w, h);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				picture.setRGB(x, y,
+						random.nextDouble() < density ? EdgeFinderRule.EDGE_RGB
+								: EdgeFinderRule.QUIESCENT_RGB);
+			}
+		}
+		return picture;
+	}
+
+	/**
+	 * Creates an edge image of nested square walls, each with a gap in its
+	 * left side, so that the quiescent cells between them form a single path
+	 * winding from the border to the middle.
+	 *
+	 * @param w
+	 * @param h
+	 * @return
+	 */
+	protected static Picture nestedWalls(final int w, final int h) {
+		Picture picture = new Picture(w, h);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				picture.setRGB(x, y, EdgeFinderRule.QUIESCENT_RGB);
+			}
+		}
+		/* Draws each wall two cells inside the previous one. */
+		int x0 = 1, y0 = 1, x1 = w - 2, y1 = h - 2;
+		while (x0 <= x1 && y0 <= y1) {
+			for (int x = x0; x <= x1; x++) {
+				picture.setRGB(x, y0, EdgeFinderRule.EDGE_RGB);
+			}
+			for (int y = y0; y <= y1; y++) {
+				picture.setRGB(x1, y, EdgeFinderRule.EDGE_RGB);
+			}
+			for (int x = x0; x <= x1; x++) {
+				picture.setRGB(x, y1, EdgeFinderRule.EDGE_RGB);
+			}
+			for (int y = y0 + 2; y <= y1; y++) {
+				picture.setRGB(x0, y, EdgeFinderRule.EDGE_RGB);
+			}
+			x0 += 2;
+			y0 += 2;
+			x1 -= 2;
+			y1 -= 2;
+		}
+		return picture;
+	}
+}
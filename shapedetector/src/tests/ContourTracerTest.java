@@ -0,0 +1,229 @@
+package tests;
+
+import exceptions.CAException;
+
+import java.awt.Color;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import std.Picture;
+import ca.CA;
+import ca.Cell;
+import ca.concurrency.WorkerPool;
+import ca.lattice.ARGBLattice;
+import ca.neighbourhood.VanNeumannCardinal;
+import ca.rules.Rule;
+import ca.rules.cell.OutlineFinderRule;
+import ca.shapedetector.BlobMap;
+import ca.shapedetector.blob.Blob;
+import ca.shapedetector.blob.ContourTracer;
+import ca.shapedetector.shapes.AbstractShape;
+import ca.shapedetector.shapes.RootShape;
+import ca.shapedetector.shapes.UnknownShape;
+
+/**
+ * Checks the order in which ContourTracer places the outline cells of a few
+ * small blobs, drawn below with '#' for the blob's cells.
+ * <p>
+ * Besides the exact order, each trace must visit every outline cell found by
+ * OutlineFinderRule, step only between neighbouring cells, and end next to
+ * where it started. Cells along a spur one cell thick are visited twice,
+ * going out and coming back, except for the cell at its tip.
+ *
+ * @author Sean
+ */
+public class ContourTracerTest {
+	/** A blob with notches, teeth and a one cell wide neck. */
+	protected final static String[] JAGGED = {
+			"........",
+			".#.#.##.",
+			".######.",
+			"..###...",
+			".####...",
+			"...#....",
+			"........" };
+	/** Traced outline of JAGGED, as x,y pairs. */
+	protected final static int[] JAGGED_OUTLINE = { 1, 1, 2, 2, 3, 1, 4, 2,
+			5, 1, 6, 1, 6, 2, 5, 2, 4, 3, 4, 4, 3, 5, 2, 4, 1, 4, 2, 3, 1, 2 };
+
+	/** A block with a spur one cell thick sticking out to the right. */
+	protected final static String[] SPUR = {
+			"..........",
+			".###......",
+			".#######..",
+			".###......",
+			".........." };
+	/** Traced outline of SPUR, as x,y pairs. */
+	protected final static int[] SPUR_OUTLINE = { 1, 1, 2, 1, 3, 1, 4, 2, 5,
+			2, 6, 2, 7, 2, 6, 2, 5, 2, 4, 2, 3, 3, 2, 3, 1, 3, 1, 2 };
+
+	/**
+	 * A blob that is only a line of cells, long enough for the shapes to be
+	 * looked for in it. Its outline encloses no area.
+	 */
+	protected final static String[] LINE = {
+			"..........................",
+			".########################.",
+			".........................." };
+	/** Traced outline of LINE, as x,y pairs. */
+	protected final static int[] LINE_OUTLINE = new int[92];
+
+	static {
+		/* Out along the line and back. */
+		for (int x = 1; x <= 24; x++) {
+			LINE_OUTLINE[2 * x - 2] = x;
+			LINE_OUTLINE[2 * x - 1] = 1;
+		}
+		for (int x = 23, i = 48; x >= 2; x--, i += 2) {
+			LINE_OUTLINE[i] = x;
+			LINE_OUTLINE[i + 1] = 1;
+		}
+	}
+
+	protected static int failures;
+
+	public static void main(String[] args) throws CAException {
+		WorkerPool pool = new WorkerPool(1, false);
+		try {
+			test("jagged", JAGGED, JAGGED_OUTLINE, pool);
+			test("spur", SPUR, SPUR_OUTLINE, pool);
+			Blob<Color> line = test("line", LINE, LINE_OUTLINE, pool);
+			identify("line", line);
+		} finally {
+			pool.shutdown();
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS");
+		} else {
+			System.out.println("FAIL: " + failures + " failures");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Traces the outline of the blob drawn in the rows and compares it with
+	 * the expected outline.
+	 *
+	 * @param name
+	 * @param rows
+	 * @param expected
+	 *            Expected outline, as x,y pairs.
+	 * @param pool
+	 * @return The blob, with its outline cells in the traced order.
+	 * @throws CAException
+	 */
+	protected static Blob<Color> test(final String name,
+			final String[] rows, final int[] expected, final WorkerPool pool)
+			throws CAException {
+		int w = rows[0].length();
+		int h = rows.length;
+		ARGBLattice lattice = new ARGBLattice(new Picture(w, h));
+		BlobMap<Color> blobMap = new BlobMap<Color>(lattice);
+		blobMap.clear(w, h);
+
+		/* Merges the '#' cells into one blob, leaving the others alone. */
+		int first = -1;
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int index = lattice.getIndex(x, y);
+				blobMap.makeBlob(index);
+				if (rows[y].charAt(x) == '#') {
+					if (first < 0) {
+						first = index;
+					} else {
+						blobMap.union(first, index);
+					}
+				}
+			}
+		}
+		blobMap.createBlobs();
+		List<Rule<Cell<Color>>> rules = new LinkedList<Rule<Cell<Color>>>();
+		rules.add(new OutlineFinderRule<Color>(lattice,
+				new VanNeumannCardinal<Color>(lattice), blobMap));
+		new CA<Color>(lattice, rules, 1, pool).apply();
+
+		Blob<Color> blob = blobMap.getBlob(first);
+		List<Cell<Color>> outline = blob.getOutlineCells();
+		List<Cell<Color>> traced = new ContourTracer<Color>(lattice, blobMap)
+				.trace(blob, lattice.getCell(first), outline.size());
+
+		StringBuilder order = new StringBuilder();
+		for (Cell<Color> cell : traced) {
+			int[] coordinates = cell.getCoordinates();
+			order.append(coordinates[0] + "," + coordinates[1] + ", ");
+		}
+
+		String error = null;
+		if (!new HashSet<Cell<Color>>(traced).equals(
+				new HashSet<Cell<Color>>(outline))) {
+			error = "does not visit exactly the outline cells";
+		}
+		for (int i = 0; i < traced.size() && error == null; i++) {
+			int[] a = traced.get(i).getCoordinates();
+			int[] b = traced.get((i + 1) % traced.size()).getCoordinates();
+			if (Math.max(Math.abs(a[0] - b[0]), Math.abs(a[1] - b[1])) != 1) {
+				error = "steps from (" + a[0] + "," + a[1] + ") to (" + b[0]
+						+ "," + b[1] + ")";
+			}
+		}
+		if (error == null && !matches(traced, expected)) {
+			error = "unexpected order " + order;
+		}
+
+		if (error == null) {
+			System.out.println("PASS " + name);
+		} else {
+			System.out.println("FAIL " + name + ": " + error);
+			failures++;
+		}
+		blob.setOutlineCells(traced);
+		return blob;
+	}
+
+	/**
+	 * Checks that a blob whose traced outline encloses no area is identified
+	 * as an unknown shape, rather than failing.
+	 *
+	 * @param name
+	 * @param blob
+	 */
+	protected static void identify(final String name, final Blob<Color> blob) {
+		try {
+			AbstractShape shape = new RootShape<Color>().identify(blob);
+			if (shape instanceof UnknownShape) {
+				System.out.println("PASS " + name + " identified");
+			} else {
+				System.out.println("FAIL " + name + " identified as " + shape);
+				failures++;
+			}
+		} catch (Exception e) {
+			System.out.println("FAIL " + name + " identified: " + e);
+			failures++;
+		}
+	}
+
+	/**
+	 * Checks whether the cells are at the expected coordinates, in order.
+	 *
+	 * @param cells
+	 * @param expected
+	 *            x,y pairs.
+	 * @return
+	 */
+	protected static boolean matches(final List<Cell<Color>> cells,
+			final int[] expected) {
+		if (cells.size() * 2 != expected.length) {
+			return false;
+		}
+		for (int i = 0; i < cells.size(); i++) {
+			int[] coordinates = cells.get(i).getCoordinates();
+			if (coordinates[0] != expected[2 * i]
+					|| coordinates[1] != expected[2 * i + 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}